@@ -1,10 +1,22 @@
 package cn.sam.demo.mcpclient.config;
 
+import cn.sam.demo.mcpclient.service.ParallelToolCallingManager;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.deepseek.DeepSeekChatModel;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * AI配置类 - 使用 Spring AI 1.1.0 新特性
  * 
@@ -13,6 +25,11 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class AiConfig {
 
+    /**
+     * 默认系统提示，也是对话回复缓存键的一部分
+     */
+    public static final String DEFAULT_SYSTEM_PROMPT = "你是一个有用的AI助手，能够理解上下文并提供准确的回答。";
+
     /**
      * 配置 ChatClient，利用 Spring AI 1.1.0 的新特性
      * - 支持默认系统提示
@@ -22,8 +39,36 @@ public class AiConfig {
     @Bean
     public ChatClient chatClient(DeepSeekChatModel chatModel) {
         return ChatClient.builder(chatModel)
-                .defaultSystem("你是一个有用的AI助手，能够理解上下文并提供准确的回答。")
+                .defaultSystem(DEFAULT_SYSTEM_PROMPT)
                 .build();
     }
-}
 
+    /**
+     * 本地 token 计数器，用于按预算构建对话上下文
+     * 默认使用 JTokkit（cl100k_base）估算，可以声明自己的 TokenCountEstimator Bean 替换
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public TokenCountEstimator tokenCountEstimator() {
+        return new JTokkitTokenCountEstimator();
+    }
+
+    /**
+     * 工具调用管理器：同一轮回复中的多个工具调用并行执行
+     * 替换 Spring AI 自动配置的默认（逐个执行）管理器，DeepSeekChatModel 的工具调用循环会使用它
+     */
+    @Bean
+    public ParallelToolCallingManager toolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                                         ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                                         ObjectProvider<ObservationRegistry> observationRegistry,
+                                                         @Qualifier("mcpTaskExecutor") ExecutorService mcpTaskExecutor,
+                                                         ChatToolProperties chatToolProperties) {
+        DefaultToolCallingManager delegate = DefaultToolCallingManager.builder()
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                .build();
+        return new ParallelToolCallingManager(delegate, toolCallbackResolver, toolExecutionExceptionProcessor,
+                mcpTaskExecutor, chatToolProperties.getCallDeadline());
+    }
+}
@@ -0,0 +1,32 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话上下文构建配置
+ * 对应配置前缀 chat.context
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.context")
+public class ChatContextProperties {
+
+    /**
+     * 历史对话加当前消息的 token 预算，从最近一轮开始向前填充，放不下的更早轮次被丢弃
+     */
+    private int maxTokens = 3000;
+
+    /**
+     * 最多考虑的历史轮数，不超过 chat.history-cache.window-size 时直接从会话窗口读取
+     */
+    private int maxTurns = 50;
+
+    /**
+     * 每条消息的固定开销（角色标记等）
+     */
+    private int perMessageOverhead = 4;
+}
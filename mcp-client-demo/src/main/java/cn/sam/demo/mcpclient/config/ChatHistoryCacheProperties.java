@@ -0,0 +1,39 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 会话上下文缓存配置
+ * 对应配置前缀 chat.history-cache
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.history-cache")
+public class ChatHistoryCacheProperties {
+
+    /**
+     * 全局开关，关闭后每次都从数据库读取
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个会话缓存的最近对话轮数
+     */
+    private int windowSize = 50;
+
+    /**
+     * 最多缓存的会话数，超出后淘汰最近最少使用的会话
+     */
+    private long maxSessions = 10000;
+
+    /**
+     * 会话空闲多久后从缓存中移除
+     */
+    private Duration idleTimeout = Duration.ofMinutes(30);
+}
@@ -0,0 +1,39 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 聊天记录异步批量写入配置
+ * 对应配置前缀 chat.history-writer
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.history-writer")
+public class ChatHistoryWriterProperties {
+
+    /**
+     * 写入队列容量，队列已满时新的记录被拒绝
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 每批最多写入的记录数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 批次未满时最长等待时间，到期后立即写入
+     */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    /**
+     * 关闭时等待队列写完的最长时间
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+}
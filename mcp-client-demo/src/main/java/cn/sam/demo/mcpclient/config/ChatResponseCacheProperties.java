@@ -0,0 +1,39 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 对话回复缓存配置
+ * 对应配置前缀 chat.response-cache，默认关闭
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.response-cache")
+public class ChatResponseCacheProperties {
+
+    /**
+     * 是否缓存相同提示（系统提示、上下文、用户消息和模型参数都相同）的回复
+     */
+    private boolean enabled = false;
+
+    /**
+     * 最多缓存的回复数
+     */
+    private long maxEntries = 10000;
+
+    /**
+     * 回复写入后的过期时间
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * 流式接口回放缓存回复时每个分片的字符数
+     */
+    private int replayChunkSize = 16;
+}
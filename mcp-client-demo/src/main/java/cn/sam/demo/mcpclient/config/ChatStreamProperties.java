@@ -0,0 +1,24 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 流式对话配置
+ * 对应配置前缀 chat.stream
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.stream")
+public class ChatStreamProperties {
+
+    /**
+     * 流式接口的最长响应时间，超时后取消上游模型流并正常结束 SSE 响应
+     */
+    private Duration timeout = Duration.ofMinutes(5);
+}
@@ -0,0 +1,37 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话滚动摘要（记忆压缩）配置
+ * 对应配置前缀 chat.summary
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.summary")
+public class ChatSummaryProperties {
+
+    /**
+     * 全局开关，关闭后只按 token 预算截断历史对话
+     */
+    private boolean enabled = true;
+
+    /**
+     * 未被摘要的对话超过该轮数时触发压缩
+     */
+    private int triggerTurns = 30;
+
+    /**
+     * 压缩时保留的最近轮数，这些对话仍以原文发送
+     */
+    private int keepRecentTurns = 10;
+
+    /**
+     * 单次压缩最多合并的轮数，积压更多时由后续任务继续合并
+     */
+    private int maxFoldTurns = 50;
+}
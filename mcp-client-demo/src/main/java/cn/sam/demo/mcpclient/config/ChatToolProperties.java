@@ -0,0 +1,34 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 对话工具配置
+ * 对应配置前缀 chat.tools
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.tools")
+public class ChatToolProperties {
+
+    /**
+     * 是否向模型提供已启用的 MCP 工具
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每次对话最多提供的工具数，按与用户消息的相关度选择
+     */
+    private int maxPerPrompt = 8;
+
+    /**
+     * 模型一轮回复中所有工具调用的总超时时间，这些调用并行执行
+     */
+    private Duration callDeadline = Duration.ofSeconds(30);
+}
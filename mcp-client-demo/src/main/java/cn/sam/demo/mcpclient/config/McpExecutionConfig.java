@@ -0,0 +1,50 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行器配置类
+ * 有界的业务线程池，用于阻塞的工具/数据库调用和后台任务；下游并发由 DownstreamLimiter 单独限制。
+ * 在 Java 21+ 上部署时可开启 spring.threads.virtual.enabled，由 Spring Boot 让 Tomcat 请求处理、
+ * {@code @Async} 和调度任务运行在虚拟线程上
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Configuration
+public class McpExecutionConfig {
+
+    /**
+     * 业务执行器
+     */
+    @Bean(name = "mcpTaskExecutor", destroyMethod = "shutdown")
+    public ExecutorService mcpTaskExecutor(McpExecutionProperties properties) {
+        log.info("业务线程池: {} 线程，队列长度 {}", properties.getPlatformPoolSize(), properties.getPlatformQueueCapacity());
+        return new ThreadPoolExecutor(
+                properties.getPlatformPoolSize(),
+                properties.getPlatformPoolSize(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(properties.getPlatformQueueCapacity()),
+                new CustomizableThreadFactory("mcp-exec-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 基于业务执行器的 Reactor 调度器，供响应式链路中的阻塞步骤使用（subscribeOn）
+     * 执行器由 mcpTaskExecutor 自己关闭，这里不注册销毁方法
+     */
+    @Bean(name = "mcpTaskScheduler", destroyMethod = "")
+    public Scheduler mcpTaskScheduler(ExecutorService mcpTaskExecutor) {
+        return Schedulers.fromExecutorService(mcpTaskExecutor, "mcp-exec");
+    }
+}
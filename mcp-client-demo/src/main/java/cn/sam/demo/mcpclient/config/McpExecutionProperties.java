@@ -0,0 +1,57 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 执行器与下游并发配置
+ * 对应配置前缀 mcp.execution
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mcp.execution")
+public class McpExecutionProperties {
+
+    /**
+     * 平台线程池大小
+     */
+    private int platformPoolSize = 200;
+
+    /**
+     * 平台线程池队列长度
+     */
+    private int platformQueueCapacity = 1000;
+
+    /**
+     * 获取下游并发许可的最长等待时间
+     */
+    private Duration acquireTimeout = Duration.ofSeconds(5);
+
+    /**
+     * 各下游的并发上限，键为下游名称（llm、db、mcp、local），
+     * mcp 的上限按远程服务器分别计算，local 为批量调用中本地工具的并发
+     */
+    private Map<String, Integer> limits = new HashMap<>(Map.of(
+            "llm", 100,
+            "db", 50,
+            "mcp", 50,
+            "local", 50
+    ));
+
+    /**
+     * 批量调用接口单次请求允许的最大调用数
+     */
+    private int maxBatchCalls = 1000;
+
+    /**
+     * 合并为一个 JSON-RPC 批量请求的最大调用数（仅对声明了 transport.batch 的服务器生效）
+     */
+    private int rpcBatchSize = 20;
+}
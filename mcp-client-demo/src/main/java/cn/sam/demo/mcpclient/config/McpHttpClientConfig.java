@@ -0,0 +1,44 @@
+package cn.sam.demo.mcpclient.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+
+/**
+ * MCP HTTP 客户端配置类
+ * 所有出站 HTTP 请求共用一个 JDK HttpClient：MCP 协议流量（SDK 会话、HTTP 工具调用和 JSON-RPC 批量请求）
+ * 直接使用 mcpJdkHttpClient，RestTemplate（市场接口）通过 mcpClientHttpRequestFactory 使用它。
+ * JDK HttpClient 在内部复用长连接，但没有按服务器的连接数上限，也不提供连接池统计；
+ * 每个远程服务器的并发由 DownstreamLimiter 限制（mcp.execution.limits.mcp）
+ *
+ * @author Administrator
+ */
+@Configuration
+public class McpHttpClientConfig {
+
+    /**
+     * 共用的 JDK HttpClient，连接超时和 HTTP 版本取自 mcp.http-client
+     */
+    @Bean
+    public HttpClient mcpJdkHttpClient(McpHttpClientProperties properties) {
+        return HttpClient.newBuilder()
+                .version(properties.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * RestTemplate 的请求工厂，基于 mcpJdkHttpClient，读取超时取自 mcp.http-client
+     */
+    @Bean
+    public ClientHttpRequestFactory mcpClientHttpRequestFactory(HttpClient mcpJdkHttpClient,
+                                                                McpHttpClientProperties properties) {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(mcpJdkHttpClient);
+        factory.setReadTimeout(properties.getReadTimeout());
+        return factory;
+    }
+}
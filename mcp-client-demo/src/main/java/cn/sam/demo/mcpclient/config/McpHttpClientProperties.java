@@ -0,0 +1,34 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * MCP HTTP 客户端配置
+ * 对应配置前缀 mcp.http-client
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mcp.http-client")
+public class McpHttpClientProperties {
+
+    /**
+     * 建立 TCP 连接的超时时间
+     */
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    /**
+     * 读取响应的超时时间
+     */
+    private Duration readTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 是否启用 HTTP/2（不支持时自动回退到 HTTP/1.1）
+     */
+    private boolean http2 = false;
+}
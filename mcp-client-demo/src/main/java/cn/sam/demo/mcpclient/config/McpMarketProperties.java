@@ -0,0 +1,102 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * MCP 市场同步配置
+ * 对应配置前缀 mcp.market
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mcp.market")
+public class McpMarketProperties {
+
+    /**
+     * 每次请求市场接口获取的服务器数
+     */
+    private int pageSize = 40;
+
+    /**
+     * 同时在途的分页请求数，也是等待写入数据库的最大页数
+     */
+    private int prefetchPages = 4;
+
+    /**
+     * 单次刷新最多请求的页数，防止市场接口不停返回整页数据时无限翻页
+     */
+    private int maxPages = 10000;
+
+    /**
+     * 后台同步配置
+     */
+    private Sync sync = new Sync();
+
+    /**
+     * 后台同步配置
+     * 对应配置前缀 mcp.market.sync
+     */
+    @Data
+    public static class Sync {
+
+        /**
+         * 是否定时同步所有启用的市场，默认关闭；关闭时只能通过刷新接口手动提交
+         */
+        private boolean enabled = false;
+
+        /**
+         * 检查到期市场的间隔
+         */
+        private Duration scanInterval = Duration.ofSeconds(30);
+
+        /**
+         * 市场未设置 sync_interval 时的同步间隔
+         */
+        private Duration defaultInterval = Duration.ofHours(6);
+
+        /**
+         * 同步间隔的随机抖动比例，0.1 表示在 ±10% 内随机，避免多个市场同时同步
+         */
+        private double jitter = 0.1;
+
+        /**
+         * 每个市场的最大尝试次数（含第一次）
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 第一次重试的等待时间，之后每次翻倍
+         */
+        private Duration retryBackoff = Duration.ofSeconds(30);
+
+        /**
+         * 重试等待时间上限
+         */
+        private Duration maxRetryBackoff = Duration.ofMinutes(10);
+
+        /**
+         * 每个市场每秒允许的请求数，小于等于 0 时不限速
+         */
+        private double requestsPerSecond = 5;
+
+        /**
+         * 令牌桶容量，允许的突发请求数
+         */
+        private int burst = 10;
+
+        /**
+         * 已结束的同步任务保留多久，供查询状态
+         */
+        private Duration jobRetention = Duration.ofHours(1);
+
+        /**
+         * 最多保留的同步任务数
+         */
+        private int maxJobs = 1000;
+    }
+}
@@ -0,0 +1,35 @@
+package cn.sam.demo.mcpclient.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 工具结果缓存配置
+ * 对应配置前缀 mcp.tool-cache，
+ * 工具是否可缓存由 McpToolData.configJson 中的 cache 字段声明
+ *
+ * @author Administrator
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mcp.tool-cache")
+public class McpToolCacheProperties {
+
+    /**
+     * 全局开关，关闭后所有工具都不缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存总权重上限（按结果的估算字节数计算）
+     */
+    private long maxWeight = 16 * 1024 * 1024;
+
+    /**
+     * 工具声明 cache: true 但没有指定 ttlSeconds 时使用的过期时间
+     */
+    private Duration defaultTtl = Duration.ofMinutes(5);
+}
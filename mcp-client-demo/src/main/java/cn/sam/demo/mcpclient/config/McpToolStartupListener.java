@@ -27,7 +27,8 @@ public class McpToolStartupListener implements ApplicationListener<ApplicationRe
     @Resource
     private McpToolService mcpToolService;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Resource
+    private ObjectMapper objectMapper;
 
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
@@ -166,6 +167,8 @@ public class McpToolStartupListener implements ApplicationListener<ApplicationRe
             Map<String, Object> config = new HashMap<>();
             config.put("tool_name", "calculator_add");
             config.put("tool_type", "REMOTE");
+            // 纯函数工具，相同参数的结果可以缓存
+            config.put("cache", Map.of("enabled", true, "ttlSeconds", 300));
             // 添加 transport 配置，指向 mcp-service-demo
             config.put("transport", Map.of(
                     "type", "http",
@@ -198,6 +201,8 @@ public class McpToolStartupListener implements ApplicationListener<ApplicationRe
             Map<String, Object> config = new HashMap<>();
             config.put("tool_name", "calculator_multiply");
             config.put("tool_type", "REMOTE");
+            // 纯函数工具，相同参数的结果可以缓存
+            config.put("cache", Map.of("enabled", true, "ttlSeconds", 300));
             // 添加 transport 配置，指向 mcp-service-demo
             config.put("transport", Map.of(
                     "type", "http",
@@ -230,6 +235,8 @@ public class McpToolStartupListener implements ApplicationListener<ApplicationRe
             Map<String, Object> config = new HashMap<>();
             config.put("tool_name", "string_reverse");
             config.put("tool_type", "REMOTE");
+            // 纯函数工具，相同参数的结果可以缓存
+            config.put("cache", Map.of("enabled", true, "ttlSeconds", 300));
             // 添加 transport 配置，指向 mcp-service-demo
             config.put("transport", Map.of(
                     "type", "http",
@@ -261,6 +268,8 @@ public class McpToolStartupListener implements ApplicationListener<ApplicationRe
             Map<String, Object> config = new HashMap<>();
             config.put("tool_name", "string_uppercase");
             config.put("tool_type", "REMOTE");
+            // 纯函数工具，相同参数的结果可以缓存
+            config.put("cache", Map.of("enabled", true, "ttlSeconds", 300));
             // 添加 transport 配置，指向 mcp-service-demo
             config.put("transport", Map.of(
                     "type", "http",
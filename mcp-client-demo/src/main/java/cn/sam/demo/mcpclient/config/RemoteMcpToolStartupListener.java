@@ -7,18 +7,21 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
 /**
  * 远程 MCP 工具启动监听器
- * 在应用启动时自动注册所有已启用的远程工具
+ * 在应用启动时自动注册所有已启用的远程工具，先于对话工具目录的加载执行
  *
  * @author Administrator
  */
 @Slf4j
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class RemoteMcpToolStartupListener implements ApplicationListener<ApplicationReadyEvent> {
 
     @Resource
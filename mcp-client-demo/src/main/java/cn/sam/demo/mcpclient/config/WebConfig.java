@@ -2,6 +2,7 @@ package cn.sam.demo.mcpclient.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -15,9 +16,12 @@ import org.springframework.web.filter.CorsFilter;
 @Configuration
 public class WebConfig {
 
+    /**
+     * 通用 RestTemplate（市场接口等），使用共用的 JDK HttpClient
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ClientHttpRequestFactory mcpClientHttpRequestFactory) {
+        return new RestTemplate(mcpClientHttpRequestFactory);
     }
 
     /**
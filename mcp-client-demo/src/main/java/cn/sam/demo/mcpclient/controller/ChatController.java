@@ -1,45 +1,74 @@
 package cn.sam.demo.mcpclient.controller;
 
+import cn.sam.demo.mcpclient.config.AiConfig;
+import cn.sam.demo.mcpclient.config.ChatStreamProperties;
 import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.service.ChatContextBuilder;
 import cn.sam.demo.mcpclient.service.ChatHistoryService;
+import cn.sam.demo.mcpclient.service.ChatResponseCache;
+import cn.sam.demo.mcpclient.service.ChatStreamTracker;
+import cn.sam.demo.mcpclient.service.DownstreamLimiter;
+import cn.sam.demo.mcpclient.service.McpToolCallbackService;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.SystemMessage;
-import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 聊天控制器
  *
  * @author Administrator
  */
+@Slf4j
 @RestController
 @RequestMapping("/api")
 public class ChatController {
 
+    private static final ServerSentEvent<String> DONE_EVENT = ServerSentEvent.builder("").event("done").build();
+
     @Resource
     private ChatClient chatClient;
 
     @Resource
     private ChatHistoryService chatHistoryService;
 
+    @Resource
+    private ChatContextBuilder chatContextBuilder;
+
+    @Resource
+    private McpToolCallbackService mcpToolCallbackService;
+
+    @Resource
+    private DownstreamLimiter downstreamLimiter;
+
+    @Resource
+    private ChatStreamTracker chatStreamTracker;
+
+    @Resource
+    private ChatResponseCache chatResponseCache;
+
+    @Resource
+    private ChatStreamProperties chatStreamProperties;
+
     /**
      * 生成AI回复（带历史记录）
      * 使用 Spring AI 1.1.0 的新特性优化：
      * - 改进的 API 调用方式
-     * - 记忆压缩（限制历史记录数量，避免上下文过长）
+     * - 记忆压缩（较早的对话合并为滚动摘要，其余按 token 预算选择，避免上下文过长）
+     * - 回复缓存（开启后相同提示直接返回缓存的回复，提供了有副作用的工具时不使用）
      *
      * @param message   用户消息
      * @param sessionId 会话ID，如果不提供则自动生成
@@ -55,43 +84,42 @@ public class ChatController {
             sessionId = UUID.randomUUID().toString().replace("-", "");
         }
 
-        // 获取历史记录（使用记忆压缩，只保留最近20条对话）
-        List<ChatHistory> histories = chatHistoryService.getRecentHistoryBySessionId(sessionId, 20);
-        List<Message> messageList = buildContext(histories);
-        
-        // 使用 Spring AI 1.1.0 改进的 API 调用
-        String aiResponse = chatClient.prompt()
-                .messages(messageList)
-                .user(message)
-                .call()
-                .content();
+        // 按 token 预算选择历史对话（系统提示由 ChatClient 的 defaultSystem 设置）
+        List<Message> messageList = chatContextBuilder.build(sessionId, message);
+        // 只提供与本条消息相关的工具
+        List<ToolCallback> tools = mcpToolCallbackService.select(message);
+        String cacheKey = chatResponseCache.key(AiConfig.DEFAULT_SYSTEM_PROMPT, messageList, message, tools);
+
+        String aiResponse = chatResponseCache.get(cacheKey);
+        if (aiResponse == null) {
+            // 使用 Spring AI 1.1.0 改进的 API 调用
+            aiResponse = downstreamLimiter.call(DownstreamLimiter.LLM, () -> chatClient.prompt()
+                    .messages(messageList)
+                    .user(message)
+                    .toolCallbacks(tools)
+                    .call()
+                    .content());
+            chatResponseCache.put(cacheKey, aiResponse);
+        }
 
         // 保存历史记录
-        ChatHistory chatHistory = ChatHistory.builder()
-                .sessionId(sessionId)
-                .userMessage(message)
-                .aiResponse(aiResponse)
-                .createTime(LocalDateTime.now())
-                .updateTime(LocalDateTime.now())
-                .build();
-        chatHistoryService.saveInfo(chatHistory);
+        saveHistory(sessionId, message, aiResponse);
 
         return aiResponse;
     }
 
     /**
      * 流式生成AI回复（带历史记录）
-     * 使用 Spring AI 1.1.0 的新特性优化：
-     * - 改进的流式处理
-     * - 正确保存流式响应的完整内容
-     * 使用 SseEmitter 实现 SSE 流式响应（适用于 Servlet 环境）
+     * 直接返回 Flux，由 Spring MVC 按客户端消费速度逐条写出（背压），客户端断开时取消上游模型流；
+     * 各分片只在流结束时拼接一次，用于保存历史记录；命中回复缓存时不请求模型，按分片全速回放
+     * 模型流超过 chat.stream.timeout 仍未结束时取消上游，已生成的内容保存后正常结束响应
      *
      * @param message   用户消息
      * @param sessionId 会话ID，如果不提供则自动生成
      * @return SSE 流式响应
      */
     @GetMapping(value = "/ai/generateStream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter generateStream(
+    public Flux<ServerSentEvent<String>> generateStream(
             @RequestParam(value = "message", defaultValue = "Tell me a joke") String message,
             @RequestParam(value = "sessionId", required = false, defaultValue = "1") String sessionId) {
 
@@ -99,143 +127,83 @@ public class ChatController {
         if (sessionId == null || sessionId.isEmpty() || "1".equals(sessionId)) {
             sessionId = UUID.randomUUID().toString().replace("-", "");
         }
-
-        // 创建 SSE Emitter，设置超时时间为 5 分钟
-        SseEmitter emitter = new SseEmitter(300000L);
-
-        // 获取历史记录（使用记忆压缩，只保留最近20条对话）
-        List<ChatHistory> histories = chatHistoryService.getRecentHistoryBySessionId(sessionId, 20);
-        List<Message> messageList = buildContext(histories);
-
-        // 用于收集完整的AI响应
-        StringBuilder fullResponse = new StringBuilder();
         final String finalSessionId = sessionId;
-        final String finalMessage = message;
-
-        // 异步处理流式响应
-        CompletableFuture.runAsync(() -> {
-            try {
-                // 获取流式响应
-                Flux<String> flux = chatClient.prompt()
-                        .messages(messageList)
-                        .user(message)
-                        .stream()
-                        .content();
 
-                // 订阅流式数据
-                flux.subscribe(
-                        chunk -> {
-                            try {
-                                // 发送 SSE 数据
-                                fullResponse.append(chunk);
-                                emitter.send(SseEmitter.event()
-                                        .data(chunk)
-                                        .name("message"));
-                            } catch (IOException e) {
-                                emitter.completeWithError(e);
-                            }
-                        },
-                        error -> {
-                            // 错误处理：即使出错也尝试保存已收集的内容
-                            String partialResponse = fullResponse.toString();
-                            if (!partialResponse.isEmpty()) {
-                                try {
-                                    ChatHistory chatHistory = ChatHistory.builder()
-                                            .sessionId(finalSessionId)
-                                            .userMessage(finalMessage)
-                                            .aiResponse(partialResponse + "\n[响应中断: " + error.getMessage() + "]")
-                                            .createTime(LocalDateTime.now())
-                                            .updateTime(LocalDateTime.now())
-                                            .build();
-                                    chatHistoryService.saveInfo(chatHistory);
-                                } catch (Exception e) {
-                                    // 忽略保存错误
-                                }
-                            }
-                            emitter.completeWithError(error);
-                        },
-                        () -> {
-                            // 流式响应完成后保存历史记录
-                            String completeResponse = fullResponse.toString();
-                            if (!completeResponse.isEmpty()) {
-                                try {
-                                    ChatHistory chatHistory = ChatHistory.builder()
-                                            .sessionId(finalSessionId)
-                                            .userMessage(finalMessage)
-                                            .aiResponse(completeResponse)
-                                            .createTime(LocalDateTime.now())
-                                            .updateTime(LocalDateTime.now())
-                                            .build();
-                                    chatHistoryService.saveInfo(chatHistory);
-                                } catch (Exception e) {
-                                    // 忽略保存错误
-                                }
-                            }
-                            // 发送完成事件
-                            try {
-                                emitter.send(SseEmitter.event()
-                                        .name("done")
-                                        .data(""));
-                                emitter.complete();
-                            } catch (IOException e) {
-                                emitter.completeWithError(e);
-                            }
-                        }
-                );
-            } catch (Exception e) {
-                emitter.completeWithError(e);
-            }
-        });
-
-        // 处理客户端断开连接
-        emitter.onTimeout(() -> {
-            String partialResponse = fullResponse.toString();
-            if (!partialResponse.isEmpty()) {
-                try {
-                    ChatHistory chatHistory = ChatHistory.builder()
-                            .sessionId(finalSessionId)
-                            .userMessage(finalMessage)
-                            .aiResponse(partialResponse + "\n[响应超时]")
-                            .createTime(LocalDateTime.now())
-                            .updateTime(LocalDateTime.now())
-                            .build();
-                    chatHistoryService.saveInfo(chatHistory);
-                } catch (Exception e) {
-                    // 忽略保存错误
-                }
-            }
-        });
-
-        emitter.onError((ex) -> {
-            String partialResponse = fullResponse.toString();
-            if (!partialResponse.isEmpty()) {
-                try {
-                    ChatHistory chatHistory = ChatHistory.builder()
-                            .sessionId(finalSessionId)
-                            .userMessage(finalMessage)
-                            .aiResponse(partialResponse + "\n[响应错误: " + ex.getMessage() + "]")
-                            .createTime(LocalDateTime.now())
-                            .updateTime(LocalDateTime.now())
-                            .build();
-                    chatHistoryService.saveInfo(chatHistory);
-                } catch (Exception e) {
-                    // 忽略保存错误
-                }
+        // 按 token 预算选择历史对话（系统提示由 ChatClient 的 defaultSystem 设置）
+        List<Message> messageList = chatContextBuilder.build(sessionId, message);
+        // 只提供与本条消息相关的工具
+        List<ToolCallback> tools = mcpToolCallbackService.select(message);
+        String cacheKey = chatResponseCache.key(AiConfig.DEFAULT_SYSTEM_PROMPT, messageList, message, tools);
+
+        return Flux.defer(() -> {
+            String cached = chatResponseCache.get(cacheKey);
+            if (cached != null) {
+                return chatResponseCache.replay(cached)
+                        .doOnComplete(() -> saveHistory(finalSessionId, message, cached))
+                        .map(ChatController::messageEvent)
+                        .concatWith(Mono.just(DONE_EVENT));
             }
+            // 每次订阅单独收集分片；取消信号可能与分片来自不同线程，使用并发队列
+            Queue<String> chunks = new ConcurrentLinkedQueue<>();
+            // 客户端断开时 Spring MVC 取消订阅，超时时由 timeout 取消：取消沿链路传到模型流，关闭模型请求、
+            // 中断进行中的工具调用，LLM 并发许可同时释放
+            return downstreamLimiter.limit(DownstreamLimiter.LLM, chatClient.prompt()
+                            .messages(messageList)
+                            .user(message)
+                            .toolCallbacks(tools)
+                            .stream()
+                            .content())
+                    .timeout(chatStreamProperties.getTimeout())
+                    .doOnSubscribe(subscription -> chatStreamTracker.started())
+                    .doOnNext(chunks::add)
+                    .doOnComplete(() -> {
+                        String response = String.join("", chunks);
+                        chatStreamTracker.completed(response);
+                        chatResponseCache.put(cacheKey, response);
+                        saveHistory(finalSessionId, message, response);
+                    })
+                    .doOnError(error -> {
+                        String partialResponse = String.join("", chunks);
+                        if (error instanceof TimeoutException) {
+                            // 上游模型流已由 timeout 取消
+                            chatStreamTracker.cancelled(partialResponse);
+                            savePartialHistory(finalSessionId, message, partialResponse, "[响应中断: 超时]");
+                            return;
+                        }
+                        chatStreamTracker.failed();
+                        savePartialHistory(finalSessionId, message, partialResponse,
+                                "[响应中断: " + error.getMessage() + "]");
+                    })
+                    .doOnCancel(() -> {
+                        String partialResponse = String.join("", chunks);
+                        chatStreamTracker.cancelled(partialResponse);
+                        savePartialHistory(finalSessionId, message, partialResponse, "[响应中断: 客户端断开]");
+                    })
+                    .map(ChatController::messageEvent)
+                    // 超时后照常发送 done 事件结束响应
+                    .onErrorResume(TimeoutException.class, error -> Mono.empty())
+                    .concatWith(Mono.just(DONE_EVENT));
         });
-
-        return emitter;
     }
 
     /**
-     * 获取指定会话的历史记录
+     * 获取指定会话的历史记录，按创建时间升序排列
+     * 不传 before 和 limit 时返回全部记录；传入任一参数时分页返回：不传 before 为最近一页，
+     * 继续向前翻页时把本页第一条记录的 ID 作为 before
      *
      * @param sessionId 会话ID
+     * @param before    游标记录ID
+     * @param limit     每页条数（默认 50，最大 200）
      * @return 历史记录列表
      */
     @GetMapping("/ai/history")
-    public List<ChatHistory> getHistory(@RequestParam("sessionId") String sessionId) {
-        return chatHistoryService.getHistoryBySessionId(sessionId);
+    public List<ChatHistory> getHistory(@RequestParam("sessionId") String sessionId,
+                                        @RequestParam(value = "before", required = false) Long before,
+                                        @RequestParam(value = "limit", required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return chatHistoryService.getHistoryBySessionId(sessionId);
+        }
+        return chatHistoryService.getHistoryPage(sessionId, before, limit);
     }
 
     /**
@@ -250,26 +218,37 @@ public class ChatController {
         return success ? "删除成功" : "删除失败或记录不存在";
     }
 
+    private static ServerSentEvent<String> messageEvent(String chunk) {
+        return ServerSentEvent.builder(chunk).event("message").build();
+    }
+
     /**
-     * 构建对话上下文
-     * 使用 Spring AI 1.1.0 改进的消息处理方式
-     *
-     * @param histories 历史记录列表
-     * @return 构建好的消息列表
+     * 保存未完成的一轮对话，已生成的内容为空时不保存
      */
-    private List<Message> buildContext(List<ChatHistory> histories) {
-        List<Message> messageList = new ArrayList<>();
-        
-        // 添加系统提示（可以根据需要自定义）
-        messageList.add(new SystemMessage("你是一个有用的AI助手，能够理解上下文并提供准确的回答。"));
-        
-        // 添加历史对话记录
-        histories.forEach(item -> {
-            messageList.add(new UserMessage(item.getUserMessage()));
-            messageList.add(new AssistantMessage(item.getAiResponse()));
-        });
-        
-        return messageList;
+    private void savePartialHistory(String sessionId, String message, String partialResponse, String reason) {
+        if (!partialResponse.isEmpty()) {
+            saveHistory(sessionId, message, partialResponse + "\n" + reason);
+        }
     }
-}
 
+    /**
+     * 保存一轮对话，回复为空时不保存
+     */
+    private void saveHistory(String sessionId, String message, String aiResponse) {
+        if (aiResponse == null || aiResponse.isEmpty()) {
+            return;
+        }
+        try {
+            ChatHistory chatHistory = ChatHistory.builder()
+                    .sessionId(sessionId)
+                    .userMessage(message)
+                    .aiResponse(aiResponse)
+                    .createTime(LocalDateTime.now())
+                    .updateTime(LocalDateTime.now())
+                    .build();
+            chatHistoryService.saveInfo(chatHistory);
+        } catch (Exception e) {
+            log.warn("保存历史记录失败: sessionId={}", sessionId, e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package cn.sam.demo.mcpclient.controller;
 
 import cn.sam.demo.mcpclient.entity.McpMarket;
 import cn.sam.demo.mcpclient.entity.McpMarketTool;
+import cn.sam.demo.mcpclient.service.MarketSyncScheduler;
 import cn.sam.demo.mcpclient.service.McpMarketService;
 import jakarta.annotation.Resource;
 import org.springframework.http.ResponseEntity;
@@ -23,6 +24,9 @@ public class McpMarketController {
     @Resource
     private McpMarketService mcpMarketService;
 
+    @Resource
+    private MarketSyncScheduler marketSyncScheduler;
+
     /**
      * 获取市场列表
      */
@@ -160,26 +164,71 @@ public class McpMarketController {
     }
 
     /**
-     * 刷新市场工具列表
+     * 刷新市场工具列表（增量同步）
+     * 提交后台同步任务后立即返回任务ID，通过 /refresh/jobs/{jobId} 查询状态；
+     * 该市场已有进行中的任务时返回该任务
      */
     @PostMapping("/{id}/refresh")
     public ResponseEntity<Map<String, Object>> refreshTools(@PathVariable Long id) {
         Map<String, Object> result = new HashMap<>();
-        try {
-            boolean success = mcpMarketService.refreshMarketTools(id);
-            if (success) {
-                result.put("success", true);
-                result.put("message", "刷新成功");
-            } else {
-                result.put("success", false);
-                result.put("message", "刷新失败，请检查市场URL和网络连接");
-            }
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
+        if (mcpMarketService.getById(id) == null) {
             result.put("success", false);
-            result.put("message", "刷新失败: " + e.getMessage());
+            result.put("message", "市场不存在");
             return ResponseEntity.badRequest().body(result);
         }
+        MarketSyncScheduler.Job job = marketSyncScheduler.submit(id, MarketSyncScheduler.Job.MANUAL);
+        result.put("success", true);
+        result.put("message", "刷新任务已提交");
+        result.put("data", job.toMap(mcpMarketService.getRefreshProgress(id)));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查询刷新任务状态
+     * state 为 RUNNING、RETRYING（等待重试）、SUCCEEDED、FAILED 或 CANCELLED，
+     * progress 中包含新增、更新、未变化和下架的工具数
+     */
+    @GetMapping("/refresh/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> refreshJob(@PathVariable String jobId) {
+        Map<String, Object> result = new HashMap<>();
+        MarketSyncScheduler.Job job = marketSyncScheduler.getJob(jobId);
+        if (job == null) {
+            result.put("success", false);
+            result.put("message", "任务不存在或已过期");
+            return ResponseEntity.ok(result);
+        }
+        result.put("success", true);
+        result.put("data", job.toMap(mcpMarketService.getRefreshProgress(job.getMarketId())));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查询市场工具刷新进度
+     */
+    @GetMapping("/{id}/refresh/progress")
+    public ResponseEntity<Map<String, Object>> refreshProgress(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, Object> progress = mcpMarketService.getRefreshProgress(id);
+        if (progress == null) {
+            result.put("success", false);
+            result.put("message", "该市场没有刷新记录");
+            return ResponseEntity.ok(result);
+        }
+        result.put("success", true);
+        result.put("data", progress);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 取消正在进行的市场工具刷新
+     */
+    @PostMapping("/{id}/refresh/cancel")
+    public ResponseEntity<Map<String, Object>> cancelRefresh(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        boolean success = marketSyncScheduler.cancel(id);
+        result.put("success", success);
+        result.put("message", success ? "已取消刷新" : "该市场没有正在进行的刷新");
+        return ResponseEntity.ok(result);
     }
 
     /**
@@ -212,15 +261,20 @@ public class McpMarketController {
     public ResponseEntity<Map<String, Object>> batchLoadTools(@RequestBody Map<String, Object> request) {
         Map<String, Object> result = new HashMap<>();
         try {
-            @SuppressWarnings("unchecked")
-            List<Long> toolIds = (List<Long>) request.get("toolIds");
+            // JSON 中的数字可能被解析为 Integer，统一转换为 Long
+            List<Long> toolIds = request.get("toolIds") instanceof List<?> ids
+                    ? ids.stream().map(id -> Long.valueOf(id.toString())).toList()
+                    : null;
             if (toolIds == null || toolIds.isEmpty()) {
                 result.put("success", false);
                 result.put("message", "请选择要加载的工具");
                 return ResponseEntity.badRequest().body(result);
             }
 
-            int successCount = mcpMarketService.batchLoadToolsToLocal(toolIds);
+            Map<String, Object> loadResult = mcpMarketService.batchLoadToolsToLocal(toolIds);
+            int successCount = (int) loadResult.get("loaded");
+            // 每个工具的加载结果
+            result.put("data", loadResult.get("results"));
             if (successCount > 0) {
                 result.put("success", true);
                 result.put("message", String.format("成功加载 %d 个工具", successCount));
@@ -0,0 +1,224 @@
+package cn.sam.demo.mcpclient.controller;
+
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import cn.sam.demo.mcpclient.service.ChatContextBuilder;
+import cn.sam.demo.mcpclient.service.ChatHistoryService;
+import cn.sam.demo.mcpclient.service.ChatHistoryWriter;
+import cn.sam.demo.mcpclient.service.ChatResponseCache;
+import cn.sam.demo.mcpclient.service.ChatStreamTracker;
+import cn.sam.demo.mcpclient.service.ChatSummaryService;
+import cn.sam.demo.mcpclient.service.DownstreamLimiter;
+import cn.sam.demo.mcpclient.service.MarketSyncScheduler;
+import cn.sam.demo.mcpclient.service.McpBatchRpcClient;
+import cn.sam.demo.mcpclient.service.McpToolCallbackService;
+import cn.sam.demo.mcpclient.service.McpToolResultCache;
+import cn.sam.demo.mcpclient.service.McpSessionManager;
+import cn.sam.demo.mcpclient.service.McpToolRegistryService;
+import cn.sam.demo.mcpclient.service.ParallelToolCallingManager;
+import jakarta.annotation.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MCP 运行指标控制器
+ *
+ * @author Administrator
+ */
+@RestController
+@RequestMapping("/api/mcp/metrics")
+public class McpMetricsController {
+
+    @Resource
+    private McpSessionManager mcpSessionManager;
+
+    @Resource
+    private McpToolRegistryService mcpToolRegistryService;
+
+    @Resource
+    private McpExecutionProperties mcpExecutionProperties;
+
+    @Resource
+    private DownstreamLimiter downstreamLimiter;
+
+    @Resource
+    private McpBatchRpcClient mcpBatchRpcClient;
+
+    @Resource
+    private McpToolResultCache mcpToolResultCache;
+
+    @Resource
+    private ChatHistoryService chatHistoryService;
+
+    @Resource
+    private ChatHistoryWriter chatHistoryWriter;
+
+    @Resource
+    private ChatContextBuilder chatContextBuilder;
+
+    @Resource
+    private ChatSummaryService chatSummaryService;
+
+    @Resource
+    private McpToolCallbackService mcpToolCallbackService;
+
+    @Resource
+    private ParallelToolCallingManager toolCallingManager;
+
+    @Resource
+    private ChatStreamTracker chatStreamTracker;
+
+    @Resource
+    private ChatResponseCache chatResponseCache;
+
+    @Resource
+    private MarketSyncScheduler marketSyncScheduler;
+
+    /**
+     * 已建立的 MCP 会话（每个远程服务器一个）
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> sessions() {
+        List<Map<String, Object>> sessions = mcpSessionManager.getSessionStats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", sessions);
+        result.put("total", sessions.size());
+        result.put("endpoints", mcpToolRegistryService.getEndpointStats());
+        // JSON-RPC 批量会话上等待响应的请求数
+        result.put("rpcPending", mcpBatchRpcClient.getPendingStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 业务线程池和各下游的并发许可使用情况
+     * 出站 HTTP 共用的 JDK HttpClient 不提供连接统计，每个远程服务器的并发见 downstreams 中的 mcp:* 项
+     */
+    @GetMapping("/execution")
+    public ResponseEntity<Map<String, Object>> execution() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("poolSize", mcpExecutionProperties.getPlatformPoolSize());
+        result.put("javaVersion", Runtime.version().feature());
+        result.put("downstreams", downstreamLimiter.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 工具结果缓存统计（命中、未命中、合并的并发调用、淘汰）
+     */
+    @GetMapping("/tool-cache")
+    public ResponseEntity<Map<String, Object>> toolCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", mcpToolResultCache.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 清空工具结果缓存
+     */
+    @DeleteMapping("/tool-cache")
+    public ResponseEntity<Map<String, Object>> clearToolCache() {
+        mcpToolResultCache.invalidateAll();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 会话上下文缓存统计
+     */
+    @GetMapping("/chat-cache")
+    public ResponseEntity<Map<String, Object>> chatCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatHistoryService.getContextCacheStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 对话上下文 token 预算使用情况
+     */
+    @GetMapping("/chat-context")
+    public ResponseEntity<Map<String, Object>> chatContext() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatContextBuilder.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 会话滚动摘要（记忆压缩）统计
+     */
+    @GetMapping("/chat-summary")
+    public ResponseEntity<Map<String, Object>> chatSummary() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatSummaryService.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 对话工具目录大小、每次对话提供的工具数和并行调用统计
+     */
+    @GetMapping("/chat-tools")
+    public ResponseEntity<Map<String, Object>> chatTools() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        Map<String, Object> data = new HashMap<>(mcpToolCallbackService.getStats());
+        data.put("execution", toolCallingManager.getStats());
+        result.put("data", data);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 流式对话统计：客户端断开或超时后取消的流，以及估计节省的 token 数
+     */
+    @GetMapping("/chat-stream")
+    public ResponseEntity<Map<String, Object>> chatStream() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatStreamTracker.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 对话回复缓存命中率
+     */
+    @GetMapping("/chat-response-cache")
+    public ResponseEntity<Map<String, Object>> chatResponseCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatResponseCache.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 聊天记录写入队列深度与批量写入耗时
+     */
+    @GetMapping("/history-writer")
+    public ResponseEntity<Map<String, Object>> historyWriter() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", chatHistoryWriter.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 市场后台同步任务与市场接口限速
+     */
+    @GetMapping("/market-sync")
+    public ResponseEntity<Map<String, Object>> marketSync() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", marketSyncScheduler.getStats());
+        return ResponseEntity.ok(result);
+    }
+}
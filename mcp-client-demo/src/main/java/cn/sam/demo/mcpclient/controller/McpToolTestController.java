@@ -1,18 +1,29 @@
 package cn.sam.demo.mcpclient.controller;
 
+import cn.sam.demo.mcpclient.config.McpHttpClientProperties;
+import cn.sam.demo.mcpclient.dto.McpBatchInvokeRequest;
 import cn.sam.demo.mcpclient.entity.McpToolData;
+import cn.sam.demo.mcpclient.service.McpBatchInvokeService;
 import cn.sam.demo.mcpclient.service.McpToolInvokeService;
 import cn.sam.demo.mcpclient.service.McpToolService;
 import cn.sam.demo.mcpclient.service.RemoteMcpToolInvokeService;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * MCP 工具测试控制器
@@ -34,6 +45,15 @@ public class McpToolTestController {
     @Resource
     private RemoteMcpToolInvokeService remoteMcpToolInvokeService;
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private McpHttpClientProperties mcpHttpClientProperties;
+
+    @Resource
+    private McpBatchInvokeService mcpBatchInvokeService;
+
     /**
      * 测试工具调用
      *
@@ -46,7 +66,6 @@ public class McpToolTestController {
             @PathVariable Long toolId,
             @RequestBody(required = false) Map<String, Object> params) {
 
-        ObjectMapper objectMapper = new ObjectMapper();
         Map<String, Object> result = new HashMap<>();
 
         try {
@@ -75,10 +94,8 @@ public class McpToolTestController {
                         result.put("error", "远程工具不可用，请检查连接配置");
                         return ResponseEntity.badRequest().body(result);
                     }
-                    // 注意：这里需要知道远程工具的实际工具名称
-                    // 如果配置中有工具名称，使用配置中的；否则使用工具名称
-                    String remoteToolName = tool.getName();
-                    toolResult = remoteMcpToolInvokeService.invokeRemoteTool(tool, remoteToolName, params);
+                    // 远程工具名称在注册时从配置中解析（tool_name / function.name）
+                    toolResult = remoteMcpToolInvokeService.invokeRemoteTool(tool, params);
                 } else {
                     // 本地工具调用
                     if (!mcpToolInvokeService.hasTool(tool.getName())) {
@@ -89,30 +106,10 @@ public class McpToolTestController {
                     toolResult = mcpToolInvokeService.invokeTool(tool.getName(), params);
                 }
                 long duration = System.currentTimeMillis() - startTime;
-
-                // 格式化返回结果
-                String resultJson;
-                if (toolResult instanceof String) {
-                    resultJson = (String) toolResult;
-                } else {
-                    resultJson = objectMapper.writeValueAsString(toolResult);
-                }
-
-                result.put("success", true);
-                result.put("toolId", toolId);
-                result.put("toolName", tool.getName());
-                result.put("request", params != null ? params : Map.of());
-                result.put("response", toolResult);
-                result.put("responseJson", resultJson);
-                result.put("duration", duration + "ms");
-                result.put("timestamp", System.currentTimeMillis());
+                fillSuccessResult(result, tool, params, toolResult, duration);
             } catch (Exception e) {
                 log.error("调用工具失败: {}", tool.getName(), e);
-                result.put("success", false);
-                result.put("error", e.getMessage());
-                result.put("errorType", e.getClass().getSimpleName());
-                result.put("toolId", toolId);
-                result.put("toolName", tool.getName());
+                fillErrorResult(result, tool, e);
                 return ResponseEntity.ok(result);
             }
 
@@ -127,6 +124,138 @@ public class McpToolTestController {
         }
     }
 
+    /**
+     * 测试工具调用（响应式）
+     * 远程工具通过 McpAsyncClient 异步调用，等待期间不占用 Servlet 线程；
+     * 客户端断开连接时会取消进行中的调用
+     *
+     * @param toolId    工具ID
+     * @param params    工具参数
+     * @param timeoutMs 超时时间（毫秒），默认使用 mcp.http-client.read-timeout
+     * @return 测试结果
+     */
+    @PostMapping("/test/{toolId}/async")
+    public Mono<ResponseEntity<Map<String, Object>>> testToolAsync(
+            @PathVariable Long toolId,
+            @RequestBody(required = false) Map<String, Object> params,
+            @RequestParam(required = false) Long timeoutMs) {
+
+        Duration timeout = timeoutMs != null ? Duration.ofMillis(timeoutMs) : mcpHttpClientProperties.getReadTimeout();
+
+        // 数据库查询是阻塞操作，放到 boundedElastic 线程池中执行
+        return Mono.fromCallable(() -> Optional.ofNullable(mcpToolService.getById(toolId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(optionalTool -> {
+                    Map<String, Object> result = new HashMap<>();
+                    if (optionalTool.isEmpty()) {
+                        result.put("success", false);
+                        result.put("error", "工具不存在");
+                        return Mono.just(ResponseEntity.badRequest().body(result));
+                    }
+                    McpToolData tool = optionalTool.get();
+                    if (!McpToolData.Status.ENABLED.equals(tool.getStatus())) {
+                        result.put("success", false);
+                        result.put("error", "工具未启用");
+                        return Mono.just(ResponseEntity.badRequest().body(result));
+                    }
+
+                    long startTime = System.currentTimeMillis();
+                    Mono<Object> invocation = McpToolData.Type.REMOTE.equals(tool.getType())
+                            ? remoteMcpToolInvokeService.invokeRemoteToolAsync(tool, params, timeout)
+                            : Mono.fromCallable(() -> mcpToolInvokeService.invokeTool(tool.getName(), params))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .timeout(timeout);
+
+                    return invocation
+                            .defaultIfEmpty("")
+                            .map(toolResult -> {
+                                try {
+                                    fillSuccessResult(result, tool, params, toolResult, System.currentTimeMillis() - startTime);
+                                } catch (JsonProcessingException e) {
+                                    fillErrorResult(result, tool, e);
+                                }
+                                return ResponseEntity.ok(result);
+                            })
+                            .onErrorResume(e -> {
+                                log.error("调用工具失败: {}", tool.getName(), e);
+                                fillErrorResult(result, tool, e);
+                                return Mono.just(ResponseEntity.ok(result));
+                            });
+                });
+    }
+
+    /**
+     * 批量测试工具调用
+     * 所有调用并行执行（每个远程服务器有并发上限），每完成一个就以 SSE 事件 result 返回，
+     * 事件数据中的 index 为该调用在请求中的位置，全部完成后发送 done 事件
+     *
+     * @param request 批量调用请求
+     * @return SSE 事件流
+     */
+    @PostMapping(value = "/test/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> testToolBatch(@RequestBody McpBatchInvokeRequest request) {
+        if (request.getCalls() == null || request.getCalls().isEmpty()) {
+            return Flux.just(ServerSentEvent.<Map<String, Object>>builder()
+                    .event("error")
+                    .data(Map.of("success", false, "error", "调用列表不能为空"))
+                    .build());
+        }
+        Duration timeout = request.getTimeoutMs() != null
+                ? Duration.ofMillis(request.getTimeoutMs())
+                : mcpHttpClientProperties.getReadTimeout();
+
+        return Flux.defer(() -> mcpBatchInvokeService.invokeBatch(request.getCalls(), timeout))
+                .map(item -> ServerSentEvent.<Map<String, Object>>builder()
+                        .event("result")
+                        .data(item)
+                        .build())
+                .concatWith(Mono.just(ServerSentEvent.<Map<String, Object>>builder()
+                        .event("done")
+                        .data(Map.of("total", request.getCalls().size()))
+                        .build()))
+                .onErrorResume(e -> {
+                    log.error("批量调用工具失败", e);
+                    return Mono.just(ServerSentEvent.<Map<String, Object>>builder()
+                            .event("error")
+                            .data(Map.of("success", false, "error", String.valueOf(e.getMessage())))
+                            .build());
+                });
+    }
+
+    /**
+     * 填充调用成功的结果
+     */
+    private void fillSuccessResult(Map<String, Object> result, McpToolData tool, Map<String, Object> params,
+                                   Object toolResult, long duration) throws JsonProcessingException {
+        // 格式化返回结果
+        String resultJson;
+        if (toolResult instanceof String) {
+            resultJson = (String) toolResult;
+        } else {
+            resultJson = objectMapper.writeValueAsString(toolResult);
+        }
+
+        result.put("success", true);
+        result.put("toolId", tool.getId());
+        result.put("toolName", tool.getName());
+        result.put("request", params != null ? params : Map.of());
+        result.put("response", toolResult);
+        result.put("responseJson", resultJson);
+        result.put("duration", duration + "ms");
+        result.put("timestamp", System.currentTimeMillis());
+    }
+
+    /**
+     * 填充调用失败的结果
+     */
+    private void fillErrorResult(Map<String, Object> result, McpToolData tool, Throwable e) {
+        result.put("success", false);
+        result.put("error", e.getMessage());
+        result.put("errorType", e.getClass().getSimpleName());
+        result.put("toolId", tool.getId());
+        result.put("toolName", tool.getName());
+    }
+
     /**
      * 获取工具信息（包括参数定义）
      *
@@ -185,7 +314,6 @@ public class McpToolTestController {
      * 解析配置 JSON
      */
     private Map parseConfig(String configJson) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
             if (configJson == null || configJson.isEmpty()) {
                 return Map.of();
@@ -0,0 +1,39 @@
+package cn.sam.demo.mcpclient.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量工具调用请求实体
+ *
+ * @author Administrator
+ */
+@Data
+public class McpBatchInvokeRequest {
+
+    /**
+     * 工具调用列表
+     */
+    private List<Call> calls;
+
+    /**
+     * 单次调用的超时时间（毫秒），默认使用 mcp.http-client.read-timeout
+     */
+    private Long timeoutMs;
+
+    @Data
+    public static class Call {
+
+        /**
+         * 工具ID
+         */
+        private Long toolId;
+
+        /**
+         * 工具参数
+         */
+        private Map<String, Object> params;
+    }
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -57,5 +58,12 @@ public class ChatHistory {
      */
     @TableField("update_time")
     private LocalDateTime updateTime;
+
+    /**
+     * 本轮对话（用户消息 + AI回复）的 token 数，构建上下文时计算一次后随会话窗口缓存，不入库也不返回给前端
+     */
+    @JsonIgnore
+    @TableField(exist = false)
+    private Integer tokenCount;
 }
 
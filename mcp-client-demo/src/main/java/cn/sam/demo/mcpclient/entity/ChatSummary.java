@@ -0,0 +1,85 @@
+package cn.sam.demo.mcpclient.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话滚动摘要实体
+ * 每个会话一条，记录已合并进摘要的最后一轮对话（创建时间, ID），之后的对话仍以原文发送
+ * @author Administrator
+ */
+@TableName("chat_summary")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSummary {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 会话ID
+     */
+    @TableField("session_id")
+    private String sessionId;
+
+    /**
+     * 摘要内容
+     */
+    @TableField("summary")
+    private String summary;
+
+    /**
+     * 已合并的最后一轮对话ID
+     */
+    @TableField("last_history_id")
+    private Long lastHistoryId;
+
+    /**
+     * 已合并的最后一轮对话的创建时间
+     */
+    @TableField("last_history_time")
+    private LocalDateTime lastHistoryTime;
+
+    /**
+     * 已合并的对话轮数
+     */
+    @TableField("turn_count")
+    private Integer turnCount;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+
+    /**
+     * 该轮对话是否已合并进摘要
+     */
+    public boolean covers(ChatHistory chatHistory) {
+        if (chatHistory.getId() == null || chatHistory.getCreateTime() == null) {
+            // 尚未写入数据库的记录一定比摘要新
+            return false;
+        }
+        int compare = chatHistory.getCreateTime().compareTo(lastHistoryTime);
+        return compare < 0 || (compare == 0 && chatHistory.getId() <= lastHistoryId);
+    }
+}
@@ -59,6 +59,12 @@ public class McpMarket {
     @TableField("status")
     private String status;
 
+    /**
+     * 后台同步间隔（秒），为空时使用默认间隔
+     */
+    @TableField("sync_interval")
+    private Integer syncInterval;
+
     /**
      * 创建时间
      */
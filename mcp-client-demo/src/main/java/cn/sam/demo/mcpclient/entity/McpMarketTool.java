@@ -3,6 +3,7 @@ package cn.sam.demo.mcpclient.entity;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableLogic;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -35,6 +36,12 @@ public class McpMarketTool {
     @TableField("market_id")
     private Long marketId;
 
+    /**
+     * 市场中的服务器ID，与市场ID组成唯一键
+     */
+    @TableField("server_id")
+    private String serverId;
+
     /**
      * 工具名称
      */
@@ -59,6 +66,12 @@ public class McpMarketTool {
     @TableField("tool_metadata")
     private String toolMetadata;
 
+    /**
+     * 元数据内容哈希（SHA-256），刷新时与市场返回的内容比较
+     */
+    @TableField("content_hash")
+    private String contentHash;
+
     /**
      * 是否已加载到本地：0-未加载, 1-已加载
      */
@@ -71,6 +84,13 @@ public class McpMarketTool {
     @TableField("local_tool_id")
     private Long localToolId;
 
+    /**
+     * 是否已从市场下架：0-否, 1-是（逻辑删除，服务器重新出现时恢复）
+     */
+    @TableLogic
+    @TableField("deleted")
+    private Integer deleted;
+
     /**
      * 创建时间
      */
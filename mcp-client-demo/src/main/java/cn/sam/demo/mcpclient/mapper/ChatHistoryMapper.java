@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -22,13 +23,57 @@ public interface ChatHistoryMapper extends BaseMapper<ChatHistory> {
     List<ChatHistory> selectBySessionIdOrderByCreateTimeAsc(@Param("sessionId") String sessionId);
 
     /**
-     * 根据会话ID查询最近N条历史记录
+     * 根据会话ID查询最近N条历史记录，按创建时间升序排列
      * @param sessionId 会话ID
      * @param limit 限制条数
      * @return 历史记录列表
      */
     List<ChatHistory> selectRecentBySessionId(@Param("sessionId") String sessionId, @Param("limit") Integer limit);
 
+    /**
+     * 查询游标（创建时间, ID）之前的N条历史记录，按创建时间升序排列
+     * @param sessionId 会话ID
+     * @param beforeTime 游标记录的创建时间
+     * @param beforeId 游标记录的ID
+     * @param limit 限制条数
+     * @return 历史记录列表
+     */
+    List<ChatHistory> selectPageBefore(@Param("sessionId") String sessionId,
+                                       @Param("beforeTime") LocalDateTime beforeTime,
+                                       @Param("beforeId") Long beforeId,
+                                       @Param("limit") Integer limit);
+
+    /**
+     * 查询游标（创建时间, ID）之后的N条历史记录，按创建时间升序排列
+     * @param sessionId 会话ID
+     * @param afterTime 游标记录的创建时间
+     * @param afterId 游标记录的ID，为空时从第一条开始
+     * @param limit 限制条数
+     * @return 历史记录列表
+     */
+    List<ChatHistory> selectPageAfter(@Param("sessionId") String sessionId,
+                                      @Param("afterTime") LocalDateTime afterTime,
+                                      @Param("afterId") Long afterId,
+                                      @Param("limit") Integer limit);
+
+    /**
+     * 统计游标（创建时间, ID）之后的历史记录数
+     * @param sessionId 会话ID
+     * @param afterTime 游标记录的创建时间
+     * @param afterId 游标记录的ID，为空时统计全部
+     * @return 记录数
+     */
+    long countAfter(@Param("sessionId") String sessionId,
+                    @Param("afterTime") LocalDateTime afterTime,
+                    @Param("afterId") Long afterId);
+
+    /**
+     * 批量插入历史记录（多行 INSERT），插入后回填主键
+     * @param list 历史记录列表
+     * @return 插入的记录数
+     */
+    int insertBatch(List<ChatHistory> list);
+
     /**
      * 删除指定会话的所有历史记录
      * @param sessionId 会话ID
@@ -0,0 +1,13 @@
+package cn.sam.demo.mcpclient.mapper;
+
+import cn.sam.demo.mcpclient.entity.ChatSummary;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 会话滚动摘要Mapper
+ * @author Administrator
+ */
+@Mapper
+public interface ChatSummaryMapper extends BaseMapper<ChatSummary> {
+}
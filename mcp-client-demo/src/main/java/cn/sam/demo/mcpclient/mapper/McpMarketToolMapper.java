@@ -3,6 +3,7 @@ package cn.sam.demo.mcpclient.mapper;
 import cn.sam.demo.mcpclient.entity.McpMarketTool;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -42,13 +43,45 @@ public interface McpMarketToolMapper extends BaseMapper<McpMarketTool> {
     int updateLoadedStatus(Long id, Boolean isLoaded, Long localToolId);
 
     /**
-     * 根据市场ID和服务器ID查询工具（通过元数据中的id字段）
+     * 查询市场下所有工具（含已下架）的同步状态，刷新时一次加载
      *
      * @param marketId 市场ID
-     * @param serverId 服务器ID（从元数据JSON中提取）
-     * @return 工具实体
+     * @return 工具列表（只包含 id、server_id、content_hash、deleted）
      */
-    McpMarketTool selectByMarketIdAndServerId(@org.apache.ibatis.annotations.Param("marketId") Long marketId,
-                                               @org.apache.ibatis.annotations.Param("serverId") String serverId);
+    List<McpMarketTool> selectSyncStateByMarketId(@Param("marketId") Long marketId);
+
+    /**
+     * 批量插入或更新工具（按 market_id + server_id 唯一键），一条多行 INSERT ... ON DUPLICATE KEY UPDATE
+     * 已存在的记录只更新名称、描述、元数据和内容哈希，保留加载状态；已下架的记录恢复
+     *
+     * @param list 工具列表
+     * @return 影响行数（MySQL 中插入计 1，更新计 2）
+     */
+    int upsertBatch(@Param("list") List<McpMarketTool> list);
+
+    /**
+     * 把从市场下架的工具标记为已删除
+     *
+     * @param ids 工具ID列表
+     * @return 更新行数
+     */
+    int markDeleted(@Param("ids") List<Long> ids);
+
+    /**
+     * 查询并锁定待加载的市场工具（SELECT ... FOR UPDATE，需要在事务中调用），不含已下架的工具
+     * 同一工具的并发加载在此排队，保证 is_loaded 的判断有效
+     *
+     * @param ids 市场工具ID列表
+     * @return 市场工具列表
+     */
+    List<McpMarketTool> selectForLoad(@Param("ids") List<Long> ids);
+
+    /**
+     * 批量标记为已加载，每个工具写入各自的 localToolId（一条 UPDATE ... CASE）
+     *
+     * @param tools 市场工具列表，需要包含 id 和 localToolId
+     * @return 更新行数
+     */
+    int markLoadedBatch(@Param("list") List<McpMarketTool> tools);
 }
 
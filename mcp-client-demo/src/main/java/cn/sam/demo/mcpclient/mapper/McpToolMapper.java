@@ -3,6 +3,7 @@ package cn.sam.demo.mcpclient.mapper;
 import cn.sam.demo.mcpclient.entity.McpToolData;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -37,5 +38,12 @@ public interface McpToolMapper extends BaseMapper<McpToolData> {
      * @return 工具列表
      */
     List<McpToolData> selectByNameLike(String name);
-}
 
+    /**
+     * 批量新增工具（一条多行 INSERT），生成的主键回填到各工具的 id
+     *
+     * @param tools 工具列表
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<McpToolData> tools);
+}
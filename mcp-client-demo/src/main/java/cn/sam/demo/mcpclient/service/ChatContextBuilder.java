@@ -0,0 +1,143 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatContextProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.entity.ChatSummary;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话上下文构建服务
+ * 按 token 预算从最近一轮开始向前选择历史对话，短对话可以保留更多轮次，长对话不会撑爆上下文；
+ * 会话有滚动摘要时先放入摘要，再放摘要之后的原文对话；
+ * 系统提示由 ChatClient 的 defaultSystem 统一设置，这里不再重复添加
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class ChatContextBuilder {
+
+    private static final String SUMMARY_PREFIX = "以下是本会话较早对话的摘要：\n";
+
+    @Resource
+    private ChatHistoryService chatHistoryService;
+
+    @Resource
+    private ChatSummaryService chatSummaryService;
+
+    @Resource
+    private ChatContextProperties chatContextProperties;
+
+    @Resource
+    private TokenCountEstimator tokenCountEstimator;
+
+    private final AtomicLong buildCount = new AtomicLong();
+    private final AtomicLong totalTokens = new AtomicLong();
+    private final AtomicLong totalTurns = new AtomicLong();
+    private final AtomicLong truncatedCount = new AtomicLong();
+
+    /**
+     * 构建历史对话消息（不含当前用户消息）
+     *
+     * @param sessionId   会话ID
+     * @param userMessage 当前用户消息，占用的 token 从预算中扣除
+     * @return 摘要（如有）和按对话顺序排列的历史消息
+     */
+    public List<Message> build(String sessionId, String userMessage) {
+        List<ChatHistory> histories = chatHistoryService.getRecentHistoryBySessionId(sessionId, chatContextProperties.getMaxTurns());
+        int budget = chatContextProperties.getMaxTokens() - countMessage(userMessage);
+
+        List<Message> messageList = new ArrayList<>();
+        ChatSummary summary = chatSummaryService.getSummary(sessionId);
+        if (summary != null) {
+            // 已合并进摘要的对话不再以原文发送
+            histories = histories.stream().filter(item -> !summary.covers(item)).toList();
+            String summaryText = SUMMARY_PREFIX + summary.getSummary();
+            budget -= countMessage(summaryText);
+            messageList.add(new SystemMessage(summaryText));
+        }
+
+        fit(histories, budget).forEach(item -> {
+            messageList.add(new UserMessage(item.getUserMessage()));
+            messageList.add(new AssistantMessage(item.getAiResponse()));
+        });
+        return messageList;
+    }
+
+    /**
+     * 从最近一轮开始向前选择能放进预算的对话，遇到第一轮放不下的即停止，保证上下文连续
+     *
+     * @param histories 按对话顺序排列的候选历史记录
+     * @param budget    可用 token 数
+     * @return 选中的历史记录，按对话顺序排列
+     */
+    List<ChatHistory> fit(List<ChatHistory> histories, int budget) {
+        int used = 0;
+        int from = histories.size();
+        while (from > 0) {
+            int tokens = tokensOf(histories.get(from - 1));
+            if (used + tokens > budget) {
+                break;
+            }
+            used += tokens;
+            from--;
+        }
+
+        buildCount.incrementAndGet();
+        totalTokens.addAndGet(used);
+        totalTurns.addAndGet(histories.size() - from);
+        if (from > 0) {
+            truncatedCount.incrementAndGet();
+            log.debug("上下文超出 token 预算，丢弃较早的 {} 轮对话", from);
+        }
+        return histories.subList(from, histories.size());
+    }
+
+    /**
+     * 获取上下文构建统计信息
+     */
+    public Map<String, Object> getStats() {
+        long builds = buildCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxTokens", chatContextProperties.getMaxTokens());
+        stats.put("maxTurns", chatContextProperties.getMaxTurns());
+        stats.put("tokenizer", tokenCountEstimator.getClass().getSimpleName());
+        stats.put("builds", builds);
+        stats.put("avgHistoryTokens", builds > 0 ? (double) totalTokens.get() / builds : 0);
+        stats.put("avgHistoryTurns", builds > 0 ? (double) totalTurns.get() / builds : 0);
+        stats.put("truncated", truncatedCount.get());
+        return stats;
+    }
+
+    /**
+     * 一轮对话的 token 数，首次计算后保存在记录上，会话窗口中的记录不会重复计算；
+     * 多个请求同时计算同一条记录时写入的值相同
+     */
+    private int tokensOf(ChatHistory chatHistory) {
+        Integer cached = chatHistory.getTokenCount();
+        if (cached != null) {
+            return cached;
+        }
+        int tokens = countMessage(chatHistory.getUserMessage()) + countMessage(chatHistory.getAiResponse());
+        chatHistory.setTokenCount(tokens);
+        return tokens;
+    }
+
+    private int countMessage(String text) {
+        int tokens = text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+        return tokens + chatContextProperties.getPerMessageOverhead();
+    }
+}
@@ -3,6 +3,7 @@ package cn.sam.demo.mcpclient.service;
 import cn.sam.demo.mcpclient.entity.ChatHistory;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 聊天历史记录服务接口
@@ -12,6 +13,7 @@ public interface ChatHistoryService {
 
     /**
      * 保存聊天记录
+     * 会话窗口同步更新，数据库写入异步完成
      * @param chatHistory 聊天记录
      * @return 保存后的聊天记录
      */
@@ -25,7 +27,18 @@ public interface ChatHistoryService {
     List<ChatHistory> getHistoryBySessionId(String sessionId);
 
     /**
-     * 根据会话ID查询最近N条历史记录
+     * 分页查询会话历史记录（keyset 分页），按创建时间升序排列
+     * 不传游标时返回最近的一页，之后以本页第一条记录的 ID 作为游标向前翻页
+     * @param sessionId 会话ID
+     * @param beforeId 游标记录ID，只返回该记录之前的记录，为空时从最新记录开始
+     * @param limit 每页条数
+     * @return 历史记录列表
+     */
+    List<ChatHistory> getHistoryPage(String sessionId, Long beforeId, Integer limit);
+
+    /**
+     * 根据会话ID查询最近N条历史记录，按创建时间升序排列
+     * 活跃会话从内存中的会话窗口读取
      * @param sessionId 会话ID
      * @param limit 限制条数
      * @return 历史记录列表
@@ -38,5 +51,11 @@ public interface ChatHistoryService {
      * @return 是否删除成功
      */
     boolean deleteBySessionId(String sessionId);
+
+    /**
+     * 获取会话上下文缓存统计
+     * @return 统计信息
+     */
+    Map<String, Object> getContextCacheStats();
 }
 
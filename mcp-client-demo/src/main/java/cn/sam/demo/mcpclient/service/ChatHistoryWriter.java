@@ -0,0 +1,272 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatHistoryWriterProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 聊天记录异步批量写入服务
+ * 记录先进入有界队列，由单独的写入线程按数量（batch-size）或时间（flush-interval）
+ * 合并为多行 INSERT；提交不阻塞调用线程（通常是 Reactor 线程），队列已满时直接抛出
+ * RejectedExecutionException 交给调用方处理；删除会话时可取消该会话尚未写入的记录；
+ * 应用关闭时写完队列中剩余的记录
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class ChatHistoryWriter {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Resource
+    private ChatHistoryWriterProperties chatHistoryWriterProperties;
+
+    /**
+     * 写入线程等待新记录时检查是否已停止的间隔
+     */
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private BlockingQueue<PendingWrite> queue;
+
+    // 已提交但尚未写完的记录（包括写入线程已取出、正在攒批的记录），取消会话时使用
+    private final Set<PendingWrite> unwritten = ConcurrentHashMap.newKeySet();
+
+    // 写入一批记录期间持有，取消会话时据此等待正在进行的写入结束
+    private final Object flushLock = new Object();
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(chatHistoryWriterProperties.getQueueCapacity());
+        running = true;
+        writerThread = new Thread(this::runLoop, "chat-history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 提交一条记录
+     *
+     * @param chatHistory 聊天记录
+     * @return 写入数据库后完成的 Future；会话被删除而取消时以 CancellationException 结束
+     * @throws RejectedExecutionException 队列已满或写入线程已停止
+     */
+    public CompletableFuture<Void> submit(ChatHistory chatHistory) {
+        PendingWrite pending = new PendingWrite(chatHistory, new CompletableFuture<>());
+        unwritten.add(pending);
+        if (running && queue.offer(pending)) {
+            enqueuedCount.incrementAndGet();
+            pending.future().whenComplete((ignored, e) -> unwritten.remove(pending));
+            return pending.future();
+        }
+        unwritten.remove(pending);
+        rejectedCount.incrementAndGet();
+        throw new RejectedExecutionException(running ? "聊天记录写入队列已满" : "聊天记录写入线程已停止");
+    }
+
+    /**
+     * 取消指定会话尚未写入的记录，并等待正在进行的批量写入结束
+     * 返回后该会话此前提交的记录不会再写入数据库，对应的 Future 以 CancellationException 结束
+     *
+     * @param sessionId 会话ID
+     * @return 取消的记录数
+     */
+    public int cancel(String sessionId) {
+        int cancelled = 0;
+        for (PendingWrite pending : unwritten) {
+            if (sessionId.equals(pending.record().getSessionId()) && pending.future().cancel(false)) {
+                cancelled++;
+            }
+        }
+        queue.removeIf(pending -> pending.future().isCancelled());
+        // 已开始的批量写入可能包含这些记录，等它结束；之后的写入会跳过已取消的记录
+        synchronized (flushLock) {
+            cancelledCount.addAndGet(cancelled);
+        }
+        return cancelled;
+    }
+
+    /**
+     * 获取写入统计信息
+     */
+    public Map<String, Object> getStats() {
+        long batches = batchCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", chatHistoryWriterProperties.getQueueCapacity());
+        stats.put("enqueued", enqueuedCount.get());
+        stats.put("written", writtenCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("cancelled", cancelledCount.get());
+        stats.put("batches", batches);
+        stats.put("avgBatchSize", batches > 0 ? (double) writtenCount.get() / batches : 0);
+        stats.put("lastFlushMillis", lastFlushNanos / 1_000_000.0);
+        stats.put("avgFlushMillis", batches > 0 ? totalFlushNanos.get() / 1_000_000.0 / batches : 0);
+        stats.put("maxFlushMillis", maxFlushNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    /**
+     * 停止接收新记录，并等待队列中的记录写完
+     * 不中断写入线程（中断标记会让正在进行的写入和之后获取连接失败），写入线程在等待时定期检查是否已停止
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(chatHistoryWriterProperties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("聊天记录写入线程未在 {} 内完成，剩余 {} 条未写入",
+                    chatHistoryWriterProperties.getShutdownTimeout(), queue.size());
+        }
+    }
+
+    private void runLoop() {
+        List<PendingWrite> batch = new ArrayList<>(chatHistoryWriterProperties.getBatchSize());
+        // 停止后继续运行，直到队列中的记录全部写完
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                log.warn("聊天记录写入线程被中断，写入已收集的记录后退出");
+                running = false;
+            }
+            try {
+                flush(batch);
+            } catch (Exception e) {
+                log.error("聊天记录写入线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 收集一批记录：等待第一条记录，之后在 flush-interval 内攒满 batch-size 条或到期为止
+     */
+    private void collect(List<PendingWrite> batch) throws InterruptedException {
+        int batchSize = chatHistoryWriterProperties.getBatchSize();
+        long flushIntervalNanos = chatHistoryWriterProperties.getFlushInterval().toNanos();
+        if (!running) {
+            queue.drainTo(batch, batchSize);
+            return;
+        }
+        PendingWrite first = poll(System.nanoTime() + flushIntervalNanos);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize || !running) {
+                return;
+            }
+            PendingWrite next = poll(deadline);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * 在截止时间前等待下一条记录，每隔 STOP_CHECK_NANOS 检查一次是否已停止
+     */
+    private PendingWrite poll(long deadline) throws InterruptedException {
+        while (running) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            PendingWrite next = queue.poll(Math.min(remaining, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                return next;
+            }
+        }
+        return queue.poll();
+    }
+
+    /**
+     * 写入一批记录，批量写入失败时逐条重试，避免一条坏数据拖垮整批；已取消的记录跳过
+     */
+    private void flush(List<PendingWrite> batch) {
+        synchronized (flushLock) {
+            batch.removeIf(pending -> pending.future().isCancelled());
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        List<ChatHistory> rows = batch.stream().map(PendingWrite::record).collect(Collectors.toList());
+        try {
+            chatHistoryMapper.insertBatch(rows);
+            writtenCount.addAndGet(rows.size());
+            batch.forEach(pending -> pending.future().complete(null));
+        } catch (Exception e) {
+            log.warn("批量写入聊天记录失败，改为逐条写入: {} 条", rows.size(), e);
+            for (PendingWrite pending : batch) {
+                try {
+                    chatHistoryMapper.insert(pending.record());
+                    writtenCount.incrementAndGet();
+                    pending.future().complete(null);
+                } catch (Exception ex) {
+                    failedCount.incrementAndGet();
+                    pending.future().completeExceptionally(ex);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        batchCount.incrementAndGet();
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        lastFlushNanos = elapsed;
+    }
+
+    /**
+     * 等待写入的记录
+     */
+    private record PendingWrite(ChatHistory record, CompletableFuture<Void> future) {
+    }
+}
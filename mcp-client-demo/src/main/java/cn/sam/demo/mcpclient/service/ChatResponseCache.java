@@ -0,0 +1,167 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatResponseCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 对话回复缓存
+ * 首轮对话大量是相同的提示（上下文为空、消息相同），命中时直接返回上次的回复，不再请求模型。
+ * 缓存键为 规范化的系统提示 + 上下文哈希 + 规范化的用户消息 + 模型参数 + 提供的工具；
+ * 提供了有副作用的工具时不使用缓存：只有全部工具都声明了结果缓存（视为纯函数）才允许缓存回复
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class ChatResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Resource
+    private ChatResponseCacheProperties chatResponseCacheProperties;
+
+    @Resource
+    private ChatModel chatModel;
+
+    private Cache<String, String> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(chatResponseCacheProperties.getMaxEntries())
+                .expireAfterWrite(chatResponseCacheProperties.getTtl())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param systemPrompt 系统提示
+     * @param context      历史对话消息（含摘要）
+     * @param userMessage  用户消息
+     * @param tools        本次对话提供的工具
+     * @return 缓存键；未开启缓存或提供了有副作用的工具时返回 null
+     */
+    public String key(String systemPrompt, List<Message> context, String userMessage, List<ToolCallback> tools) {
+        if (!chatResponseCacheProperties.isEnabled() || !isSideEffectFree(tools)) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(normalize(systemPrompt)).append('\u0000');
+        for (Message message : context) {
+            builder.append(message.getMessageType().getValue()).append(':')
+                    .append(normalize(message.getText())).append('\n');
+        }
+        builder.append('\u0000').append(normalize(userMessage)).append('\u0000');
+        appendOptions(builder, chatModel.getDefaultOptions());
+        tools.stream()
+                .map(tool -> tool.getToolDefinition().name())
+                .sorted()
+                .forEach(name -> builder.append('\u0000').append(name));
+        return sha256(builder.toString());
+    }
+
+    /**
+     * 获取缓存的回复
+     *
+     * @param key 缓存键，为 null 时视为不缓存
+     * @return 缓存的回复，未命中时返回 null
+     */
+    public String get(String key) {
+        return key != null ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * 缓存完整的回复，空回复不缓存
+     */
+    public void put(String key, String response) {
+        if (key != null && response != null && !response.isEmpty()) {
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * 把缓存的回复切分为分片，供流式接口不等待地回放
+     */
+    public Flux<String> replay(String response) {
+        int chunkSize = Math.max(1, chatResponseCacheProperties.getReplayChunkSize());
+        List<String> chunks = new ArrayList<>(response.length() / chunkSize + 1);
+        int offset = 0;
+        while (offset < response.length()) {
+            int end = response.offsetByCodePoints(offset, Math.min(chunkSize, response.codePointCount(offset, response.length())));
+            chunks.add(response.substring(offset, end));
+            offset = end;
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    /**
+     * 获取回复缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", chatResponseCacheProperties.isEnabled());
+        result.put("size", cache.estimatedSize());
+        result.put("maxEntries", chatResponseCacheProperties.getMaxEntries());
+        result.put("ttlSeconds", chatResponseCacheProperties.getTtl().toSeconds());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+
+    private static boolean isSideEffectFree(List<ToolCallback> tools) {
+        return tools.stream().allMatch(tool -> tool instanceof McpToolCallback callback && callback.isSideEffectFree());
+    }
+
+    private static void appendOptions(StringBuilder builder, ChatOptions options) {
+        if (options == null) {
+            return;
+        }
+        builder.append("model=").append(options.getModel())
+                .append(",temperature=").append(options.getTemperature())
+                .append(",topP=").append(options.getTopP())
+                .append(",maxTokens=").append(options.getMaxTokens())
+                .append(",stop=").append(options.getStopSequences());
+    }
+
+    /**
+     * 去掉首尾空白，连续空白合并为一个空格
+     */
+    static String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cn.sam.demo.mcpclient.service;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式对话统计
+ * 客户端断开或超时后上游模型流随之取消，不再继续生成；
+ * 节省的 token 数按已完成回复的平均长度减去取消时已生成的长度估算
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Component
+public class ChatStreamTracker {
+
+    @Resource
+    private TokenCountEstimator tokenCountEstimator;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong completedTokens = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong cancelledTokens = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+
+    /**
+     * 流开始输出
+     */
+    public void started() {
+        activeCount.incrementAndGet();
+    }
+
+    /**
+     * 流正常结束
+     *
+     * @param response 完整回复
+     */
+    public void completed(String response) {
+        activeCount.decrementAndGet();
+        completedCount.incrementAndGet();
+        completedTokens.addAndGet(estimate(response));
+    }
+
+    /**
+     * 流因模型或工具出错结束
+     */
+    public void failed() {
+        activeCount.decrementAndGet();
+        failedCount.incrementAndGet();
+    }
+
+    /**
+     * 客户端断开或超时，上游模型流已取消
+     *
+     * @param partialResponse 取消前已生成的内容
+     */
+    public void cancelled(String partialResponse) {
+        activeCount.decrementAndGet();
+        cancelledCount.incrementAndGet();
+        int generated = estimate(partialResponse);
+        cancelledTokens.addAndGet(generated);
+        long completed = completedCount.get();
+        long saved = completed > 0 ? Math.max(0, completedTokens.get() / completed - generated) : 0;
+        savedTokens.addAndGet(saved);
+        log.debug("流式对话已取消，已生成约 {} 个 token，估计节省 {} 个 token", generated, saved);
+    }
+
+    /**
+     * 获取流式对话统计信息
+     */
+    public Map<String, Object> getStats() {
+        long completed = completedCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("active", activeCount.get());
+        stats.put("completed", completed);
+        stats.put("failed", failedCount.get());
+        stats.put("cancelled", cancelledCount.get());
+        stats.put("avgCompletedTokens", completed > 0 ? (double) completedTokens.get() / completed : 0);
+        stats.put("tokensGeneratedBeforeCancel", cancelledTokens.get());
+        stats.put("estimatedTokensSaved", savedTokens.get());
+        return stats;
+    }
+
+    private int estimate(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+}
@@ -0,0 +1,239 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatHistoryCacheProperties;
+import cn.sam.demo.mcpclient.config.ChatSummaryProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.entity.ChatSummary;
+import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
+import cn.sam.demo.mcpclient.mapper.ChatSummaryMapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话滚动摘要服务（记忆压缩）
+ * 会话中未被摘要的对话超过 trigger-turns 轮后，后台任务把除最近 keep-recent-turns 轮之外的对话
+ * 与已有摘要一起交给模型合并为新的摘要，并记录合并到的位置；之后只合并该位置之后的新对话。
+ * 构建上下文时发送 摘要 + 摘要之后的原文对话
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class ChatSummaryService {
+
+    private static final String SUMMARY_INSTRUCTION = """
+            你负责压缩一段对话的历史记忆。请把"已有摘要"和"新增对话"合并为一份新的摘要：
+            保留用户的目标、偏好、已确认的事实和结论以及尚未解决的问题，省略寒暄和重复内容。
+            只输出摘要正文，不超过 500 字。""";
+
+    @Resource
+    private ChatSummaryMapper chatSummaryMapper;
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Resource
+    private ChatModel chatModel;
+
+    @Resource
+    private DownstreamLimiter downstreamLimiter;
+
+    @Resource
+    private ChatSummaryProperties chatSummaryProperties;
+
+    @Resource
+    private ChatHistoryCacheProperties chatHistoryCacheProperties;
+
+    @Resource(name = "mcpTaskExecutor")
+    private ExecutorService mcpTaskExecutor;
+
+    // 会话ID -> 摘要（没有摘要的会话缓存为空值，避免每次请求都查询数据库）
+    private Cache<String, Optional<ChatSummary>> summaries;
+
+    // 正在压缩的会话，同一会话同时只运行一个任务
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong compactionCount = new AtomicLong();
+    private final AtomicLong foldedTurns = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalCompactionMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        summaries = Caffeine.newBuilder()
+                .maximumSize(chatHistoryCacheProperties.getMaxSessions())
+                .expireAfterAccess(chatHistoryCacheProperties.getIdleTimeout())
+                .build();
+    }
+
+    /**
+     * 获取会话的摘要
+     *
+     * @param sessionId 会话ID
+     * @return 摘要，会话尚未压缩或功能关闭时返回 null
+     */
+    public ChatSummary getSummary(String sessionId) {
+        if (!chatSummaryProperties.isEnabled()) {
+            return null;
+        }
+        return summaries.get(sessionId,
+                key -> Optional.ofNullable(downstreamLimiter.call(DownstreamLimiter.DB, () -> selectBySessionId(key))))
+                .orElse(null);
+    }
+
+    /**
+     * 新对话写入数据库后调用，在业务执行器上检查是否需要压缩
+     *
+     * @param sessionId 会话ID
+     */
+    public void scheduleCompaction(String sessionId) {
+        if (!chatSummaryProperties.isEnabled() || !compacting.add(sessionId)) {
+            return;
+        }
+        try {
+            mcpTaskExecutor.execute(() -> {
+                try {
+                    // 积压超过一次合并上限时继续合并，直到低于触发阈值
+                    while (compact(sessionId) > 0) {
+                        log.debug("会话摘要已更新: {}", sessionId);
+                    }
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    log.warn("会话摘要压缩失败: {}", sessionId, e);
+                } finally {
+                    compacting.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 执行器繁忙时跳过，下一轮对话写入后会再次检查
+            compacting.remove(sessionId);
+        }
+    }
+
+    /**
+     * 执行一次压缩：未摘要的对话超过阈值时，把较早的对话合并进摘要
+     *
+     * @param sessionId 会话ID
+     * @return 本次合并的轮数，未达到阈值时为 0
+     */
+    public int compact(String sessionId) {
+        ChatSummary current = selectBySessionId(sessionId);
+        LocalDateTime afterTime = current != null ? current.getLastHistoryTime() : null;
+        Long afterId = current != null ? current.getLastHistoryId() : null;
+
+        long pending = chatHistoryMapper.countAfter(sessionId, afterTime, afterId);
+        if (pending <= chatSummaryProperties.getTriggerTurns()) {
+            return 0;
+        }
+        int fold = (int) Math.min(pending - chatSummaryProperties.getKeepRecentTurns(), chatSummaryProperties.getMaxFoldTurns());
+        if (fold <= 0) {
+            return 0;
+        }
+        List<ChatHistory> turns = chatHistoryMapper.selectPageAfter(sessionId, afterTime, afterId, fold);
+        if (turns.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        String summary = downstreamLimiter.call(DownstreamLimiter.LLM,
+                () -> summarize(current != null ? current.getSummary() : null, turns));
+        ChatHistory last = turns.get(turns.size() - 1);
+        LocalDateTime now = LocalDateTime.now();
+        if (current == null) {
+            chatSummaryMapper.insert(ChatSummary.builder()
+                    .sessionId(sessionId)
+                    .summary(summary)
+                    .lastHistoryId(last.getId())
+                    .lastHistoryTime(last.getCreateTime())
+                    .turnCount(turns.size())
+                    .createTime(now)
+                    .updateTime(now)
+                    .build());
+        } else {
+            current.setSummary(summary);
+            current.setLastHistoryId(last.getId());
+            current.setLastHistoryTime(last.getCreateTime());
+            current.setTurnCount(current.getTurnCount() + turns.size());
+            current.setUpdateTime(now);
+            chatSummaryMapper.updateById(current);
+        }
+        summaries.invalidate(sessionId);
+
+        compactionCount.incrementAndGet();
+        foldedTurns.addAndGet(turns.size());
+        totalCompactionMillis.addAndGet(System.currentTimeMillis() - start);
+        log.info("会话 {} 合并了 {} 轮对话到摘要", sessionId, turns.size());
+        return turns.size();
+    }
+
+    /**
+     * 删除会话的摘要
+     *
+     * @param sessionId 会话ID
+     */
+    public void deleteBySessionId(String sessionId) {
+        chatSummaryMapper.delete(new LambdaQueryWrapper<ChatSummary>().eq(ChatSummary::getSessionId, sessionId));
+        summaries.invalidate(sessionId);
+    }
+
+    /**
+     * 获取压缩统计信息
+     */
+    public Map<String, Object> getStats() {
+        long compactions = compactionCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", chatSummaryProperties.isEnabled());
+        stats.put("triggerTurns", chatSummaryProperties.getTriggerTurns());
+        stats.put("keepRecentTurns", chatSummaryProperties.getKeepRecentTurns());
+        stats.put("compactions", compactions);
+        stats.put("foldedTurns", foldedTurns.get());
+        stats.put("failed", failedCount.get());
+        stats.put("running", compacting.size());
+        stats.put("avgCompactionMillis", compactions > 0 ? (double) totalCompactionMillis.get() / compactions : 0);
+        return stats;
+    }
+
+    private ChatSummary selectBySessionId(String sessionId) {
+        return chatSummaryMapper.selectOne(new LambdaQueryWrapper<ChatSummary>().eq(ChatSummary::getSessionId, sessionId));
+    }
+
+    /**
+     * 调用模型合并摘要
+     */
+    private String summarize(String previous, List<ChatHistory> turns) {
+        StringBuilder content = new StringBuilder();
+        content.append("已有摘要：\n").append(previous != null ? previous : "（无）").append("\n\n新增对话：\n");
+        for (ChatHistory turn : turns) {
+            content.append("用户：").append(turn.getUserMessage()).append('\n');
+            content.append("AI：").append(turn.getAiResponse()).append('\n');
+        }
+        String summary = chatModel.call(new Prompt(List.of(new SystemMessage(SUMMARY_INSTRUCTION), new UserMessage(content.toString()))))
+                .getResult()
+                .getOutput()
+                .getText();
+        if (summary == null || summary.isBlank()) {
+            throw new IllegalStateException("模型返回的摘要为空");
+        }
+        return summary.trim();
+    }
+}
@@ -0,0 +1,240 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下游并发限制服务
+ * 虚拟线程本身几乎没有数量限制，真正需要保护的是 LLM、数据库和远程 MCP 服务器，
+ * 因此每个下游各持有一个信号量，键名形如 llm、db、local、mcp:http://host:port/mcp，
+ * 并发上限按冒号前的下游类型从 mcp.execution.limits 中读取。
+ * 阻塞调用在调用线程上等待许可；流式和异步调用不占用线程等待，许可不足时排队，
+ * 由归还许可的线程按顺序分配给排队的订阅
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class DownstreamLimiter {
+
+    public static final String LLM = "llm";
+    public static final String DB = "db";
+    public static final String MCP = "mcp";
+    public static final String LOCAL = "local";
+
+    @Resource
+    private McpExecutionProperties mcpExecutionProperties;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * 远程 MCP 服务器对应的下游键
+     */
+    public static String mcpKey(String url) {
+        return MCP + ":" + url;
+    }
+
+    /**
+     * 在并发许可内执行阻塞调用
+     *
+     * @param downstream 下游键
+     * @param action     调用逻辑
+     * @return 调用结果
+     * @throws IllegalStateException 如果等待许可超时
+     */
+    public <T> T call(String downstream, Callable<T> action) {
+        try (Permit ignored = acquire(downstream)) {
+            return action.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在并发许可内执行流式调用，许可在流结束、出错或取消时释放
+     * 许可不足时不阻塞订阅线程，等待超过 acquire-timeout 时以 IllegalStateException 结束
+     */
+    public <T> Flux<T> limit(String downstream, Flux<T> flux) {
+        return Flux.usingWhen(acquireAsync(downstream, 1), permit -> flux,
+                DownstreamLimiter::release, (permit, e) -> release(permit), DownstreamLimiter::release);
+    }
+
+    /**
+     * 在并发许可内执行异步调用，许可在结果返回、出错或取消时释放
+     * 许可不足时不阻塞订阅线程，等待超过 acquire-timeout 时以 IllegalStateException 结束
+     */
+    public <T> Mono<T> limit(String downstream, Mono<T> mono) {
+        return limit(downstream, 1, mono);
+    }
+
+    /**
+     * 在多个并发许可内执行异步调用，用于把多个调用合并在一个请求中发送的场景（如 JSON-RPC 批量请求）
+     */
+    public <T> Mono<T> limit(String downstream, int permits, Mono<T> mono) {
+        return Mono.usingWhen(acquireAsync(downstream, permits), permit -> mono,
+                DownstreamLimiter::release, (permit, e) -> release(permit), DownstreamLimiter::release);
+    }
+
+    /**
+     * 异步获取并发许可：有空闲许可时立即返回，否则排队等待归还的许可
+     * 订阅在等待期间被取消或超时时退出队列；许可在取消之后才分配到时直接归还
+     */
+    private Mono<Permit> acquireAsync(String downstream, int permits) {
+        return Mono.defer(() -> {
+            Limit limit = limits.computeIfAbsent(downstream, this::createLimit);
+            int count = Math.max(1, Math.min(permits, limit.max()));
+            if (limit.waiters().isEmpty() && limit.semaphore().tryAcquire(count)) {
+                return Mono.just(new Permit(limit, count));
+            }
+            return Mono.<Permit>create(sink -> {
+                        Waiter waiter = new Waiter(count, sink);
+                        limit.waiters().add(waiter);
+                        sink.onDispose(() -> limit.waiters().remove(waiter));
+                        // 入队前归还的许可没有分配给任何人，这里补一次分配
+                        grant(limit);
+                    })
+                    .timeout(mcpExecutionProperties.getAcquireTimeout())
+                    .onErrorMap(TimeoutException.class, e -> {
+                        limit.rejected().incrementAndGet();
+                        return new IllegalStateException("下游并发已满，请稍后重试: " + downstream, e);
+                    })
+                    .doOnDiscard(Permit.class, Permit::close);
+        });
+    }
+
+    /**
+     * 按排队顺序把空闲许可分配给等待的订阅
+     */
+    private static void grant(Limit limit) {
+        Waiter waiter;
+        while ((waiter = limit.waiters().peek()) != null) {
+            if (!limit.semaphore().tryAcquire(waiter.permits())) {
+                return;
+            }
+            if (limit.waiters().remove(waiter)) {
+                waiter.sink().success(new Permit(limit, waiter.permits()));
+            } else {
+                // 已被其他线程分配或已取消
+                limit.semaphore().release(waiter.permits());
+            }
+        }
+    }
+
+    private static Mono<Void> release(Permit permit) {
+        return Mono.fromRunnable(permit::close);
+    }
+
+    /**
+     * 获取并发许可
+     *
+     * @param downstream 下游键
+     * @return 许可，使用完毕后需要关闭
+     * @throws IllegalStateException 如果等待许可超时
+     */
+    public Permit acquire(String downstream) {
+        return acquire(downstream, 1);
+    }
+
+    /**
+     * 一次获取多个并发许可，用于把多个调用合并在一个请求中发送的场景（如 JSON-RPC 批量请求），
+     * 数量超过上限时按上限获取
+     *
+     * @param downstream 下游键
+     * @param permits    许可数量
+     * @return 许可，关闭时一起归还
+     * @throws IllegalStateException 如果等待许可超时
+     */
+    public Permit acquire(String downstream, int permits) {
+        Limit limit = limits.computeIfAbsent(downstream, this::createLimit);
+        int count = Math.max(1, Math.min(permits, limit.max()));
+        try {
+            long timeoutMillis = mcpExecutionProperties.getAcquireTimeout().toMillis();
+            if (!limit.semaphore().tryAcquire(count, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                limit.rejected().incrementAndGet();
+                throw new IllegalStateException("下游并发已满，请稍后重试: " + downstream);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待下游并发许可被中断: " + downstream, e);
+        }
+        return new Permit(limit, count);
+    }
+
+    /**
+     * 获取各下游的并发统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        limits.forEach((downstream, limit) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("max", limit.max());
+            item.put("inFlight", limit.max() - limit.semaphore().availablePermits());
+            item.put("waiting", limit.semaphore().getQueueLength() + limit.waiters().size());
+            item.put("rejected", limit.rejected().get());
+            stats.put(downstream, item);
+        });
+        return stats;
+    }
+
+    private Limit createLimit(String downstream) {
+        int separator = downstream.indexOf(':');
+        String type = separator > 0 ? downstream.substring(0, separator) : downstream;
+        int max = mcpExecutionProperties.getLimits().getOrDefault(type, Integer.MAX_VALUE);
+        log.debug("创建下游并发限制: {} -> {}", downstream, max);
+        return new Limit(max, new Semaphore(max, true), new ConcurrentLinkedQueue<>(), new AtomicLong());
+    }
+
+    private record Limit(int max, Semaphore semaphore, Queue<Waiter> waiters, AtomicLong rejected) {
+    }
+
+    /**
+     * 排队等待许可的异步订阅
+     */
+    private record Waiter(int permits, MonoSink<Permit> sink) {
+    }
+
+    /**
+     * 并发许可，关闭时归还并分配给排队的异步订阅，重复关闭无效
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final Limit limit;
+        private final int permits;
+        private boolean released;
+
+        private Permit(Limit limit, int permits) {
+            this.limit = limit;
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            limit.semaphore().release(permits);
+            grant(limit);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.dto.McpServerListResponse;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 市场工具刷新流水线
+ * 分页请求按有界并发提前发出（最多 prefetchPages 页在途），每页到达后即在请求线程上解析；
+ * 写库是单独的消费阶段，按页码顺序逐页写入，网络请求和数据库写入同时进行。
+ * 某一页不足一整页时视为最后一页，取消其后已经发出的请求；
+ * 只有以这样一个成功返回的不足页结束时才调用 {@link PageWriter#complete()}，由写入方处理本次没有出现的服务器，
+ * 达到 maxPages 时列表可能不完整，不做移除；任何一页请求失败时整个刷新失败。
+ * 进度中包含新增、更新、未变化和移除的数量
+ *
+ * @author Administrator
+ */
+@Slf4j
+public class MarketRefreshPipeline {
+
+    /**
+     * 获取并解析一页服务器，没有更多数据时返回空列表
+     * 请求失败或响应无法识别时必须抛出异常，不能返回空列表，否则会被当作最后一页
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+        List<McpServerListResponse.McpServerInfo> fetch(int page) throws Exception;
+    }
+
+    /**
+     * 写入一页服务器
+     */
+    @FunctionalInterface
+    public interface PageWriter {
+
+        /**
+         * 写入一页服务器
+         *
+         * @return 本页新增、更新和未变化的数量
+         */
+        WriteResult write(List<McpServerListResponse.McpServerInfo> servers) throws Exception;
+
+        /**
+         * 以不足一整页的页面结束、全部页面写完后调用；出错、被取消或达到最大页数时不调用
+         *
+         * @return 移除的数量
+         */
+        default int complete() throws Exception {
+            return 0;
+        }
+    }
+
+    /**
+     * 一页的写入结果
+     */
+    public record WriteResult(int added, int updated, int unchanged) {
+    }
+
+    /**
+     * 刷新状态
+     */
+    public static class State {
+        public static final String RUNNING = "RUNNING";
+        public static final String COMPLETED = "COMPLETED";
+        public static final String FAILED = "FAILED";
+        public static final String CANCELLED = "CANCELLED";
+    }
+
+    private final Long marketId;
+    private final PageFetcher fetcher;
+    private final PageWriter writer;
+    private final Executor executor;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final int maxPages;
+
+    private final Sinks.Empty<Void> cancelSignal = Sinks.empty();
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicLong serversFetched = new AtomicLong();
+    private final AtomicInteger pagesWritten = new AtomicInteger();
+    private final AtomicLong serversWritten = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger added = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private volatile int removed;
+
+    private volatile String state = State.RUNNING;
+    private volatile String error;
+    private volatile boolean cancelled;
+    private volatile boolean reachedLastPage;
+    private volatile LocalDateTime startTime;
+    private volatile long startNanos;
+    private volatile long elapsedNanos = -1;
+
+    /**
+     * @param marketId      市场ID
+     * @param fetcher       分页请求，在执行器上并发调用
+     * @param writer        写库，按页码顺序逐页调用，同一时间只有一页在写
+     * @param executor      执行请求和写库的执行器
+     * @param pageSize      每页服务器数，返回不足一页即为最后一页
+     * @param prefetchPages 同时在途的分页请求数
+     * @param maxPages      最多请求的页数
+     */
+    public MarketRefreshPipeline(Long marketId, PageFetcher fetcher, PageWriter writer, Executor executor,
+                                 int pageSize, int prefetchPages, int maxPages) {
+        this.marketId = marketId;
+        this.fetcher = fetcher;
+        this.writer = writer;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.prefetchPages = Math.max(1, prefetchPages);
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * 执行刷新，阻塞到全部页面写完、出错或被取消
+     *
+     * @return 是否全部完成
+     */
+    public boolean run() {
+        startTime = LocalDateTime.now();
+        startNanos = System.nanoTime();
+        Scheduler scheduler = Schedulers.fromExecutor(executor);
+        try {
+            Flux.range(1, maxPages)
+                    // 有界并发请求，结果仍按页码顺序向下游发出
+                    .flatMapSequential(page -> Mono.fromCallable(() -> fetch(page)).subscribeOn(scheduler),
+                            prefetchPages, 1)
+                    .takeUntil(servers -> {
+                        reachedLastPage = servers.size() < pageSize;
+                        return reachedLastPage;
+                    })
+                    .filter(servers -> !servers.isEmpty())
+                    // 写库阶段：在单独的 worker 上逐页消费，最多缓冲 prefetchPages 页
+                    .publishOn(scheduler, prefetchPages)
+                    .doOnNext(this::write)
+                    .takeUntilOther(cancelSignal.asMono())
+                    .blockLast();
+            if (cancelled) {
+                state = State.CANCELLED;
+            } else {
+                if (reachedLastPage) {
+                    removed = writer.complete();
+                } else {
+                    log.warn("达到最大页数仍未取完市场列表，跳过移除: marketId={}, maxPages={}", marketId, maxPages);
+                }
+                state = State.COMPLETED;
+            }
+        } catch (Exception e) {
+            error = e.getMessage();
+            state = State.FAILED;
+            log.error("刷新市场工具列表失败: marketId={}", marketId, e);
+        } finally {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+        log.info("市场工具刷新结束: marketId={}, state={}, pages={}, servers={}, 新增 {}, 更新 {}, 未变化 {}, 移除 {}, elapsed={}ms",
+                marketId, state, pagesWritten.get(), serversWritten.get(), added.get(), updated.get(), unchanged.get(),
+                removed, Duration.ofNanos(elapsedNanos).toMillis());
+        return State.COMPLETED.equals(state);
+    }
+
+    /**
+     * 取消刷新：不再发出新的请求，正在写入的一页写完后停止
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelSignal.tryEmitEmpty();
+    }
+
+    /**
+     * 是否仍在运行
+     */
+    public boolean isRunning() {
+        return State.RUNNING.equals(state);
+    }
+
+    /**
+     * 刷新进度
+     */
+    public Map<String, Object> getProgress() {
+        long elapsed = elapsedNanos >= 0 ? elapsedNanos : (startNanos > 0 ? System.nanoTime() - startNanos : 0);
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("marketId", marketId);
+        progress.put("state", state);
+        progress.put("pagesFetched", pagesFetched.get());
+        progress.put("serversFetched", serversFetched.get());
+        progress.put("pagesWritten", pagesWritten.get());
+        progress.put("serversWritten", serversWritten.get());
+        progress.put("requestsInFlight", inFlight.get());
+        progress.put("added", added.get());
+        progress.put("updated", updated.get());
+        progress.put("unchanged", unchanged.get());
+        progress.put("removed", removed);
+        progress.put("startTime", startTime);
+        progress.put("elapsedMillis", Duration.ofNanos(elapsed).toMillis());
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+
+    private List<McpServerListResponse.McpServerInfo> fetch(int page) throws Exception {
+        inFlight.incrementAndGet();
+        try {
+            List<McpServerListResponse.McpServerInfo> servers = fetcher.fetch(page);
+            pagesFetched.incrementAndGet();
+            serversFetched.addAndGet(servers.size());
+            return servers;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void write(List<McpServerListResponse.McpServerInfo> servers) {
+        WriteResult result;
+        try {
+            result = writer.write(servers);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("写入市场工具失败: " + e.getMessage(), e);
+        }
+        added.addAndGet(result.added());
+        updated.addAndGet(result.updated());
+        unchanged.addAndGet(result.unchanged());
+        pagesWritten.incrementAndGet();
+        serversWritten.addAndGet(servers.size());
+    }
+}
@@ -0,0 +1,361 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpMarketProperties;
+import cn.sam.demo.mcpclient.entity.McpMarket;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 市场后台同步调度
+ * 定时检查所有启用的市场，按各自的同步间隔（加随机抖动）提交同步任务；刷新接口同样提交任务后立即返回任务ID。
+ * 同一市场同时只有一个任务，重复提交返回正在进行的任务；失败后按指数退避重试，
+ * 取消的任务和不存在的市场不重试。任务在 mcpTaskExecutor 中执行，调度线程只负责计时
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class MarketSyncScheduler {
+
+    @Resource
+    private McpMarketService mcpMarketService;
+
+    @Resource
+    private McpMarketProperties mcpMarketProperties;
+
+    @Resource(name = "mcpTaskExecutor")
+    private ExecutorService mcpTaskExecutor;
+
+    private ScheduledExecutorService timer;
+
+    // 市场ID -> 正在进行（含等待重试）的任务
+    private final Map<Long, Job> activeJobs = new ConcurrentHashMap<>();
+
+    // 市场ID -> 下次定时同步的时间（毫秒）
+    private final Map<Long, Long> nextRunAt = new ConcurrentHashMap<>();
+
+    // 任务ID -> 任务，结束后保留一段时间供查询
+    private Cache<String, Job> jobs;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong deduplicatedCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        McpMarketProperties.Sync sync = mcpMarketProperties.getSync();
+        jobs = Caffeine.newBuilder()
+                .maximumSize(sync.getMaxJobs())
+                .expireAfterWrite(sync.getJobRetention())
+                .build();
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "market-sync-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (sync.isEnabled()) {
+            long scanMillis = sync.getScanInterval().toMillis();
+            timer.scheduleWithFixedDelay(this::scan, scanMillis, scanMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 提交市场同步任务
+     *
+     * @param marketId 市场ID
+     * @param trigger  触发方式：MANUAL-接口提交, SCHEDULED-定时同步
+     * @return 新提交的任务；该市场已有进行中的任务时返回该任务
+     */
+    public Job submit(Long marketId, String trigger) {
+        Job created = new Job(UUID.randomUUID().toString().replace("-", ""), marketId, trigger);
+        Job active = activeJobs.putIfAbsent(marketId, created);
+        if (active != null) {
+            deduplicatedCount.incrementAndGet();
+            return active;
+        }
+        submittedCount.incrementAndGet();
+        jobs.put(created.id, created);
+        execute(created);
+        return created;
+    }
+
+    /**
+     * 查询任务
+     *
+     * @param jobId 任务ID
+     * @return 任务，不存在或已过保留时间时返回 null
+     */
+    public Job getJob(String jobId) {
+        return jobs.getIfPresent(jobId);
+    }
+
+    /**
+     * 取消市场正在进行的任务：停止正在执行的刷新，等待重试的任务不再重试
+     *
+     * @param marketId 市场ID
+     * @return 是否有任务被取消
+     */
+    public boolean cancel(Long marketId) {
+        Job job = activeJobs.get(marketId);
+        if (job == null) {
+            // 没有经过调度的刷新（直接调用服务）同样可以取消
+            return mcpMarketService.cancelRefresh(marketId);
+        }
+        job.cancelRequested = true;
+        synchronized (job) {
+            ScheduledFuture<?> retry = job.retryFuture;
+            if (Job.RETRYING.equals(job.state) && retry != null && retry.cancel(false)) {
+                finish(job, Job.CANCELLED, null);
+                return true;
+            }
+        }
+        // 正在执行：停止刷新，执行结束后不再重试
+        mcpMarketService.cancelRefresh(marketId);
+        return true;
+    }
+
+    /**
+     * 获取调度统计信息
+     */
+    public Map<String, Object> getStats() {
+        McpMarketProperties.Sync sync = mcpMarketProperties.getSync();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", sync.isEnabled());
+        stats.put("scheduledMarkets", nextRunAt.size());
+        stats.put("activeJobs", activeJobs.size());
+        stats.put("submitted", submittedCount.get());
+        stats.put("deduplicated", deduplicatedCount.get());
+        stats.put("succeeded", succeededCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("cancelled", cancelledCount.get());
+        stats.put("retries", retryCount.get());
+        Map<Long, String> nextRuns = new HashMap<>();
+        nextRunAt.forEach((marketId, at) -> nextRuns.put(marketId, Instant.ofEpochMilli(at).toString()));
+        stats.put("nextRunAt", nextRuns);
+        stats.put("rateLimit", mcpMarketService.getRateLimitStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        activeJobs.values().forEach(job -> {
+            job.cancelRequested = true;
+            mcpMarketService.cancelRefresh(job.marketId);
+        });
+    }
+
+    /**
+     * 检查到期的市场并提交同步任务
+     * 第一次发现的市场在一个抖动窗口内随机安排，避免启动后所有市场同时同步
+     */
+    void scan() {
+        try {
+            McpMarketProperties.Sync sync = mcpMarketProperties.getSync();
+            List<McpMarket> markets = mcpMarketService.listByStatus(McpMarket.Status.ENABLED);
+            long now = System.currentTimeMillis();
+            Set<Long> enabled = new HashSet<>();
+            for (McpMarket market : markets) {
+                enabled.add(market.getId());
+                Duration interval = interval(market, sync);
+                long due = nextRunAt.computeIfAbsent(market.getId(),
+                        id -> now + (long) (ThreadLocalRandom.current().nextDouble() * interval.toMillis() * sync.getJitter()));
+                if (due <= now) {
+                    nextRunAt.put(market.getId(), now + jittered(interval, sync.getJitter()));
+                    submit(market.getId(), Job.SCHEDULED);
+                }
+            }
+            // 禁用或删除的市场不再定时同步
+            nextRunAt.keySet().retainAll(enabled);
+        } catch (Exception e) {
+            log.error("检查待同步的市场失败", e);
+        }
+    }
+
+    private void execute(Job job) {
+        job.state = Job.RUNNING;
+        job.error = null;
+        job.attempts++;
+        try {
+            mcpTaskExecutor.execute(() -> runAttempt(job));
+        } catch (RejectedExecutionException e) {
+            failAttempt(job, "任务线程池已满");
+        }
+    }
+
+    private void runAttempt(Job job) {
+        if (job.cancelRequested) {
+            finish(job, Job.CANCELLED, null);
+            return;
+        }
+        if (mcpMarketService.getById(job.marketId) == null) {
+            finish(job, Job.FAILED, "市场不存在");
+            return;
+        }
+        try {
+            boolean success = mcpMarketService.refreshMarketTools(job.marketId, () -> job.cancelRequested);
+            Map<String, Object> progress = mcpMarketService.getRefreshProgress(job.marketId);
+            job.progress = progress;
+            if (success) {
+                finish(job, Job.SUCCEEDED, null);
+            } else if (job.cancelRequested
+                    || progress != null && MarketRefreshPipeline.State.CANCELLED.equals(progress.get("state"))) {
+                finish(job, Job.CANCELLED, null);
+            } else {
+                failAttempt(job, progress != null ? String.valueOf(progress.get("error")) : "刷新失败");
+            }
+        } catch (Exception e) {
+            failAttempt(job, e.getMessage());
+        }
+    }
+
+    /**
+     * 一次尝试失败：未达到最大尝试次数时按指数退避（等待时间在一半到全部之间随机）安排重试
+     */
+    private void failAttempt(Job job, String error) {
+        job.error = error;
+        McpMarketProperties.Sync sync = mcpMarketProperties.getSync();
+        if (job.cancelRequested || job.attempts >= sync.getMaxAttempts()) {
+            finish(job, job.cancelRequested ? Job.CANCELLED : Job.FAILED, error);
+            return;
+        }
+        long backoff = Math.min(sync.getMaxRetryBackoff().toMillis(),
+                sync.getRetryBackoff().toMillis() << Math.min(job.attempts - 1, 20));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        log.warn("市场 {} 同步失败（第 {} 次），{}ms 后重试: {}", job.marketId, job.attempts, delay, error);
+        retryCount.incrementAndGet();
+        synchronized (job) {
+            job.state = Job.RETRYING;
+            job.nextAttemptAt = Instant.now().plusMillis(delay);
+            try {
+                job.retryFuture = timer.schedule(() -> execute(job), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 应用正在关闭
+                finish(job, Job.CANCELLED, error);
+            }
+        }
+    }
+
+    private void finish(Job job, String state, String error) {
+        job.state = state;
+        job.error = error;
+        job.nextAttemptAt = null;
+        switch (state) {
+            case Job.SUCCEEDED -> succeededCount.incrementAndGet();
+            case Job.CANCELLED -> cancelledCount.incrementAndGet();
+            default -> failedCount.incrementAndGet();
+        }
+        // 先释放市场，任务显示为已结束时可以立即提交下一次同步
+        activeJobs.remove(job.marketId, job);
+        job.finishedAt = Instant.now();
+        // 重新写入，保留时间从结束时开始计算
+        jobs.put(job.id, job);
+        log.info("市场 {} 同步任务 {} 结束: state={}, attempts={}", job.marketId, job.id, state, job.attempts);
+    }
+
+    private Duration interval(McpMarket market, McpMarketProperties.Sync sync) {
+        Integer seconds = market.getSyncInterval();
+        return seconds != null && seconds > 0 ? Duration.ofSeconds(seconds) : sync.getDefaultInterval();
+    }
+
+    private static long jittered(Duration interval, double jitter) {
+        double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return (long) (interval.toMillis() * factor);
+    }
+
+    /**
+     * 市场同步任务
+     */
+    public static class Job {
+
+        public static final String MANUAL = "MANUAL";
+        public static final String SCHEDULED = "SCHEDULED";
+
+        public static final String RUNNING = "RUNNING";
+        public static final String RETRYING = "RETRYING";
+        public static final String SUCCEEDED = "SUCCEEDED";
+        public static final String FAILED = "FAILED";
+        public static final String CANCELLED = "CANCELLED";
+
+        private final String id;
+        private final Long marketId;
+        private final String trigger;
+        private final Instant createdAt = Instant.now();
+        private volatile String state;
+        private volatile int attempts;
+        private volatile String error;
+        private volatile Instant nextAttemptAt;
+        private volatile Instant finishedAt;
+        private volatile Map<String, Object> progress;
+        private volatile boolean cancelRequested;
+        private volatile ScheduledFuture<?> retryFuture;
+
+        Job(String id, Long marketId, String trigger) {
+            this.id = id;
+            this.marketId = marketId;
+            this.trigger = trigger;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Long getMarketId() {
+            return marketId;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        /**
+         * 任务状态，执行中时 progress 为当前刷新的进度
+         *
+         * @param currentProgress 市场最近一次刷新的进度，任务结束后不使用
+         */
+        public Map<String, Object> toMap(Map<String, Object> currentProgress) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("jobId", id);
+            result.put("marketId", marketId);
+            result.put("trigger", trigger);
+            result.put("state", state);
+            result.put("attempts", attempts);
+            result.put("createdAt", createdAt.toString());
+            result.put("error", error);
+            result.put("nextAttemptAt", nextAttemptAt != null ? nextAttemptAt.toString() : null);
+            result.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+            result.put("progress", isFinished() ? progress : currentProgress);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import cn.sam.demo.mcpclient.dto.McpBatchInvokeRequest;
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * MCP 工具批量调用服务
+ * 并行执行一组工具调用，远程调用按调用数计入 {@link DownstreamLimiter} 中对应服务器的并发许可，
+ * 本地调用计入 local 许可；声明了 transport.batch 的服务器上的调用合并为 JSON-RPC 批量请求，
+ * 声明了结果缓存的工具不参与合并，逐个经过结果缓存调用。
+ * 结果按完成顺序逐个返回
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class McpBatchInvokeService {
+
+    @Resource
+    private McpToolService mcpToolService;
+
+    @Resource
+    private McpToolInvokeService mcpToolInvokeService;
+
+    @Resource
+    private RemoteMcpToolInvokeService remoteMcpToolInvokeService;
+
+    @Resource
+    private McpToolRegistryService mcpToolRegistryService;
+
+    @Resource
+    private McpBatchRpcClient mcpBatchRpcClient;
+
+    @Resource
+    private McpToolResultCache mcpToolResultCache;
+
+    @Resource
+    private DownstreamLimiter downstreamLimiter;
+
+    @Resource
+    private McpExecutionProperties mcpExecutionProperties;
+
+    @Resource(name = "mcpTaskScheduler")
+    private Scheduler mcpTaskScheduler;
+
+    /**
+     * 批量调用工具
+     *
+     * @param calls   工具调用列表
+     * @param timeout 单次调用的超时时间
+     * @return 每个调用的结果（包含在请求中的位置 index），按完成顺序发出
+     * @throws IllegalArgumentException 如果调用数量超过上限
+     */
+    public Flux<Map<String, Object>> invokeBatch(List<McpBatchInvokeRequest.Call> calls, Duration timeout) {
+        if (calls.size() > mcpExecutionProperties.getMaxBatchCalls()) {
+            throw new IllegalArgumentException("批量调用数量超过上限: " + mcpExecutionProperties.getMaxBatchCalls());
+        }
+        // 一次查询加载所有涉及的工具
+        return Mono.fromCallable(() -> loadTools(calls))
+                .subscribeOn(mcpTaskScheduler)
+                .flatMapMany(tools -> {
+                    List<Map<String, Object>> rejected = new ArrayList<>();
+                    List<IndexedCall> localCalls = new ArrayList<>();
+                    Map<McpSessionManager.McpEndpoint, List<IndexedCall>> remoteCalls = new LinkedHashMap<>();
+
+                    for (int i = 0; i < calls.size(); i++) {
+                        McpBatchInvokeRequest.Call call = calls.get(i);
+                        McpToolData tool = call.getToolId() != null ? tools.get(call.getToolId()) : null;
+                        if (tool == null) {
+                            rejected.add(errorResult(i, call.getToolId(), null, "工具不存在", 0));
+                        } else if (!McpToolData.Status.ENABLED.equals(tool.getStatus())) {
+                            rejected.add(errorResult(i, tool.getId(), tool.getName(), "工具未启用", 0));
+                        } else if (McpToolData.Type.REMOTE.equals(tool.getType())) {
+                            McpToolRegistryService.RemoteToolBinding binding = mcpToolRegistryService.getRemoteTool(tool.getId());
+                            if (binding == null) {
+                                rejected.add(errorResult(i, tool.getId(), tool.getName(), "工具未注册", 0));
+                            } else {
+                                remoteCalls.computeIfAbsent(binding.endpoint(), key -> new ArrayList<>())
+                                        .add(new IndexedCall(i, tool, call.getParams(), binding));
+                            }
+                        } else {
+                            localCalls.add(new IndexedCall(i, tool, call.getParams(), null));
+                        }
+                    }
+
+                    Map<String, Integer> limits = mcpExecutionProperties.getLimits();
+                    int endpointConcurrency = limits.getOrDefault(DownstreamLimiter.MCP, 50);
+                    List<Flux<Map<String, Object>>> groups = new ArrayList<>();
+                    groups.add(Flux.fromIterable(rejected));
+                    groups.add(Flux.fromIterable(localCalls)
+                            .flatMap(call -> invokeLocal(call, timeout), limits.getOrDefault(DownstreamLimiter.LOCAL, 50)));
+                    remoteCalls.forEach((endpoint, group) ->
+                            groups.add(invokeRemoteGroup(endpoint, group, timeout, endpointConcurrency)));
+                    return Flux.merge(groups);
+                });
+    }
+
+    private Map<Long, McpToolData> loadTools(List<McpBatchInvokeRequest.Call> calls) {
+        List<Long> ids = calls.stream()
+                .map(McpBatchInvokeRequest.Call::getToolId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        return mcpToolService.listByIds(ids).stream()
+                .collect(Collectors.toMap(McpToolData::getId, Function.identity()));
+    }
+
+    /**
+     * 调用同一远程服务器上的一组工具
+     * 可缓存的调用先经过结果缓存逐个调用（命中时不请求服务器），其余调用在服务器支持时合并为批量请求；
+     * 真正的并发上限由 DownstreamLimiter 按调用数控制，这里的 concurrency 只限制同时等待许可的批次数
+     */
+    private Flux<Map<String, Object>> invokeRemoteGroup(McpSessionManager.McpEndpoint endpoint, List<IndexedCall> group,
+                                                        Duration timeout, int concurrency) {
+        if (!group.get(0).binding().supportsBatch()) {
+            return Flux.fromIterable(group)
+                    .flatMap(call -> invokeRemote(call, timeout), concurrency);
+        }
+        List<IndexedCall> cacheable = new ArrayList<>();
+        List<IndexedCall> batchable = new ArrayList<>();
+        for (IndexedCall call : group) {
+            (mcpToolResultCache.isCacheable(McpToolResultCache.remoteScope(call.tool().getId())) ? cacheable : batchable)
+                    .add(call);
+        }
+        int batchSize = mcpExecutionProperties.getRpcBatchSize();
+        Flux<Map<String, Object>> batched = batchable.size() > 1
+                ? Flux.fromIterable(batchable)
+                        .buffer(batchSize)
+                        .flatMap(chunk -> invokeRpcBatch(endpoint, chunk, timeout), Math.max(1, concurrency / batchSize))
+                : Flux.fromIterable(batchable).flatMap(call -> invokeRemote(call, timeout));
+        return Flux.merge(Flux.fromIterable(cacheable).flatMap(call -> invokeRemote(call, timeout), concurrency), batched);
+    }
+
+    /**
+     * 合并为一个 JSON-RPC 批量请求，批次中的每个调用各占一个并发许可。
+     * 服务器可能逐个执行批次中的调用，整批的超时时间按调用数放大（单次超时 × 调用数）。
+     * 只有请求确定没有到达服务器（连接失败）时才退回逐个调用，
+     * 其他失败（超时、响应异常等）时服务器可能已经执行了部分调用，逐个重发会让非幂等工具执行两次，
+     * 因此整批返回错误结果
+     */
+    private Flux<Map<String, Object>> invokeRpcBatch(McpSessionManager.McpEndpoint endpoint, List<IndexedCall> chunk,
+                                                     Duration timeout) {
+        long startTime = System.currentTimeMillis();
+        List<McpBatchRpcClient.BatchCall> batchCalls = chunk.stream()
+                .map(call -> new McpBatchRpcClient.BatchCall(call.binding().remoteToolName(), call.params()))
+                .collect(Collectors.toList());
+
+        // 许可在批量请求结束时归还，之后才可能退回逐个调用，逐个调用再各自获取许可
+        return downstreamLimiter.limit(DownstreamLimiter.mcpKey(endpoint.url()), chunk.size(),
+                        mcpBatchRpcClient.callTools(endpoint, batchCalls).timeout(timeout.multipliedBy(chunk.size())))
+                .flatMapMany(outcomes -> {
+                    long duration = System.currentTimeMillis() - startTime;
+                    List<Map<String, Object>> results = new ArrayList<>(chunk.size());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        IndexedCall call = chunk.get(i);
+                        McpBatchRpcClient.BatchOutcome outcome = i < outcomes.size() ? outcomes.get(i) : null;
+                        if (outcome == null) {
+                            results.add(errorResult(call.index(), call.tool().getId(), call.tool().getName(),
+                                    "批量响应中缺少该调用的结果", duration));
+                            continue;
+                        }
+                        if (outcome.error() != null) {
+                            results.add(errorResult(call.index(), call.tool().getId(), call.tool().getName(), outcome.error(), duration));
+                            continue;
+                        }
+                        try {
+                            Object response = remoteMcpToolInvokeService.extractResult(outcome.result());
+                            results.add(successResult(call, response, duration));
+                        } catch (RuntimeException e) {
+                            results.add(errorResult(call.index(), call.tool().getId(), call.tool().getName(), e.getMessage(), duration));
+                        }
+                    }
+                    return Flux.fromIterable(results);
+                })
+                .onErrorResume(e -> {
+                    if (isNotSent(e)) {
+                        log.warn("JSON-RPC 批量请求未能连接服务器，改为逐个调用: {}", endpoint.url(), e);
+                        return Flux.fromIterable(chunk).flatMap(call -> invokeRemote(call, timeout));
+                    }
+                    log.warn("JSON-RPC 批量请求失败: {}", endpoint.url(), e);
+                    long duration = System.currentTimeMillis() - startTime;
+                    String error = e instanceof TimeoutException ? "批量调用超时" : e.getMessage();
+                    return Flux.fromIterable(chunk)
+                            .map(call -> errorResult(call.index(), call.tool().getId(), call.tool().getName(), error, duration));
+                });
+    }
+
+    /**
+     * 请求是否确定没有发送到服务器
+     */
+    private static boolean isNotSent(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<Map<String, Object>> invokeRemote(IndexedCall call, Duration timeout) {
+        return Mono.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            return remoteMcpToolInvokeService.invokeRemoteToolAsync(call.tool(), call.params(), timeout)
+                    .defaultIfEmpty("")
+                    .map(response -> successResult(call, response, System.currentTimeMillis() - startTime))
+                    .onErrorResume(e -> Mono.just(errorResult(call.index(), call.tool().getId(), call.tool().getName(),
+                            e.getMessage(), System.currentTimeMillis() - startTime)));
+        });
+    }
+
+    private Mono<Map<String, Object>> invokeLocal(IndexedCall call, Duration timeout) {
+        return Mono.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            Mono<Object> invocation = Mono.fromCallable(() -> mcpToolInvokeService.invokeTool(call.tool().getName(), call.params()))
+                    .subscribeOn(mcpTaskScheduler);
+            return downstreamLimiter.limit(DownstreamLimiter.LOCAL, invocation)
+                    .timeout(timeout)
+                    .defaultIfEmpty("")
+                    .map(response -> successResult(call, response, System.currentTimeMillis() - startTime))
+                    .onErrorResume(e -> Mono.just(errorResult(call.index(), call.tool().getId(), call.tool().getName(),
+                            e.getMessage(), System.currentTimeMillis() - startTime)));
+        });
+    }
+
+    private Map<String, Object> successResult(IndexedCall call, Object response, long duration) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("index", call.index());
+        result.put("success", true);
+        result.put("toolId", call.tool().getId());
+        result.put("toolName", call.tool().getName());
+        result.put("response", response);
+        result.put("duration", duration + "ms");
+        return result;
+    }
+
+    private Map<String, Object> errorResult(int index, Long toolId, String toolName, String error, long duration) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("index", index);
+        result.put("success", false);
+        result.put("toolId", toolId);
+        result.put("toolName", toolName);
+        result.put("error", error);
+        result.put("duration", duration + "ms");
+        return result;
+    }
+
+    /**
+     * 带请求位置的工具调用
+     */
+    private record IndexedCall(int index, McpToolData tool, Map<String, Object> params,
+                               McpToolRegistryService.RemoteToolBinding binding) {
+    }
+}
@@ -0,0 +1,135 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpHttpClientProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpTransportSessionNotFoundException;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * MCP JSON-RPC 批量调用客户端
+ * 把发往同一远程服务器的多个 tools/call 合并为一个 JSON-RPC 批量请求。
+ * MCP SDK 的会话不支持批量请求，这里为每个服务器维护一个 {@link McpJsonRpcClient}，
+ * 只用于在 transport 配置中声明了 batch: true 的服务器
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class McpBatchRpcClient {
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private McpHttpClientProperties mcpHttpClientProperties;
+
+    @Resource(name = "mcpTaskExecutor")
+    private ExecutorService mcpTaskExecutor;
+
+    @Resource(name = "mcpJdkHttpClient")
+    private HttpClient httpClient;
+
+    private final Map<McpSessionManager.McpEndpoint, McpJsonRpcClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 在一个 JSON-RPC 批量请求中调用多个工具
+     * 会话过期时重新初始化并重试一次
+     *
+     * @param endpoint 远程服务器
+     * @param calls    工具调用列表
+     * @return 与 calls 顺序一致的调用结果
+     */
+    public Mono<List<BatchOutcome>> callTools(McpSessionManager.McpEndpoint endpoint, List<BatchCall> calls) {
+        List<McpJsonRpcClient.Request> requests = calls.stream()
+                .map(call -> new McpJsonRpcClient.Request("tools/call", Map.of(
+                        "name", call.toolName(),
+                        "arguments", call.arguments() != null ? call.arguments() : Map.of())))
+                .collect(Collectors.toList());
+
+        return Mono.defer(() -> getClient(endpoint).requestBatch(requests))
+                .onErrorResume(McpTransportSessionNotFoundException.class, e -> {
+                    log.info("MCP 批量会话已过期，重新初始化: {}", endpoint.url());
+                    closeSession(endpoint);
+                    return getClient(endpoint).requestBatch(requests);
+                })
+                .map(this::toOutcomes);
+    }
+
+    /**
+     * 关闭端点的批量会话
+     */
+    public void closeSession(McpSessionManager.McpEndpoint endpoint) {
+        McpJsonRpcClient client = clients.remove(endpoint);
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    /**
+     * 获取各端点等待响应的请求数量
+     */
+    public Map<String, Object> getPendingStats() {
+        Map<String, Object> stats = new HashMap<>();
+        clients.forEach((endpoint, client) -> stats.put(endpoint.url(), client.getPendingCount()));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(McpJsonRpcClient::close);
+        clients.clear();
+    }
+
+    private McpJsonRpcClient getClient(McpSessionManager.McpEndpoint endpoint) {
+        return clients.computeIfAbsent(endpoint, key -> new McpJsonRpcClient(
+                key, httpClient, objectMapper, mcpTaskExecutor, mcpHttpClientProperties.getReadTimeout()));
+    }
+
+    private List<BatchOutcome> toOutcomes(List<JsonNode> responses) {
+        List<BatchOutcome> outcomes = new ArrayList<>(responses.size());
+        for (JsonNode response : responses) {
+            if (response.has("error")) {
+                outcomes.add(BatchOutcome.failure("MCP 工具调用错误: " + response.get("error").path("message").asText()));
+            } else {
+                outcomes.add(BatchOutcome.success(
+                        objectMapper.convertValue(response.get("result"), McpSchema.CallToolResult.class)));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * 批量请求中的一次工具调用
+     */
+    public record BatchCall(String toolName, Map<String, Object> arguments) {
+    }
+
+    /**
+     * 一次工具调用的结果，result 和 error 二选一
+     */
+    public record BatchOutcome(McpSchema.CallToolResult result, String error) {
+
+        static BatchOutcome success(McpSchema.CallToolResult result) {
+            return new BatchOutcome(result, null);
+        }
+
+        static BatchOutcome failure(String error) {
+            return new BatchOutcome(null, error);
+        }
+    }
+}
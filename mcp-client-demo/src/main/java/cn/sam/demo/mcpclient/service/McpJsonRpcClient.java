@@ -0,0 +1,364 @@
+package cn.sam.demo.mcpclient.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpTransportSessionNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * MCP JSON-RPC 客户端核心（Streamable HTTP）
+ * 请求ID由 AtomicLong 单调递增生成，发出的请求登记在待响应表中，
+ * 服务器返回的消息（JSON 或 SSE 事件流，单条或批量）统一按 ID 分发给对应的请求。
+ * 同一会话上可以同时有任意多个未完成的请求，不再是一问一答的锁步模式
+ *
+ * @author Administrator
+ */
+@Slf4j
+public final class McpJsonRpcClient implements AutoCloseable {
+
+    private static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final String PROTOCOL_VERSION_HEADER = "MCP-Protocol-Version";
+
+    /**
+     * 支持 JSON-RPC 批量请求的协议版本
+     */
+    private static final String PROTOCOL_VERSION = "2025-03-26";
+
+    private final McpSessionManager.McpEndpoint endpoint;
+    private final URI uri;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final Duration requestTimeout;
+
+    private final AtomicLong requestIds = new AtomicLong();
+
+    // 请求ID -> 等待响应的请求
+    private final Map<Long, Sinks.One<JsonNode>> pendingRequests = new ConcurrentHashMap<>();
+
+    private final Mono<Void> initialization;
+
+    private volatile String sessionId;
+    private volatile boolean closed;
+
+    /**
+     * @param endpoint       远程服务器
+     * @param httpClient     共享的 HTTP 客户端
+     * @param objectMapper   JSON 序列化
+     * @param executor       读取响应体（可能是长时间的 SSE 流）使用的执行器
+     * @param requestTimeout 等待响应头的超时时间
+     */
+    public McpJsonRpcClient(McpSessionManager.McpEndpoint endpoint, HttpClient httpClient, ObjectMapper objectMapper,
+                            Executor executor, Duration requestTimeout) {
+        this.endpoint = endpoint;
+        // Spring AI MCP Server 的端点路径是 /mcp
+        this.uri = URI.create(endpoint.url() + "/mcp");
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.requestTimeout = requestTimeout;
+        // 只缓存成功的初始化结果，失败后下次调用重新握手
+        this.initialization = Mono.defer(this::doInitialize)
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), e -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    /**
+     * 发送单个请求
+     *
+     * @param method 方法名
+     * @param params 参数
+     * @return 响应中的 result 字段，服务器返回 error 时以 IllegalStateException 结束
+     */
+    public Mono<JsonNode> request(String method, Object params) {
+        return requestBatch(List.of(new Request(method, params)))
+                .map(responses -> responses.get(0))
+                .flatMap(response -> response.has("error")
+                        ? Mono.error(new IllegalStateException("JSON-RPC 错误: " + response.get("error").path("message").asText()))
+                        : Mono.just(response.path("result")));
+    }
+
+    /**
+     * 在一个 HTTP 请求中发送多个 JSON-RPC 请求
+     *
+     * @param requests 请求列表
+     * @return 与 requests 顺序一致的完整响应消息（包含 result 或 error）
+     */
+    public Mono<List<JsonNode>> requestBatch(List<Request> requests) {
+        return initialization.then(Mono.defer(() -> send(requests)));
+    }
+
+    /**
+     * 发送通知（没有响应）
+     */
+    public Mono<Void> notify(String method, Object params) {
+        return initialization.then(Mono.defer(() -> sendNotification(method, params)));
+    }
+
+    /**
+     * 等待响应的请求数量
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    public McpSessionManager.McpEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 关闭客户端，所有等待中的请求以错误结束
+     */
+    @Override
+    public void close() {
+        closed = true;
+        IllegalStateException error = new IllegalStateException("JSON-RPC 客户端已关闭: " + endpoint.url());
+        pendingRequests.keySet().forEach(id -> failPending(id, error));
+        String currentSessionId = sessionId;
+        if (currentSessionId != null && !currentSessionId.isEmpty()) {
+            // 通知服务器结束会话，不等待结果
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri).DELETE().timeout(requestTimeout);
+            endpoint.headers().forEach(builder::header);
+            builder.header(SESSION_HEADER, currentSessionId);
+            httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    private Mono<Void> doInitialize() {
+        sessionId = null;
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("protocolVersion", PROTOCOL_VERSION);
+        params.set("capabilities", objectMapper.createObjectNode());
+        params.set("clientInfo", objectMapper.valueToTree(new McpSchema.Implementation("mcp-client-demo", "1.0.0")));
+        return send(List.of(new Request("initialize", params)))
+                .flatMap(responses -> {
+                    JsonNode response = responses.get(0);
+                    if (response.has("error")) {
+                        return Mono.error(new IllegalStateException(
+                                "MCP 初始化失败: " + response.get("error").path("message").asText()));
+                    }
+                    if (sessionId == null) {
+                        // 无状态服务器不分配会话ID
+                        sessionId = "";
+                    }
+                    log.info("创建 MCP JSON-RPC 会话: {}", endpoint.url());
+                    return sendNotification("notifications/initialized", null);
+                });
+    }
+
+    private Mono<List<JsonNode>> send(List<Request> requests) {
+        if (closed) {
+            return Mono.error(new IllegalStateException("JSON-RPC 客户端已关闭: " + endpoint.url()));
+        }
+        long[] ids = new long[requests.size()];
+        List<Mono<JsonNode>> responses = new ArrayList<>(requests.size());
+        ArrayNode batch = objectMapper.createArrayNode();
+        for (int i = 0; i < requests.size(); i++) {
+            ids[i] = requestIds.incrementAndGet();
+            Sinks.One<JsonNode> sink = Sinks.one();
+            pendingRequests.put(ids[i], sink);
+            responses.add(sink.asMono());
+            batch.add(message(ids[i], requests.get(i).method(), requests.get(i).params()));
+        }
+        JsonNode body = requests.size() == 1 ? batch.get(0) : batch;
+
+        Exchange exchange = post(body);
+        exchange.handled().whenComplete((ignored, error) -> {
+            for (long id : ids) {
+                if (error != null) {
+                    failPending(id, unwrap(error));
+                } else {
+                    // 响应体已读完仍未收到响应的请求，按 JSON-RPC 错误响应结束，不影响同一批次中的其他请求
+                    completePending(id, errorMessage(id, "响应中缺少请求 " + id + " 的结果"));
+                }
+            }
+        });
+
+        return Flux.fromIterable(responses)
+                .concatMap(response -> response)
+                .collectList()
+                .doFinally(signal -> {
+                    for (long id : ids) {
+                        pendingRequests.remove(id);
+                    }
+                    if (signal == SignalType.CANCEL) {
+                        // 调用方取消或超时时中止 HTTP 请求
+                        exchange.sent().cancel(true);
+                    }
+                });
+    }
+
+    private Mono<Void> sendNotification(String method, Object params) {
+        ObjectNode notification = objectMapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", method);
+        if (params != null) {
+            notification.set("params", objectMapper.valueToTree(params));
+        }
+        return Mono.fromFuture(() -> post(notification).handled());
+    }
+
+    private ObjectNode message(long id, String method, Object params) {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("jsonrpc", "2.0");
+        request.put("id", id);
+        request.put("method", method);
+        if (params != null) {
+            request.set("params", objectMapper.valueToTree(params));
+        }
+        return request;
+    }
+
+    /**
+     * 发送 POST 请求，并在执行器上读取响应体、分发其中的消息
+     */
+    private Exchange post(JsonNode body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json, text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        endpoint.headers().forEach(builder::header);
+        String currentSessionId = sessionId;
+        if (currentSessionId != null) {
+            builder.header(PROTOCOL_VERSION_HEADER, PROTOCOL_VERSION);
+            if (!currentSessionId.isEmpty()) {
+                builder.header(SESSION_HEADER, currentSessionId);
+            }
+        }
+        CompletableFuture<HttpResponse<Stream<String>>> sent =
+                httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofLines());
+        return new Exchange(sent, sent.thenAcceptAsync(response -> handleResponse(response, currentSessionId), executor));
+    }
+
+    private void handleResponse(HttpResponse<Stream<String>> response, String requestSessionId) {
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() == 404 && requestSessionId != null && !requestSessionId.isEmpty()) {
+                throw new McpTransportSessionNotFoundException(requestSessionId);
+            }
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("MCP 服务器返回错误状态码: " + response.statusCode());
+            }
+            response.headers().firstValue(SESSION_HEADER).ifPresent(id -> sessionId = id);
+
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (contentType.startsWith("text/event-stream")) {
+                // SSE：一个事件的多行 data 拼接后分发，空行表示事件结束
+                StringBuilder data = new StringBuilder();
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    if (line.isEmpty()) {
+                        dispatch(data.toString());
+                        data.setLength(0);
+                    } else if (line.startsWith("data:")) {
+                        data.append(line.substring(5).trim());
+                    }
+                }
+                dispatch(data.toString());
+            } else {
+                dispatch(String.join("\n", (Iterable<String>) lines::iterator));
+            }
+        }
+    }
+
+    /**
+     * 按请求ID把响应交给等待中的请求
+     */
+    private void dispatch(String json) {
+        if (json.isBlank()) {
+            return;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(json);
+        } catch (Exception e) {
+            log.warn("无法解析 JSON-RPC 消息: {}", json, e);
+            return;
+        }
+        if (node.isArray()) {
+            node.forEach(this::dispatchMessage);
+        } else {
+            dispatchMessage(node);
+        }
+    }
+
+    private void dispatchMessage(JsonNode message) {
+        if (!message.hasNonNull("id") || !(message.has("result") || message.has("error"))) {
+            // 服务器发起的请求或通知，本客户端不处理
+            log.debug("忽略服务器消息: {}", message.path("method").asText());
+            return;
+        }
+        long id = message.get("id").asLong();
+        Sinks.One<JsonNode> sink = pendingRequests.remove(id);
+        if (sink == null) {
+            log.debug("收到未知请求的响应（可能已超时）: {}", id);
+            return;
+        }
+        sink.tryEmitValue(message);
+    }
+
+    private void completePending(long id, JsonNode message) {
+        Sinks.One<JsonNode> sink = pendingRequests.remove(id);
+        if (sink != null) {
+            sink.tryEmitValue(message);
+        }
+    }
+
+    private ObjectNode errorMessage(long id, String message) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        ObjectNode error = response.putObject("error");
+        error.put("code", -32603);
+        error.put("message", message);
+        return response;
+    }
+
+    private void failPending(long id, Throwable error) {
+        Sinks.One<JsonNode> sink = pendingRequests.remove(id);
+        if (sink != null) {
+            sink.tryEmitError(error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+    }
+
+    /**
+     * 一次 HTTP 交互：sent 在收到响应头时完成，handled 在响应体中的消息全部分发后完成
+     */
+    private record Exchange(CompletableFuture<HttpResponse<Stream<String>>> sent, CompletableFuture<Void> handled) {
+    }
+
+    /**
+     * JSON-RPC 请求
+     */
+    public record Request(String method, Object params) {
+    }
+}
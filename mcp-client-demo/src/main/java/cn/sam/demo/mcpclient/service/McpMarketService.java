@@ -5,6 +5,7 @@ import cn.sam.demo.mcpclient.entity.McpMarketTool;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * MCP 市场服务接口
@@ -88,13 +89,50 @@ public interface McpMarketService {
     Map<String, Object> getMarketToolsWithPage(Long marketId, Integer page, Integer size);
 
     /**
-     * 刷新市场工具列表
+     * 刷新市场工具列表（在调用线程中执行到刷新结束）
+     * 分页请求提前并发发出并按市场限速，写库与网络请求同时进行；同一市场同时只允许一次刷新；
+     * 接口和定时任务通过 MarketSyncScheduler 异步提交
      *
      * @param marketId 市场ID
-     * @return 是否刷新成功
+     * @return 是否刷新成功（被取消时返回 false）
+     * @throws IllegalStateException 该市场正在刷新
      */
     boolean refreshMarketTools(Long marketId);
 
+    /**
+     * 刷新市场工具列表，刷新登记后再检查一次取消标记
+     * 取消请求落在调用方检查之后、刷新登记之前时，刷新在开始前即被取消，不会丢失
+     *
+     * @param marketId        市场ID
+     * @param cancelRequested 调用方的取消标记
+     * @return 是否刷新成功（被取消时返回 false）
+     * @throws IllegalStateException 该市场正在刷新
+     */
+    boolean refreshMarketTools(Long marketId, BooleanSupplier cancelRequested);
+
+    /**
+     * 查询最近一次刷新的进度
+     *
+     * @param marketId 市场ID
+     * @return 进度，包含 state、pagesFetched、serversWritten 等；没有刷新记录时返回 null
+     */
+    Map<String, Object> getRefreshProgress(Long marketId);
+
+    /**
+     * 获取各市场接口请求的限速统计
+     *
+     * @return 限速配置和每个市场的令牌获取、等待次数
+     */
+    Map<String, Object> getRateLimitStats();
+
+    /**
+     * 取消正在进行的刷新
+     *
+     * @param marketId 市场ID
+     * @return 是否有正在进行的刷新被取消
+     */
+    boolean cancelRefresh(Long marketId);
+
     /**
      * 加载市场工具到本地
      *
@@ -105,10 +143,13 @@ public interface McpMarketService {
 
     /**
      * 批量加载市场工具到本地
+     * 在一个事务中按集合处理：一次查询并锁定市场工具、多行 INSERT 新增本地工具、一条 UPDATE 标记已加载，
+     * 提交后一次性注册到工具注册表；任何语句失败时整批回滚
      *
      * @param marketToolIds 市场工具ID列表
-     * @return 成功加载的数量
+     * @return requested（去重后的请求数）、loaded（加载数）和 results（每个工具的结果：marketToolId、
+     * status（LOADED、ALREADY_LOADED、NOT_FOUND、NAME_CONFLICT、FAILED）、message、localToolId、registered）
      */
-    int batchLoadToolsToLocal(List<Long> marketToolIds);
+    Map<String, Object> batchLoadToolsToLocal(List<Long> marketToolIds);
 }
 
@@ -0,0 +1,314 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpHttpClientProperties;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.HttpClientStreamableHttpTransport;
+import io.modelcontextprotocol.spec.McpClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpTransportSessionNotFoundException;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * MCP 会话管理服务
+ * 按远程服务器（URL + 请求头）维护长期存在的 MCP 会话，
+ * 同一服务器上的所有工具共享一个已初始化的 McpAsyncClient，会话过期时自动重新初始化；
+ * 所有会话的传输共用 mcpJdkHttpClient
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class McpSessionManager {
+
+    @Resource
+    private McpHttpClientProperties mcpHttpClientProperties;
+
+    @Resource(name = "mcpJdkHttpClient")
+    private HttpClient mcpJdkHttpClient;
+
+    private final Map<McpEndpoint, McpSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 调用远程工具
+     *
+     * @param endpoint  远程服务器
+     * @param toolName  工具名称
+     * @param arguments 工具参数
+     * @return 调用结果
+     */
+    public Mono<McpSchema.CallToolResult> callTool(McpEndpoint endpoint, String toolName, Map<String, Object> arguments) {
+        McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(
+                toolName, arguments != null ? arguments : Map.of());
+        return withSession(endpoint, client -> client.callTool(request));
+    }
+
+    /**
+     * 确保会话已建立
+     * 会话已初始化时直接返回，不会再次握手
+     *
+     * @param endpoint 远程服务器
+     * @return 初始化结果
+     */
+    public Mono<McpSchema.InitializeResult> ensureSession(McpEndpoint endpoint) {
+        return Mono.defer(() -> getOrCreate(endpoint).ready());
+    }
+
+    /**
+     * 会话是否已经初始化完成
+     */
+    public boolean isInitialized(McpEndpoint endpoint) {
+        McpSession session = sessions.get(endpoint);
+        return session != null && session.client().isInitialized();
+    }
+
+    /**
+     * 关闭并移除指定服务器的会话
+     */
+    public void closeSession(McpEndpoint endpoint) {
+        McpSession session = sessions.remove(endpoint);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * 获取会话统计信息
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        sessions.forEach((endpoint, session) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("url", endpoint.url());
+            item.put("transportType", endpoint.transportType());
+            item.put("initialized", session.client().isInitialized());
+            item.put("createTime", session.createTime());
+            stats.add(item);
+        });
+        return stats;
+    }
+
+    /**
+     * 在会话上执行操作，会话过期时重新初始化并重试一次
+     */
+    private <T> Mono<T> withSession(McpEndpoint endpoint, Function<McpAsyncClient, Mono<T>> action) {
+        return Mono.defer(() -> {
+            McpSession session = getOrCreate(endpoint);
+            return session.ready()
+                    .then(Mono.defer(() -> action.apply(session.client())))
+                    .onErrorResume(McpSessionManager::isSessionExpired, e -> {
+                        log.info("MCP 会话已过期，重新初始化: {}", endpoint.url());
+                        invalidate(endpoint, session);
+                        McpSession fresh = getOrCreate(endpoint);
+                        return fresh.ready().then(Mono.defer(() -> action.apply(fresh.client())));
+                    });
+        });
+    }
+
+    private McpSession getOrCreate(McpEndpoint endpoint) {
+        return sessions.computeIfAbsent(endpoint, this::createSession);
+    }
+
+    private McpSession createSession(McpEndpoint endpoint) {
+        McpAsyncClient client = McpClient.async(createTransport(endpoint))
+                .requestTimeout(mcpHttpClientProperties.getReadTimeout())
+                .initializationTimeout(mcpHttpClientProperties.getReadTimeout())
+                .clientInfo(new McpSchema.Implementation("mcp-client-demo", "1.0.0"))
+                .build();
+        McpSession session = new McpSession(client, System.currentTimeMillis());
+        log.info("创建 MCP 会话: {} ({})", endpoint.url(), endpoint.transportType());
+        return session.withInitialization(client.initialize()
+                // 初始化失败时移除会话，下次调用重新创建
+                .doOnError(e -> invalidate(endpoint, session))
+                .cache());
+    }
+
+    private McpClientTransport createTransport(McpEndpoint endpoint) {
+        // 所有会话共用同一个已配置的 HttpClient，连接和选择器线程不随会话数增长；
+        // SDK 在 build() 时设置连接超时，这里传入与共享客户端相同的值
+        // http 和 sse 两种传输类型都使用 Streamable HTTP 传输，端点路径为 /mcp（与原先直接 POST /mcp 一致）
+        return HttpClientStreamableHttpTransport.builder(endpoint.url())
+                .clientBuilder(new SharedClientBuilder(mcpJdkHttpClient))
+                .connectTimeout(mcpHttpClientProperties.getConnectTimeout())
+                .customizeRequest(builder -> endpoint.headers().forEach(builder::header))
+                .build();
+    }
+
+    private void invalidate(McpEndpoint endpoint, McpSession session) {
+        if (sessions.remove(endpoint, session)) {
+            session.close();
+        }
+    }
+
+    private static boolean isSessionExpired(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof McpTransportSessionNotFoundException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(session -> session.closeAndWait(Duration.ofSeconds(5)));
+        sessions.clear();
+    }
+
+    /**
+     * 远程服务器标识
+     * URL、传输类型和请求头都相同的工具共享同一个会话
+     */
+    public record McpEndpoint(String url, String transportType, Map<String, String> headers) {
+
+        public McpEndpoint {
+            // 去掉末尾的斜杠，避免同一服务器因为写法不同而建立多个会话
+            url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            transportType = transportType != null ? transportType.toLowerCase() : "http";
+            headers = headers != null ? Map.copyOf(headers) : Map.of();
+        }
+    }
+
+    /**
+     * 返回共享 HttpClient 的构建器
+     * MCP SDK 的传输只接受 HttpClient.Builder 并在 build() 时创建客户端，客户端配置统一来自 mcp.http-client；
+     * 共享客户端无法按会话修改，与共享客户端不一致的设置直接抛出异常，不会被静默忽略
+     */
+    private static final class SharedClientBuilder implements HttpClient.Builder {
+
+        private final HttpClient client;
+
+        SharedClientBuilder(HttpClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public HttpClient.Builder connectTimeout(Duration duration) {
+            if (!client.connectTimeout().equals(Optional.ofNullable(duration))) {
+                throw unsupported("connectTimeout=" + duration);
+            }
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder cookieHandler(CookieHandler cookieHandler) {
+            throw unsupported("cookieHandler");
+        }
+
+        @Override
+        public HttpClient.Builder sslContext(SSLContext sslContext) {
+            throw unsupported("sslContext");
+        }
+
+        @Override
+        public HttpClient.Builder sslParameters(SSLParameters sslParameters) {
+            throw unsupported("sslParameters");
+        }
+
+        @Override
+        public HttpClient.Builder executor(Executor executor) {
+            throw unsupported("executor");
+        }
+
+        @Override
+        public HttpClient.Builder followRedirects(HttpClient.Redirect policy) {
+            throw unsupported("followRedirects");
+        }
+
+        @Override
+        public HttpClient.Builder version(HttpClient.Version version) {
+            throw unsupported("version");
+        }
+
+        @Override
+        public HttpClient.Builder priority(int priority) {
+            throw unsupported("priority");
+        }
+
+        @Override
+        public HttpClient.Builder proxy(ProxySelector proxySelector) {
+            throw unsupported("proxy");
+        }
+
+        @Override
+        public HttpClient.Builder authenticator(Authenticator authenticator) {
+            throw unsupported("authenticator");
+        }
+
+        @Override
+        public HttpClient build() {
+            return client;
+        }
+
+        private static UnsupportedOperationException unsupported(String setting) {
+            return new UnsupportedOperationException("共享的 MCP HttpClient 不支持单独设置 " + setting + "，请修改 mcp.http-client 配置");
+        }
+    }
+
+    /**
+     * 一个远程服务器上的会话
+     */
+    private static final class McpSession {
+
+        private final McpAsyncClient client;
+        private final long createTime;
+        private volatile Mono<McpSchema.InitializeResult> initialization;
+
+        McpSession(McpAsyncClient client, long createTime) {
+            this.client = client;
+            this.createTime = createTime;
+        }
+
+        McpSession withInitialization(Mono<McpSchema.InitializeResult> initialization) {
+            this.initialization = initialization;
+            return this;
+        }
+
+        McpAsyncClient client() {
+            return client;
+        }
+
+        long createTime() {
+            return createTime;
+        }
+
+        Mono<McpSchema.InitializeResult> ready() {
+            return initialization;
+        }
+
+        /**
+         * 异步关闭，可以在 Reactor 线程中调用
+         */
+        void close() {
+            client.closeGracefully().subscribe(null, e -> log.debug("关闭 MCP 会话失败", e));
+        }
+
+        void closeAndWait(Duration timeout) {
+            try {
+                client.closeGracefully().block(timeout);
+            } catch (Exception e) {
+                log.debug("关闭 MCP 会话失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 数据库中注册的 MCP 工具对应的 Spring AI 工具回调
+ * 工具定义和检索用的词项在工具变更时构建一次，调用时只解析参数并转交给工具调用服务
+ *
+ * @author Administrator
+ */
+public final class McpToolCallback implements ToolCallback {
+
+    private final McpToolData tool;
+    private final ToolDefinition toolDefinition;
+    private final Set<String> terms;
+    private final Function<String, Map<String, Object>> argumentParser;
+    private final BiFunction<McpToolData, Map<String, Object>, String> invoker;
+    private final boolean sideEffectFree;
+
+    McpToolCallback(McpToolData tool, ToolDefinition toolDefinition, Set<String> terms,
+                    Function<String, Map<String, Object>> argumentParser,
+                    BiFunction<McpToolData, Map<String, Object>, String> invoker,
+                    boolean sideEffectFree) {
+        this.tool = tool;
+        this.toolDefinition = toolDefinition;
+        this.terms = terms;
+        this.argumentParser = argumentParser;
+        this.invoker = invoker;
+        this.sideEffectFree = sideEffectFree;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        try {
+            return invoker.apply(tool, argumentParser.apply(toolInput));
+        } catch (Exception e) {
+            // 交给模型处理错误信息，而不是中断整个对话
+            throw new ToolExecutionException(toolDefinition, e);
+        }
+    }
+
+    /**
+     * 工具实体
+     */
+    public McpToolData getTool() {
+        return tool;
+    }
+
+    /**
+     * 工具是否没有副作用：在 configJson 中声明了 cache 的工具视为纯函数，
+     * 只使用这类工具的对话才允许缓存回复
+     */
+    public boolean isSideEffectFree() {
+        return sideEffectFree;
+    }
+
+    /**
+     * 工具名称、描述和参数说明中的检索词项
+     */
+    Set<String> getTerms() {
+        return terms;
+    }
+}
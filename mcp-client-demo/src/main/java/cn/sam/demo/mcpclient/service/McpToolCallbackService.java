@@ -0,0 +1,296 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatToolProperties;
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 对话工具目录
+ * 把已启用的 MCP 工具构建为 Spring AI 工具回调（参数 Schema 取自 configJson.function.parameters），
+ * 启动时全量构建一次，之后按 {@link McpToolService.ToolChangedEvent} 增量刷新；
+ * 远程工具只有在注册表中注册成功（配置了有效的 transport）后才会提供给模型，
+ * 因此这两个监听器排在注册表的监听器之后；
+ * 每次对话只按与用户消息的相关度（词项匹配，按 IDF 加权）提供前 max-per-prompt 个工具，
+ * 工具目录增长到数百个时提示长度和模型延迟也不会随之增长
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class McpToolCallbackService {
+
+    private static final String EMPTY_SCHEMA = "{\"type\":\"object\",\"properties\":{}}";
+
+    // 模型接口对函数名称的限制
+    private static final Pattern VALID_NAME = Pattern.compile("^[a-zA-Z0-9_-]{1,64}$");
+
+    @Resource
+    private McpToolService mcpToolService;
+
+    @Resource
+    private McpToolInvokeService mcpToolInvokeService;
+
+    @Resource
+    private RemoteMcpToolInvokeService remoteMcpToolInvokeService;
+
+    @Resource
+    private McpToolRegistryService mcpToolRegistryService;
+
+    @Resource
+    private McpToolResultCache mcpToolResultCache;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private ChatToolProperties chatToolProperties;
+
+    // 工具ID -> 工具回调
+    private final Map<Long, McpToolCallback> callbacks = new ConcurrentHashMap<>();
+
+    // 词项 -> IDF 权重，工具变更后重新计算
+    private volatile Map<String, Double> termWeights = Map.of();
+
+    private final AtomicLong selectionCount = new AtomicLong();
+    private final AtomicLong selectedTotal = new AtomicLong();
+
+    /**
+     * 启动时构建所有已启用工具的回调
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        mcpToolService.listByStatus(McpToolData.Status.ENABLED).forEach(this::refresh);
+        rebuildTermWeights();
+        log.info("对话工具目录加载完成，共 {} 个工具", callbacks.size());
+    }
+
+    /**
+     * 工具变更后只重建变更的工具
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener
+    public void onToolChanged(McpToolService.ToolChangedEvent event) {
+        Map<Long, McpToolData> tools = mcpToolService.listByIds(event.toolIds()).stream()
+                .collect(Collectors.toMap(McpToolData::getId, Function.identity()));
+        for (Long toolId : event.toolIds()) {
+            McpToolData tool = tools.get(toolId);
+            if (tool == null || !McpToolData.Status.ENABLED.equals(tool.getStatus())) {
+                callbacks.remove(toolId);
+            } else {
+                refresh(tool);
+            }
+        }
+        rebuildTermWeights();
+    }
+
+    /**
+     * 按相关度选择本次对话提供给模型的工具
+     *
+     * @param userMessage 用户消息
+     * @return 工具回调，没有相关工具时为空列表
+     */
+    public List<ToolCallback> select(String userMessage) {
+        if (!chatToolProperties.isEnabled() || callbacks.isEmpty()) {
+            return List.of();
+        }
+        Set<String> queryTerms = tokenize(userMessage);
+        Map<String, Double> weights = termWeights;
+        List<ToolCallback> selected = callbacks.values().stream()
+                .map(callback -> Map.entry(callback, score(queryTerms, callback.getTerms(), weights)))
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<McpToolCallback, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(chatToolProperties.getMaxPerPrompt())
+                .map(entry -> (ToolCallback) entry.getKey())
+                .toList();
+        selectionCount.incrementAndGet();
+        selectedTotal.addAndGet(selected.size());
+        return selected;
+    }
+
+    /**
+     * 获取工具目录统计信息
+     */
+    public Map<String, Object> getStats() {
+        long selections = selectionCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", chatToolProperties.isEnabled());
+        stats.put("catalogSize", callbacks.size());
+        stats.put("maxPerPrompt", chatToolProperties.getMaxPerPrompt());
+        stats.put("selections", selections);
+        stats.put("avgSelected", selections > 0 ? (double) selectedTotal.get() / selections : 0);
+        return stats;
+    }
+
+    /**
+     * 构建单个工具的回调
+     */
+    void refresh(McpToolData tool) {
+        try {
+            Map<String, Object> config = objectMapper.readValue(
+                    tool.getConfigJson() != null ? tool.getConfigJson() : "{}",
+                    new TypeReference<Map<String, Object>>() {});
+            // 未注册的工具调用必然失败，不提供给模型
+            if (!isRegistered(tool, config)) {
+                callbacks.remove(tool.getId());
+                log.debug("工具未注册，不提供给模型: {}", tool.getName());
+                return;
+            }
+            Map<?, ?> function = config.get("function") instanceof Map<?, ?> map ? map : Map.of();
+
+            String description = function.get("description") instanceof String text && !text.isEmpty()
+                    ? text
+                    : (tool.getDescription() != null ? tool.getDescription() : tool.getName());
+            Object parameters = function.get("parameters");
+            String inputSchema = parameters != null ? objectMapper.writeValueAsString(parameters) : EMPTY_SCHEMA;
+            String name = VALID_NAME.matcher(tool.getName()).matches() ? tool.getName() : "tool_" + tool.getId();
+
+            ToolDefinition definition = ToolDefinition.builder()
+                    .name(name)
+                    .description(description)
+                    .inputSchema(inputSchema)
+                    .build();
+            // 检索词项：工具名称、描述以及参数名称和说明
+            Set<String> terms = tokenize(String.join(" ", tool.getName(), description,
+                    Objects.toString(tool.getDescription(), ""), inputSchema));
+
+            callbacks.put(tool.getId(), new McpToolCallback(tool, definition, terms, this::parseArguments,
+                    (target, params) -> toText(invoke(target, config, params)), mcpToolResultCache.declaresCache(config)));
+            log.debug("构建工具回调: {} -> {}", tool.getName(), name);
+        } catch (Exception e) {
+            callbacks.remove(tool.getId());
+            log.warn("构建工具回调失败，跳过: {}", tool.getName(), e);
+        }
+    }
+
+    private boolean isRegistered(McpToolData tool, Map<String, Object> config) {
+        if (McpToolData.Type.LOCAL.equals(tool.getType())) {
+            return mcpToolInvokeService.hasTool(localName(tool, config));
+        }
+        return mcpToolRegistryService.getRemoteTool(tool.getId()) != null;
+    }
+
+    private Object invoke(McpToolData tool, Map<String, Object> config, Map<String, Object> params) {
+        if (McpToolData.Type.LOCAL.equals(tool.getType())) {
+            return mcpToolInvokeService.invokeTool(localName(tool, config), params);
+        }
+        return remoteMcpToolInvokeService.invokeRemoteTool(tool, params);
+    }
+
+    /**
+     * 本地工具的 @McpTool 名称，取自 configJson.tool_name，未配置时使用工具名称
+     */
+    private static String localName(McpToolData tool, Map<String, Object> config) {
+        return config.get("tool_name") instanceof String toolName && !toolName.isEmpty()
+                ? toolName
+                : tool.getName();
+    }
+
+    private Map<String, Object> parseArguments(String toolInput) {
+        if (toolInput == null || toolInput.isBlank()) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(toolInput, new TypeReference<Map<String, Object>>() {});
+        } catch (Exception e) {
+            throw new IllegalArgumentException("工具参数不是合法的 JSON 对象: " + toolInput, e);
+        }
+    }
+
+    private String toText(Object result) {
+        if (result instanceof String text) {
+            return text;
+        }
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            return String.valueOf(result);
+        }
+    }
+
+    private synchronized void rebuildTermWeights() {
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        callbacks.values().forEach(callback -> callback.getTerms()
+                .forEach(term -> documentFrequency.merge(term, 1, Integer::sum)));
+        int total = callbacks.size();
+        Map<String, Double> weights = new HashMap<>(documentFrequency.size());
+        documentFrequency.forEach((term, df) -> weights.put(term, Math.log(1 + (double) total / df)));
+        termWeights = weights;
+    }
+
+    private static double score(Set<String> queryTerms, Set<String> toolTerms, Map<String, Double> weights) {
+        double score = 0;
+        for (String term : queryTerms) {
+            if (toolTerms.contains(term)) {
+                score += weights.getOrDefault(term, 0.0);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * 切分检索词项：英文和数字按单词（忽略单个字符），中文按相邻两个字切分
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            char c = lower.charAt(i);
+            int start = i;
+            if (isHan(c)) {
+                while (i < length && isHan(lower.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    terms.add(lower.substring(start, i));
+                }
+                for (int k = start; k + 2 <= i; k++) {
+                    terms.add(lower.substring(k, k + 2));
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                while (i < length && Character.isLetterOrDigit(lower.charAt(i)) && !isHan(lower.charAt(i))) {
+                    i++;
+                }
+                if (i - start > 1) {
+                    terms.add(lower.substring(start, i));
+                }
+            } else {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+}
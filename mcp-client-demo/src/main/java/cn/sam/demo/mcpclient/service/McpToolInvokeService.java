@@ -4,14 +4,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springaicommunity.mcp.annotation.McpTool;
-import org.springaicommunity.mcp.annotation.McpToolParam;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -20,11 +20,13 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * MCP 工具调用服务
  * 负责直接调用已注册的 MCP 工具
+ * 应用启动后最先扫描 @McpTool 方法，对话工具目录据此判断本地工具是否可用
  *
  * @author Administrator
  */
 @Slf4j
 @Service
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class McpToolInvokeService implements ApplicationListener<ApplicationReadyEvent> {
 
     @Resource
@@ -32,6 +34,12 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
 
     // 工具名称 -> (Bean实例, 方法) 的映射
     private final Map<String, ToolMethodInfo> toolRegistry = new ConcurrentHashMap<>();
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private McpToolResultCache mcpToolResultCache;
     
     private volatile boolean initialized = false;
 
@@ -47,6 +55,7 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
 
     /**
      * 扫描所有 MCP 工具
+     * 每个工具方法在此处一次性编译为 {@link McpToolMethodInvoker}
      */
     private void scanMcpTools() {
         // 获取所有 Spring Bean
@@ -65,8 +74,13 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
                     if (toolName == null || toolName.isEmpty()) {
                         toolName = method.getName();
                     }
-                    toolRegistry.put(toolName, new ToolMethodInfo(bean, method, annotation));
-                    log.debug("注册 MCP 工具: {} -> {}.{}", toolName, beanClass.getSimpleName(), method.getName());
+                    try {
+                        McpToolMethodInvoker invoker = McpToolMethodInvoker.compile(toolName, bean, method, objectMapper);
+                        toolRegistry.put(toolName, new ToolMethodInfo(bean, method, annotation, invoker));
+                        log.debug("注册 MCP 工具: {} -> {}.{}", toolName, beanClass.getSimpleName(), method.getName());
+                    } catch (IllegalStateException e) {
+                        log.warn("编译 MCP 工具失败，跳过: {}", toolName, e);
+                    }
                 }
             }
         }
@@ -97,18 +111,17 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
             throw new IllegalArgumentException("工具不存在: " + toolName + "，可用工具: " + toolRegistry.keySet());
         }
 
-        Method method = toolInfo.method;
-        Object bean = toolInfo.bean;
+        // 声明了 cache 的工具先查结果缓存，相同参数的并发调用只执行一次
+        return mcpToolResultCache.get(McpToolResultCache.localScope(toolName), toolName, params,
+                () -> doInvokeTool(toolName, toolInfo, params));
+    }
 
+    private Object doInvokeTool(String toolName, ToolMethodInfo toolInfo, Map<String, Object> params) {
         try {
-            // 准备方法参数
-            Object[] methodArgs = prepareMethodArguments(method, params);
-
             log.debug("调用工具: {}，参数: {}", toolName, params);
 
-            // 调用方法
-            method.setAccessible(true);
-            Object result = method.invoke(bean, methodArgs);
+            // 使用预编译的调用器，热路径上没有反射和注解读取
+            Object result = toolInfo.invoker().invoke(params);
 
             log.debug("工具调用成功: {}，结果: {}", toolName, result);
             return result;
@@ -116,158 +129,12 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
         } catch (IllegalArgumentException e) {
             log.error("工具调用参数错误: {}", toolName, e);
             throw e;
-        } catch (Exception e) {
+        } catch (Throwable e) {
             log.error("工具调用失败: {}", toolName, e);
-            Throwable cause = e.getCause();
-            if (cause != null) {
-                throw new RuntimeException("工具调用失败: " + cause.getMessage(), cause);
-            }
             throw new RuntimeException("工具调用失败: " + e.getMessage(), e);
         }
     }
 
-    /**
-     * 准备方法参数
-     */
-    private Object[] prepareMethodArguments(Method method, Map<String, Object> params) {
-        Parameter[] parameters = method.getParameters();
-        Object[] args = new Object[parameters.length];
-
-        for (int i = 0; i < parameters.length; i++) {
-            Parameter param = parameters[i];
-            String paramName = param.getName();
-
-            // 检查是否有 @McpToolParam 注解
-            McpToolParam toolParam = param.getAnnotation(McpToolParam.class);
-
-            // 如果参数名是合成的（如 arg0, arg1），尝试从注解获取或使用索引
-            if (paramName == null || paramName.startsWith("arg")) {
-                // 尝试从参数位置推断（如果 params 是数组形式）
-                // 或者使用参数索引作为备选
-                paramName = "param" + i;
-            }
-
-            // 从 params Map 中获取参数值
-            // 尝试多种可能的键名
-            Object value = null;
-            if (params != null) {
-                // 1. 直接使用参数名
-                value = params.get(paramName);
-
-                // 2. 如果找不到，尝试小写
-                if (value == null) {
-                    value = params.get(paramName.toLowerCase());
-                }
-
-                // 3. 如果还找不到，尝试按位置（如果 params 是数组形式）
-                if (value == null && params.containsKey(String.valueOf(i))) {
-                    value = params.get(String.valueOf(i));
-                }
-            }
-
-            // 如果参数是可选且为 null，使用默认值
-            if (value == null) {
-                if (toolParam != null && !toolParam.required()) {
-                    // 可选参数，使用默认值
-                    value = getDefaultValue(param.getType());
-                } else {
-                    if (toolParam != null) {
-                        toolParam.required();
-                    }// 必需参数但没有提供值，抛出异常
-                    throw new IllegalArgumentException(
-                            String.format("缺少必需参数: %s (位置: %d)", paramName, i));
-                }
-            }
-
-            // 类型转换
-            args[i] = convertValue(value, param.getType());
-        }
-
-        return args;
-    }
-
-    /**
-     * 类型转换
-     */
-    private Object convertValue(Object value, Class<?> targetType) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        if (value == null) {
-            return getDefaultValue(targetType);
-        }
-
-        // 如果类型匹配，直接返回
-        if (targetType.isAssignableFrom(value.getClass())) {
-            return value;
-        }
-
-        // 基本类型转换
-        if (targetType == int.class || targetType == Integer.class) {
-            if (value instanceof Number) {
-                return ((Number) value).intValue();
-            }
-            return Integer.parseInt(value.toString());
-        }
-
-        if (targetType == long.class || targetType == Long.class) {
-            if (value instanceof Number) {
-                return ((Number) value).longValue();
-            }
-            return Long.parseLong(value.toString());
-        }
-
-        if (targetType == double.class || targetType == Double.class) {
-            if (value instanceof Number) {
-                return ((Number) value).doubleValue();
-            }
-            return Double.parseDouble(value.toString());
-        }
-
-        if (targetType == float.class || targetType == Float.class) {
-            if (value instanceof Number) {
-                return ((Number) value).floatValue();
-            }
-            return Float.parseFloat(value.toString());
-        }
-
-        if (targetType == boolean.class || targetType == Boolean.class) {
-            if (value instanceof Boolean) {
-                return value;
-            }
-            return Boolean.parseBoolean(value.toString());
-        }
-
-        if (targetType == String.class) {
-            return value.toString();
-        }
-
-        // 尝试使用 Jackson 进行 JSON 转换
-        try {
-            return objectMapper.convertValue(value, targetType);
-        } catch (Exception e) {
-            log.warn("无法转换值 {} 到类型 {}", value, targetType.getName());
-            return value;
-        }
-    }
-
-    /**
-     * 获取默认值
-     */
-    private Object getDefaultValue(Class<?> type) {
-        if (type == boolean.class) {
-            return false;
-        }
-        if (type == byte.class || type == short.class || type == int.class || type == long.class) {
-            return 0;
-        }
-        if (type == float.class || type == double.class) {
-            return 0.0;
-        }
-        if (type == char.class) {
-            return '\u0000';
-        }
-        return null;
-    }
-
     /**
      * 检查工具是否存在
      */
@@ -292,6 +159,6 @@ public class McpToolInvokeService implements ApplicationListener<ApplicationRead
     /**
      * 工具方法信息
      */
-    public record ToolMethodInfo(Object bean, Method method, McpTool annotation) {
+    public record ToolMethodInfo(Object bean, Method method, McpTool annotation, McpToolMethodInvoker invoker) {
     }
 }
@@ -0,0 +1,247 @@
+package cn.sam.demo.mcpclient.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springaicommunity.mcp.annotation.McpToolParam;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 预编译的 MCP 工具方法调用器
+ * 在扫描阶段把 @McpTool 方法编译为 MethodHandle，并预先计算参数绑定计划，
+ * 调用时不再进行反射调用和注解读取
+ *
+ * @author Administrator
+ */
+@Slf4j
+public final class McpToolMethodInvoker {
+
+    private final String toolName;
+
+    /**
+     * 已绑定 Bean 实例的调用句柄，签名统一为 (Object[]) -> Object
+     */
+    private final MethodHandle handle;
+
+    private final ParamBinding[] bindings;
+
+    private McpToolMethodInvoker(String toolName, MethodHandle handle, ParamBinding[] bindings) {
+        this.toolName = toolName;
+        this.handle = handle;
+        this.bindings = bindings;
+    }
+
+    /**
+     * 编译工具方法
+     *
+     * @param toolName     工具名称
+     * @param bean         Bean 实例
+     * @param method       工具方法
+     * @param objectMapper 复杂类型转换使用的 ObjectMapper
+     * @return 调用器
+     * @throws IllegalStateException 如果方法无法被编译
+     */
+    public static McpToolMethodInvoker compile(String toolName, Object bean, Method method, ObjectMapper objectMapper) {
+        try {
+            // 只在编译时设置一次访问权限
+            method.setAccessible(true);
+            MethodHandle target = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                target = target.bindTo(bean);
+            }
+            int parameterCount = method.getParameterCount();
+            MethodHandle spread = target
+                    .asSpreader(Object[].class, parameterCount)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+
+            Parameter[] parameters = method.getParameters();
+            ParamBinding[] bindings = new ParamBinding[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                bindings[i] = ParamBinding.of(parameters[i], i, objectMapper);
+            }
+            return new McpToolMethodInvoker(toolName, spread, bindings);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("无法编译工具方法: " + toolName, e);
+        }
+    }
+
+    /**
+     * 调用工具
+     *
+     * @param params 参数 Map
+     * @return 调用结果
+     * @throws IllegalArgumentException 如果缺少必需参数
+     * @throws Throwable                工具方法本身抛出的异常
+     */
+    public Object invoke(Map<String, Object> params) throws Throwable {
+        return invokeWithArguments(bindArguments(params));
+    }
+
+    /**
+     * 按绑定计划把参数 Map 转换为方法参数数组
+     *
+     * @param params 参数 Map
+     * @return 方法参数数组
+     * @throws IllegalArgumentException 如果缺少必需参数
+     */
+    public Object[] bindArguments(Map<String, Object> params) {
+        Object[] args = new Object[bindings.length];
+        for (int i = 0; i < bindings.length; i++) {
+            args[i] = bindings[i].resolve(params);
+        }
+        return args;
+    }
+
+    /**
+     * 使用已绑定好的参数数组调用工具方法
+     */
+    public Object invokeWithArguments(Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(args);
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    public int getParameterCount() {
+        return bindings.length;
+    }
+
+    /**
+     * 单个参数的绑定计划
+     * 键名、是否必需、默认值和类型转换器都在编译时确定
+     */
+    private record ParamBinding(int index, String name, String lowerCaseName, String indexKey,
+                                boolean required, Object defaultValue, Function<Object, Object> converter) {
+
+        static ParamBinding of(Parameter param, int index, ObjectMapper objectMapper) {
+            String paramName = param.getName();
+            // 如果参数名是合成的（如 arg0, arg1），使用索引作为备选
+            if (paramName == null || paramName.startsWith("arg")) {
+                paramName = "param" + index;
+            }
+            McpToolParam toolParam = param.getAnnotation(McpToolParam.class);
+            boolean required = toolParam == null || toolParam.required();
+            Class<?> type = param.getType();
+            return new ParamBinding(index, paramName, paramName.toLowerCase(), String.valueOf(index),
+                    required, defaultValueFor(type), converterFor(type, param.getParameterizedType(), objectMapper));
+        }
+
+        Object resolve(Map<String, Object> params) {
+            Object value = null;
+            if (params != null) {
+                // 1. 直接使用参数名；2. 尝试小写；3. 尝试按位置
+                value = params.get(name);
+                if (value == null) {
+                    value = params.get(lowerCaseName);
+                }
+                if (value == null) {
+                    value = params.get(indexKey);
+                }
+            }
+            if (value == null) {
+                if (required) {
+                    throw new IllegalArgumentException(
+                            String.format("缺少必需参数: %s (位置: %d)", name, index));
+                }
+                return defaultValue;
+            }
+            return converter.apply(value);
+        }
+    }
+
+    /**
+     * 根据参数类型选择类型转换器
+     * 复杂类型的 JavaType 和 ObjectReader 在编译时解析一次并缓存在转换器中
+     */
+    private static Function<Object, Object> converterFor(Class<?> targetType, Type genericType, ObjectMapper objectMapper) {
+        if (targetType == int.class || targetType == Integer.class) {
+            return value -> value instanceof Number n ? (Object) n.intValue() : Integer.parseInt(value.toString());
+        }
+        if (targetType == long.class || targetType == Long.class) {
+            return value -> value instanceof Number n ? (Object) n.longValue() : Long.parseLong(value.toString());
+        }
+        if (targetType == double.class || targetType == Double.class) {
+            return value -> value instanceof Number n ? (Object) n.doubleValue() : Double.parseDouble(value.toString());
+        }
+        if (targetType == float.class || targetType == Float.class) {
+            return value -> value instanceof Number n ? (Object) n.floatValue() : Float.parseFloat(value.toString());
+        }
+        if (targetType == short.class || targetType == Short.class) {
+            return value -> value instanceof Number n ? (Object) n.shortValue() : Short.parseShort(value.toString());
+        }
+        if (targetType == byte.class || targetType == Byte.class) {
+            return value -> value instanceof Number n ? (Object) n.byteValue() : Byte.parseByte(value.toString());
+        }
+        if (targetType == boolean.class || targetType == Boolean.class) {
+            return value -> value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+        }
+        if (targetType == String.class) {
+            return Object::toString;
+        }
+        // 复杂类型使用 Jackson 转换，泛型信息（如 List<Double>）保留在 JavaType 中
+        JavaType javaType = objectMapper.getTypeFactory().constructType(genericType);
+        ObjectReader reader = objectMapper.readerFor(javaType);
+        return value -> {
+            if (targetType.isInstance(value)) {
+                return value;
+            }
+            try {
+                // JSON 文本直接反序列化，其余值（Map、List 等）做树转换
+                if (value instanceof String text && looksLikeJson(text)) {
+                    return reader.readValue(text);
+                }
+                return objectMapper.convertValue(value, javaType);
+            } catch (Exception e) {
+                log.warn("无法转换值 {} 到类型 {}", value, javaType);
+                return value;
+            }
+        };
+    }
+
+    private static boolean looksLikeJson(String text) {
+        String trimmed = text.trim();
+        return trimmed.startsWith("{") || trimmed.startsWith("[");
+    }
+
+    /**
+     * 获取默认值（与参数的精确类型一致，避免调用时的装箱类型不匹配）
+     */
+    private static Object defaultValueFor(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == char.class) {
+            return '\u0000';
+        }
+        return null;
+    }
+}
@@ -1,21 +1,27 @@
 package cn.sam.demo.mcpclient.service;
 
 import cn.sam.demo.mcpclient.entity.McpToolData;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * MCP 工具动态注册服务
- * 负责将 MCP 工具动态注册到 Spring 容器中
+ * 维护远程服务器（端点）级别的注册表：每个不同的端点只保留一个客户端会话，
+ * 并建立 工具ID -> (端点, 远程工具名称) 的索引，调用时只读取无锁的 ConcurrentHashMap
  *
  * @author Administrator
  */
@@ -24,12 +30,28 @@ import java.util.stream.Collectors;
 public class McpToolRegistryService {
 
     @Resource
-    private ApplicationContext applicationContext;
+    private ObjectMapper objectMapper;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    // 存储已注册的工具 Bean 名称
-    private final Map<Long, String> registeredTools = new ConcurrentHashMap<>();
+    @Resource
+    private McpSessionManager mcpSessionManager;
+
+    @Resource
+    private McpBatchRpcClient mcpBatchRpcClient;
+
+    @Resource
+    private McpToolResultCache mcpToolResultCache;
+
+    @Resource
+    private McpToolService mcpToolService;
+
+    // 已注册的本地工具：工具ID -> 工具名称
+    private final Map<Long, String> localTools = new ConcurrentHashMap<>();
+
+    // 工具ID -> 远程工具绑定
+    private final Map<Long, RemoteToolBinding> remoteTools = new ConcurrentHashMap<>();
+
+    // 端点 -> 引用该端点的工具ID
+    private final Map<McpSessionManager.McpEndpoint, Set<Long>> endpointTools = new ConcurrentHashMap<>();
 
     /**
      * 注册 MCP 工具
@@ -53,28 +75,27 @@ public class McpToolRegistryService {
 
     /**
      * 注销 MCP 工具
+     * 端点上最后一个工具被注销时，同时关闭该端点的会话
      *
      * @param toolId 工具ID
      * @return 是否注销成功
      */
     public boolean unregisterTool(Long toolId) {
         try {
-            String beanName = registeredTools.get(toolId);
-            if (beanName == null) {
+            String localToolName = localTools.remove(toolId);
+            if (localToolName != null) {
+                mcpToolResultCache.removePolicy(McpToolResultCache.localScope(localToolName));
+                log.info("成功注销本地 MCP 工具: {}", toolId);
+                return true;
+            }
+            RemoteToolBinding binding = remoteTools.remove(toolId);
+            if (binding == null) {
                 log.warn("工具未注册，无法注销: {}", toolId);
                 return false;
             }
-
-            if (applicationContext instanceof ConfigurableApplicationContext configurableContext) {
-
-                // 从容器中移除 Bean
-                if (configurableContext.getBeanFactory().containsBean(beanName)) {
-                    configurableContext.getBeanFactory().destroyBean(beanName);
-                    log.info("成功注销 MCP 工具: {} ({})", toolId, beanName);
-                }
-            }
-            
-            registeredTools.remove(toolId);
+            mcpToolResultCache.removePolicy(McpToolResultCache.remoteScope(toolId));
+            detachFromEndpoint(binding.endpoint(), toolId);
+            log.info("成功注销 MCP 工具: {} ({})", toolId, binding.endpoint().url());
             return true;
         } catch (Exception e) {
             log.error("注销工具失败: {}", toolId, e);
@@ -82,12 +103,38 @@ public class McpToolRegistryService {
         }
     }
 
+    /**
+     * 工具保存、删除或修改状态后同步注册表：启用的工具重新注册，其余的注销
+     * 先于对话工具目录执行，目录据此判断远程工具是否可用
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener
+    public void onToolChanged(McpToolService.ToolChangedEvent event) {
+        Map<Long, McpToolData> tools = mcpToolService.listByIds(event.toolIds()).stream()
+                .collect(Collectors.toMap(McpToolData::getId, tool -> tool));
+        for (Long toolId : event.toolIds()) {
+            McpToolData tool = tools.get(toolId);
+            if (tool != null && McpToolData.Status.ENABLED.equals(tool.getStatus())) {
+                registerTool(tool);
+            } else if (isRegistered(toolId)) {
+                unregisterTool(toolId);
+            }
+        }
+    }
+
     /**
      * 注册本地工具
+     * 工具原先注册为远程工具时，同时移除远程绑定
      */
     private boolean registerLocalTool(McpToolData tool) {
         try {
-            registeredTools.put(tool.getId(), "mcpTool_" + tool.getId());
+            RemoteToolBinding previous = remoteTools.remove(tool.getId());
+            if (previous != null) {
+                mcpToolResultCache.removePolicy(McpToolResultCache.remoteScope(tool.getId()));
+                detachFromEndpoint(previous.endpoint(), tool.getId());
+            }
+            localTools.put(tool.getId(), tool.getName());
+            mcpToolResultCache.updatePolicy(McpToolResultCache.localScope(tool.getName()), parseConfig(tool));
             log.info("成功注册本地 MCP 工具: {}", tool.getName());
             return true;
         } catch (Exception e) {
@@ -98,13 +145,12 @@ public class McpToolRegistryService {
 
     /**
      * 注册远程工具
+     * 只建立索引，同一端点上的工具共享一个会话
      */
     private boolean registerRemoteTool(McpToolData tool) {
         try {
             // 解析配置信息
-            Map<String, Object> config = objectMapper.readValue(
-                    tool.getConfigJson() != null ? tool.getConfigJson() : "{}",
-                    new TypeReference<Map<String, Object>>() {});
+            Map<String, Object> config = parseConfig(tool);
 
             // 获取传输配置
             @SuppressWarnings("unchecked")
@@ -125,35 +171,79 @@ public class McpToolRegistryService {
             // 提取请求头
             Map<String, String> headers = extractHeaders(transport);
 
-            // 创建远程 MCP 客户端包装器
-            // 注意：由于 Spring AI 1.1.0 的 MCP Client API 可能还在变化中，
-            // 这里先创建一个包装器来存储连接信息，后续可以根据实际 API 调整
-            RemoteMcpClientWrapper clientWrapper = new RemoteMcpClientWrapper(
+            McpSessionManager.McpEndpoint endpoint = new McpSessionManager.McpEndpoint(url, transportType, headers);
+            RemoteToolBinding binding = new RemoteToolBinding(
                     tool.getId(),
                     tool.getName(),
-                    url,
-                    transportType,
-                    headers,
+                    resolveRemoteToolName(tool, config),
+                    endpoint,
                     config
             );
 
-            // 注册为 Spring Bean
-            String beanName = "mcpClient_" + tool.getId();
-            if (applicationContext instanceof ConfigurableApplicationContext configurableContext) {
-                configurableContext.getBeanFactory().registerSingleton(beanName, clientWrapper);
-                registeredTools.put(tool.getId(), beanName);
-                log.info("成功注册远程 MCP 工具: {} ({} -> {})", tool.getName(), transportType, url);
-                return true;
-            } else {
-                log.error("ApplicationContext 不是 ConfigurableApplicationContext，无法注册 Bean");
-                return false;
+            // 在 compute 内加入，与 detachFromEndpoint 中的移除互斥，避免加入一个刚被移除的集合
+            endpointTools.compute(endpoint, (key, toolIds) -> {
+                Set<Long> ids = toolIds != null ? toolIds : ConcurrentHashMap.newKeySet();
+                ids.add(tool.getId());
+                return ids;
+            });
+            String localToolName = localTools.remove(tool.getId());
+            if (localToolName != null) {
+                // 工具原先注册为本地工具
+                mcpToolResultCache.removePolicy(McpToolResultCache.localScope(localToolName));
             }
+            RemoteToolBinding previous = remoteTools.put(tool.getId(), binding);
+            if (previous != null && !previous.endpoint().equals(endpoint)) {
+                // 工具改为指向其他服务器，从原端点上摘除
+                detachFromEndpoint(previous.endpoint(), tool.getId());
+            }
+            mcpToolResultCache.updatePolicy(McpToolResultCache.remoteScope(tool.getId()), config);
+            log.info("成功注册远程 MCP 工具: {} ({} -> {})", tool.getName(), endpoint.transportType(), endpoint.url());
+            return true;
         } catch (Exception e) {
             log.error("注册远程工具失败: {}", tool.getName(), e);
             return false;
         }
     }
 
+    /**
+     * 解析工具配置 JSON
+     */
+    private Map<String, Object> parseConfig(McpToolData tool) throws JsonProcessingException {
+        return objectMapper.readValue(
+                tool.getConfigJson() != null ? tool.getConfigJson() : "{}",
+                new TypeReference<Map<String, Object>>() {});
+    }
+
+    /**
+     * 从端点上摘除工具，端点不再被引用时关闭其会话
+     */
+    private void detachFromEndpoint(McpSessionManager.McpEndpoint endpoint, Long toolId) {
+        Set<Long> remaining = endpointTools.computeIfPresent(endpoint, (key, toolIds) -> {
+            toolIds.remove(toolId);
+            return toolIds.isEmpty() ? null : toolIds;
+        });
+        if (remaining == null) {
+            mcpSessionManager.closeSession(endpoint);
+            mcpBatchRpcClient.closeSession(endpoint);
+            log.info("端点已无工具引用，关闭会话: {}", endpoint.url());
+        }
+    }
+
+    /**
+     * 获取远程服务器上的工具名称
+     * 优先使用配置中的 tool_name 或 function.name，否则使用本地工具名称
+     */
+    private String resolveRemoteToolName(McpToolData tool, Map<String, Object> config) {
+        if (config.get("tool_name") instanceof String toolName && !toolName.isEmpty()) {
+            return toolName;
+        }
+        if (config.get("function") instanceof Map<?, ?> function
+                && function.get("name") instanceof String functionName && !functionName.isEmpty()) {
+            return functionName;
+        }
+        return tool.getName();
+    }
+
     /**
      * 提取请求头
      */
@@ -171,17 +261,50 @@ public class McpToolRegistryService {
     }
 
     /**
-     * 远程 MCP 客户端包装器
-     * 用于存储远程 MCP 服务的连接信息
+     * 远程工具绑定
+     * 记录工具对应的远程端点和远程工具名称
      */
-    public record RemoteMcpClientWrapper(Long toolId, String toolName, String url, String transportType,
-                                         Map<String, String> headers, Map<String, Object> config) {
+    public record RemoteToolBinding(Long toolId, String toolName, String remoteToolName,
+                                    McpSessionManager.McpEndpoint endpoint, Map<String, Object> config) {
+
+        /**
+         * 远程服务器是否支持 JSON-RPC 批量请求（transport.batch: true）
+         */
+        public boolean supportsBatch() {
+            return config.get("transport") instanceof Map<?, ?> transport
+                    && Boolean.TRUE.equals(transport.get("batch"));
+        }
     }
 
     /**
      * 检查工具是否已注册
      */
     public boolean isRegistered(Long toolId) {
-        return registeredTools.containsKey(toolId);
+        return localTools.containsKey(toolId) || remoteTools.containsKey(toolId);
+    }
+
+    /**
+     * 获取远程工具绑定
+     *
+     * @param toolId 工具ID
+     * @return 绑定信息，未注册时返回 null
+     */
+    public RemoteToolBinding getRemoteTool(Long toolId) {
+        return remoteTools.get(toolId);
+    }
+
+    /**
+     * 获取端点统计：每个端点上注册的工具数量
+     */
+    public List<Map<String, Object>> getEndpointStats() {
+        return endpointTools.entrySet().stream()
+                .map(entry -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("url", entry.getKey().url());
+                    item.put("transportType", entry.getKey().transportType());
+                    item.put("toolCount", entry.getValue().size());
+                    return item;
+                })
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,310 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpToolCacheProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 工具调用结果缓存
+ * 只缓存在 configJson 中声明了 cache 的工具（纯函数类工具），
+ * 缓存键为 工具 + 规范化后的参数 JSON（键按字母排序），过期时间按工具分别设置。
+ * 使用 Caffeine（W-TinyLFU）按结果大小限制总权重；
+ * 缓存值是调用的 Future，相同参数的并发调用共享同一次下游请求
+ *
+ * @author Administrator
+ */
+@Slf4j
+@Service
+public class McpToolResultCache {
+
+    @Resource
+    private McpToolCacheProperties mcpToolCacheProperties;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter canonicalWriter;
+
+    private AsyncCache<ToolCacheKey, Object> cache;
+
+    // 缓存作用域 -> 过期时间，未声明缓存的工具不在其中
+    private final Map<String, Duration> policies = new ConcurrentHashMap<>();
+
+    // 命中时调用仍在进行中（被合并的并发调用）的次数
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        canonicalWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        cache = Caffeine.newBuilder()
+                .maximumWeight(mcpToolCacheProperties.getMaxWeight())
+                .weigher((ToolCacheKey key, Object value) -> weigh(key, value))
+                .expireAfter(new Expiry<ToolCacheKey, Object>() {
+                    @Override
+                    public long expireAfterCreate(ToolCacheKey key, Object value, long currentTime) {
+                        return key.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ToolCacheKey key, Object value, long currentTime, long currentDuration) {
+                        return key.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(ToolCacheKey key, Object value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * 本地工具的缓存作用域
+     */
+    public static String localScope(String toolName) {
+        return "local:" + toolName;
+    }
+
+    /**
+     * 远程工具的缓存作用域
+     */
+    public static String remoteScope(Long toolId) {
+        return "remote:" + toolId;
+    }
+
+    /**
+     * 根据工具配置更新缓存策略
+     * 配置格式为 "cache": true 或 "cache": {"enabled": true, "ttlSeconds": 300}
+     *
+     * @param scope  缓存作用域
+     * @param config 工具配置（configJson 解析后的 Map）
+     */
+    public void updatePolicy(String scope, Map<String, Object> config) {
+        Duration ttl = parseTtl(config != null ? config.get("cache") : null);
+        Duration previous = ttl != null ? policies.put(scope, ttl) : policies.remove(scope);
+        if (previous != null && !previous.equals(ttl)) {
+            invalidate(scope);
+        }
+        if (ttl != null) {
+            log.info("工具结果缓存已启用: {} (ttl: {})", scope, ttl);
+        }
+    }
+
+    /**
+     * 移除缓存策略并清除该作用域下的缓存
+     */
+    public void removePolicy(String scope) {
+        if (policies.remove(scope) != null) {
+            invalidate(scope);
+        }
+    }
+
+    /**
+     * 工具配置是否声明了可缓存（即没有副作用），与 updatePolicy 使用同一解析规则：
+     * ttlSeconds 不大于 0 或 enabled: false 时视为未声明
+     *
+     * @param config 工具配置（configJson 解析结果）
+     */
+    public boolean declaresCache(Map<String, Object> config) {
+        return parseTtl(config != null ? config.get("cache") : null) != null;
+    }
+
+    /**
+     * 是否缓存该作用域的调用结果
+     */
+    public boolean isCacheable(String scope) {
+        return mcpToolCacheProperties.isEnabled() && policies.containsKey(scope);
+    }
+
+    /**
+     * 获取缓存结果，未命中时执行阻塞调用
+     *
+     * @param scope     缓存作用域
+     * @param toolName  工具名称
+     * @param arguments 工具参数
+     * @param loader    实际的调用逻辑
+     * @return 调用结果
+     */
+    public Object get(String scope, String toolName, Map<String, Object> arguments, Callable<Object> loader) {
+        ToolCacheKey key = keyOf(scope, toolName, arguments);
+        if (key == null) {
+            return call(loader);
+        }
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> future = lookup(key, created);
+        if (future == created) {
+            try {
+                created.complete(loader.call());
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待工具调用结果被中断: " + toolName, e);
+        }
+    }
+
+    /**
+     * 获取缓存结果，未命中时订阅异步调用
+     * 下游调用一旦开始就会执行完成，某个等待方取消不会影响其他合并的调用方
+     *
+     * @param scope     缓存作用域
+     * @param toolName  工具名称
+     * @param arguments 工具参数
+     * @param loader    实际的调用逻辑
+     * @return 调用结果
+     */
+    public Mono<Object> getAsync(String scope, String toolName, Map<String, Object> arguments, Supplier<Mono<Object>> loader) {
+        return Mono.defer(() -> {
+            ToolCacheKey key = keyOf(scope, toolName, arguments);
+            if (key == null) {
+                return loader.get();
+            }
+            CompletableFuture<Object> created = new CompletableFuture<>();
+            CompletableFuture<Object> future = lookup(key, created);
+            if (future == created) {
+                loader.get().subscribe(created::complete, created::completeExceptionally,
+                        // 空结果不缓存，Caffeine 会移除值为 null 的条目
+                        () -> created.complete(null));
+            }
+            return Mono.fromFuture(future, true)
+                    .onErrorMap(CompletionException.class, e -> e.getCause() != null ? e.getCause() : e);
+        });
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", mcpToolCacheProperties.isEnabled());
+        result.put("cacheableTools", policies.size());
+        result.put("size", cache.synchronous().estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("coalescedCount", coalescedCount.get());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("evictionWeight", stats.evictionWeight());
+        cache.synchronous().policy().eviction().ifPresent(eviction -> {
+            result.put("maxWeight", eviction.getMaximum());
+            eviction.weightedSize().ifPresent(weight -> result.put("weight", weight));
+        });
+        return result;
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private CompletableFuture<Object> lookup(ToolCacheKey key, CompletableFuture<Object> created) {
+        CompletableFuture<Object> future = cache.get(key, (k, executor) -> created);
+        if (future != created && !future.isDone()) {
+            coalescedCount.incrementAndGet();
+        }
+        return future;
+    }
+
+    private ToolCacheKey keyOf(String scope, String toolName, Map<String, Object> arguments) {
+        if (!mcpToolCacheProperties.isEnabled()) {
+            return null;
+        }
+        Duration ttl = policies.get(scope);
+        if (ttl == null) {
+            return null;
+        }
+        try {
+            String canonical = canonicalWriter.writeValueAsString(arguments != null ? arguments : Map.of());
+            return new ToolCacheKey(scope, toolName, canonical, ttl.toNanos());
+        } catch (Exception e) {
+            log.debug("工具参数无法规范化，跳过缓存: {}", toolName, e);
+            return null;
+        }
+    }
+
+    private void invalidate(String scope) {
+        cache.synchronous().asMap().keySet().removeIf(key -> key.scope().equals(scope));
+    }
+
+    private int weigh(ToolCacheKey key, Object value) {
+        long weight = key.toolName().length() + key.arguments().length() + 64L;
+        if (value instanceof String text) {
+            weight += text.length() * 2L;
+        } else {
+            try {
+                weight += objectMapper.writeValueAsBytes(value).length;
+            } catch (Exception e) {
+                weight += 1024;
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private Duration parseTtl(Object cacheConfig) {
+        if (Boolean.TRUE.equals(cacheConfig)) {
+            return mcpToolCacheProperties.getDefaultTtl();
+        }
+        if (cacheConfig instanceof Map<?, ?> map && !Boolean.FALSE.equals(map.get("enabled"))) {
+            if (map.get("ttlSeconds") instanceof Number seconds) {
+                return seconds.longValue() > 0 ? Duration.ofSeconds(seconds.longValue()) : null;
+            }
+            return mcpToolCacheProperties.getDefaultTtl();
+        }
+        return null;
+    }
+
+    private static Object call(Callable<Object> loader) {
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            throw propagate(e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new RuntimeException(e.getMessage(), e);
+    }
+
+    /**
+     * 缓存键，过期时间随键保存，策略变化后旧条目自然失效
+     */
+    private record ToolCacheKey(String scope, String toolName, String arguments, long ttlNanos) {
+    }
+}
@@ -2,6 +2,8 @@ package cn.sam.demo.mcpclient.service;
 
 import cn.sam.demo.mcpclient.entity.McpToolData;
 
+import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -27,6 +29,14 @@ public interface McpToolService {
      */
     McpToolData getById(Long id);
 
+    /**
+     * 根据ID列表批量查询工具
+     *
+     * @param ids 工具ID列表
+     * @return 工具列表
+     */
+    List<McpToolData> listByIds(Collection<? extends Serializable> ids);
+
     /**
      * 查询所有工具
      *
@@ -58,6 +68,15 @@ public interface McpToolService {
      */
     List<McpToolData> searchByName(String name);
 
+    /**
+     * 批量新增工具（一条多行 INSERT）
+     * 在事务中调用时，工具变更事件在事务提交后发布
+     *
+     * @param tools 工具列表，保存后回填 id
+     * @return 保存后的工具列表
+     */
+    List<McpToolData> saveBatchInfo(List<McpToolData> tools);
+
     /**
      * 删除工具
      *
@@ -82,5 +101,12 @@ public interface McpToolService {
      * @return 是否更新成功
      */
     boolean updateStatus(Long id, String status);
-}
 
+    /**
+     * 工具变更事件，保存、删除或修改状态后发布，供工具注册表和对话工具目录增量刷新
+     *
+     * @param toolIds 发生变更的工具ID
+     */
+    record ToolChangedEvent(List<Long> toolIds) {
+    }
+}
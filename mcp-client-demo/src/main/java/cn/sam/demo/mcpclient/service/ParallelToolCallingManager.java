@@ -0,0 +1,207 @@
+package cn.sam.demo.mcpclient.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行工具调用管理器
+ * 模型在一轮回复中请求多个工具时，Spring AI 默认的管理器逐个执行，总耗时是各调用之和；
+ * 这里把同一轮的工具调用同时提交到业务执行器，总耗时接近最慢的一个调用。
+ * 远程工具仍然经过 RemoteMcpToolInvokeService，各远程服务器的并发上限照常生效；
+ * 整轮调用共用一个截止时间，超时的调用以错误信息返回给模型，结果按模型请求的顺序回填；
+ * 等待结果的线程被中断（流式对话的客户端断开，上游取消订阅）时中断所有进行中的调用，不再开始下一轮模型请求
+ *
+ * @author Administrator
+ */
+@Slf4j
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor toolExecutionExceptionProcessor;
+    private final Executor executor;
+    private final Duration deadline;
+
+    private final AtomicLong turnCount = new AtomicLong();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong abortedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param delegate                        默认管理器，用于解析工具定义
+     * @param toolCallbackResolver            按名称查找未在请求中提供的工具
+     * @param toolExecutionExceptionProcessor 把工具异常转换为返回给模型的文本
+     * @param executor                        执行工具调用的执行器
+     * @param deadline                        一轮工具调用的总超时时间
+     */
+    public ParallelToolCallingManager(ToolCallingManager delegate, ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                      Executor executor, Duration deadline) {
+        this.delegate = delegate;
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+        this.executor = executor;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("模型回复中没有工具调用"));
+
+        Map<String, ToolCallback> callbacks = new HashMap<>();
+        Map<String, Object> toolContext = Map.of();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            options.getToolCallbacks().forEach(callback -> callbacks.put(callback.getToolDefinition().name(), callback));
+            if (options.getToolContext() != null) {
+                toolContext = options.getToolContext();
+            }
+        }
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<Future<String>> futures = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = callbacks.get(toolCall.name());
+            if (callback == null) {
+                callback = toolCallbackResolver.resolve(toolCall.name());
+            }
+            if (callback == null) {
+                futures.add(CompletableFuture.completedFuture("工具不存在: " + toolCall.name()));
+                returnDirect = false;
+                continue;
+            }
+            returnDirect &= callback.getToolMetadata().returnDirect();
+            futures.add(submit(callback, toolCall.arguments(), new ToolContext(toolContext)));
+        }
+        turnCount.incrementAndGet();
+        callCount.addAndGet(toolCalls.size());
+
+        // 按请求顺序等待结果，所有调用共用同一个截止时间
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            try {
+                responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                        await(toolCall.name(), futures.get(i), deadlineNanos)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                int aborted = abort(futures.subList(i, futures.size()));
+                log.info("工具调用被取消，中断 {} 个进行中的调用", aborted);
+                throw new CancellationException("工具调用被取消");
+            }
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(ToolResponseMessage.builder().responses(responses).build());
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    /**
+     * 获取工具调用统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("turns", turnCount.get());
+        stats.put("calls", callCount.get());
+        stats.put("timeouts", timeoutCount.get());
+        stats.put("aborted", abortedCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("deadlineMillis", deadline.toMillis());
+        return stats;
+    }
+
+    /**
+     * 提交工具调用，取消返回的 Future 会中断执行线程（远程调用随之取消底层 HTTP 请求）
+     * 执行器已满时不在当前线程执行（会把整轮调用变成串行），直接以错误信息返回给模型
+     */
+    private Future<String> submit(ToolCallback callback, String arguments, ToolContext toolContext) {
+        FutureTask<String> task = new FutureTask<>(() -> execute(callback, arguments, toolContext));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            log.warn("工具调用被拒绝，执行器已满: {}", callback.getToolDefinition().name());
+            return CompletableFuture.completedFuture("工具调用被拒绝，系统繁忙: " + callback.getToolDefinition().name());
+        }
+        return task;
+    }
+
+    private int abort(List<Future<String>> futures) {
+        int aborted = 0;
+        for (Future<String> future : futures) {
+            if (future.cancel(true)) {
+                aborted++;
+            }
+        }
+        abortedCount.addAndGet(aborted);
+        return aborted;
+    }
+
+    private String execute(ToolCallback callback, String arguments, ToolContext toolContext) {
+        try {
+            return callback.call(arguments, toolContext);
+        } catch (ToolExecutionException e) {
+            return toolExecutionExceptionProcessor.process(e);
+        } catch (Exception e) {
+            return toolExecutionExceptionProcessor.process(new ToolExecutionException(callback.getToolDefinition(), e));
+        }
+    }
+
+    private String await(String toolName, Future<String> future, long deadlineNanos) throws InterruptedException {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCount.incrementAndGet();
+            log.warn("工具调用超时: {} ({})", toolName, deadline);
+            return "工具调用超时: " + toolName;
+        } catch (ExecutionException e) {
+            return "工具调用失败: " + e.getCause().getMessage();
+        }
+    }
+}
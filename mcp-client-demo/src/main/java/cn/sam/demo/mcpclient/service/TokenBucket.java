@@ -0,0 +1,75 @@
+package cn.sam.demo.mcpclient.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶限速器
+ * 令牌按固定速率补充，桶满时最多允许 capacity 个突发请求；
+ * 令牌不足时调用方预留下一个令牌并等待到它补充的时间，多个等待者按调用顺序排开，不会同时醒来
+ *
+ * @author Administrator
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+
+    private final double capacity;
+
+    // 当前令牌数，为负数时表示已被预留的令牌
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong waitedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param capacity         桶容量（突发请求数）
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond 必须大于 0");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个令牌，令牌不足时等待
+     *
+     * @throws InterruptedException 等待时被中断（已预留的令牌不归还）
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+            lastRefillNanos = now;
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * 1e9);
+        }
+        acquiredCount.incrementAndGet();
+        if (waitNanos > 0) {
+            waitedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getWaitedCount() {
+        return waitedCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+}
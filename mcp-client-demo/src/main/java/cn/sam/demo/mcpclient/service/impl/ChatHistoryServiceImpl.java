@@ -1,21 +1,84 @@
 package cn.sam.demo.mcpclient.service.impl;
 
+import cn.sam.demo.mcpclient.config.ChatHistoryCacheProperties;
 import cn.sam.demo.mcpclient.entity.ChatHistory;
 import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
 import cn.sam.demo.mcpclient.service.ChatHistoryService;
+import cn.sam.demo.mcpclient.service.ChatHistoryWriter;
+import cn.sam.demo.mcpclient.service.ChatSummaryService;
+import cn.sam.demo.mcpclient.service.DownstreamLimiter;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * 聊天历史记录服务实现类
+ * 活跃会话的最近 N 轮对话缓存在内存中（写穿），构建上下文时不再查询数据库；
+ * 新的对话交给 ChatHistoryWriter 异步批量写入数据库，写入队列接受后才进入缓存，写入失败时从缓存中移除
  * @author Administrator
  */
+@Slf4j
 @Service
 public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatHistory> implements ChatHistoryService {
 
+    /**
+     * 历史记录分页的默认和最大每页条数
+     */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    @Resource
+    private ChatHistoryCacheProperties chatHistoryCacheProperties;
+
+    @Resource
+    private DownstreamLimiter downstreamLimiter;
+
+    @Resource
+    private ChatHistoryWriter chatHistoryWriter;
+
+    @Resource
+    private ChatSummaryService chatSummaryService;
+
+    // 会话ID -> 最近对话窗口
+    private Cache<String, SessionWindow> sessionWindows;
+
+    // 会话ID -> 尚未写入数据库的记录，缓存重新加载时合并进窗口
+    private final Map<String, Queue<ChatHistory>> pendingWrites = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        sessionWindows = Caffeine.newBuilder()
+                .maximumSize(chatHistoryCacheProperties.getMaxSessions())
+                .expireAfterAccess(chatHistoryCacheProperties.getIdleTimeout())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 保存聊天记录
+     * 同步更新会话窗口，数据库写入在请求线程之外完成，返回时记录的 ID 可能尚未生成
+     *
+     * @throws java.util.concurrent.RejectedExecutionException 写入队列已满，记录未保存也未进入会话窗口
+     */
     @Override
     public ChatHistory saveInfo(ChatHistory chatHistory) {
         if (chatHistory.getCreateTime() == null) {
@@ -24,25 +87,165 @@ public class ChatHistoryServiceImpl extends ServiceImpl<ChatHistoryMapper, ChatH
         if (chatHistory.getUpdateTime() == null) {
             chatHistory.setUpdateTime(LocalDateTime.now());
         }
-        // 使用 MyBatis Plus 的 saveInfo 方法
-        super.save(chatHistory);
+        String sessionId = chatHistory.getSessionId();
+        // 队列已满时直接抛出，记录不进入会话窗口
+        CompletableFuture<Void> written = chatHistoryWriter.submit(chatHistory);
+        pendingWrites.computeIfAbsent(sessionId, key -> new ConcurrentLinkedQueue<>()).add(chatHistory);
+        // 与窗口加载互斥：加载中的窗口在加载完成后追加，加载时已合并的记录不会重复追加
+        sessionWindows.asMap().computeIfPresent(sessionId, (key, window) -> window.append(chatHistory));
+
+        written.whenComplete((ignored, e) -> {
+            pendingWrites.computeIfPresent(sessionId, (key, queue) -> {
+                queue.remove(chatHistory);
+                return queue.isEmpty() ? null : queue;
+            });
+            if (e == null) {
+                // 写入后检查是否需要把较早的对话压缩为摘要
+                chatSummaryService.scheduleCompaction(sessionId);
+            } else if (!(e instanceof CancellationException)) {
+                log.error("保存聊天记录失败: {}", sessionId, e);
+                sessionWindows.asMap().computeIfPresent(sessionId, (key, window) -> window.remove(chatHistory));
+            }
+        });
         return chatHistory;
     }
 
     @Override
     public List<ChatHistory> getHistoryBySessionId(String sessionId) {
-        return baseMapper.selectBySessionIdOrderByCreateTimeAsc(sessionId);
+        return mergePending(sessionId, downstreamLimiter.call(DownstreamLimiter.DB,
+                () -> baseMapper.selectBySessionIdOrderByCreateTimeAsc(sessionId)));
     }
 
+    @Override
+    public List<ChatHistory> getHistoryPage(String sessionId, Long beforeId, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        if (beforeId == null) {
+            return getRecentHistoryBySessionId(sessionId, pageSize);
+        }
+        // 游标按主键定位，再沿 (session_id, create_time) 索引向前取一页，耗时与会话长度无关
+        ChatHistory cursor = downstreamLimiter.call(DownstreamLimiter.DB, () -> baseMapper.selectById(beforeId));
+        if (cursor == null || !sessionId.equals(cursor.getSessionId())) {
+            return new ArrayList<>();
+        }
+        return downstreamLimiter.call(DownstreamLimiter.DB,
+                () -> baseMapper.selectPageBefore(sessionId, cursor.getCreateTime(), cursor.getId(), pageSize));
+    }
+
+    /**
+     * 根据会话ID查询最近N条历史记录，按创建时间升序排列
+     * N 不超过窗口大小时从会话窗口读取，窗口不存在时从数据库加载一次
+     */
     @Override
     public List<ChatHistory> getRecentHistoryBySessionId(String sessionId, Integer limit) {
-        return baseMapper.selectRecentBySessionId(sessionId, limit);
+        int windowSize = chatHistoryCacheProperties.getWindowSize();
+        if (!chatHistoryCacheProperties.isEnabled() || limit == null || limit > windowSize) {
+            return loadRecent(sessionId, limit);
+        }
+        return sessionWindows.get(sessionId, key -> new SessionWindow(windowSize, loadRecent(key, windowSize)))
+                .latest(limit);
+    }
+
+    /**
+     * 从数据库加载最近的记录，并合并尚未写入数据库的记录
+     * 查询本身已按对话顺序（创建时间升序）返回，这里不再调整顺序，未写入的记录追加在末尾
+     */
+    private List<ChatHistory> loadRecent(String sessionId, Integer limit) {
+        List<ChatHistory> rows = mergePending(sessionId, downstreamLimiter.call(DownstreamLimiter.DB,
+                () -> baseMapper.selectRecentBySessionId(sessionId, limit)));
+        if (limit != null && rows.size() > limit) {
+            return new ArrayList<>(rows.subList(rows.size() - limit, rows.size()));
+        }
+        return rows;
     }
 
+    /**
+     * 在查询结果末尾追加该会话尚未写入数据库的记录
+     */
+    private List<ChatHistory> mergePending(String sessionId, List<ChatHistory> loaded) {
+        List<ChatHistory> rows = new ArrayList<>(loaded);
+        Queue<ChatHistory> pending = pendingWrites.get(sessionId);
+        if (pending != null) {
+            Set<Long> loadedIds = new HashSet<>();
+            rows.forEach(row -> loadedIds.add(row.getId()));
+            for (ChatHistory chatHistory : pending) {
+                if (chatHistory.getId() == null || !loadedIds.contains(chatHistory.getId())) {
+                    rows.add(chatHistory);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 删除指定会话的所有历史记录
+     * 先取消该会话尚未写入的记录，避免删除之后又被写入数据库或在窗口重新加载时合并回来
+     */
     @Override
     public boolean deleteBySessionId(String sessionId) {
-        int count = baseMapper.deleteBySessionId(sessionId);
+        chatHistoryWriter.cancel(sessionId);
+        pendingWrites.remove(sessionId);
+        sessionWindows.invalidate(sessionId);
+        chatSummaryService.deleteBySessionId(sessionId);
+        int count = downstreamLimiter.call(DownstreamLimiter.DB, () -> baseMapper.deleteBySessionId(sessionId));
+        // 删除期间加载的窗口可能包含已删除的记录
+        sessionWindows.invalidate(sessionId);
         return count > 0;
     }
-}
 
+    @Override
+    public Map<String, Object> getContextCacheStats() {
+        CacheStats stats = sessionWindows.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", chatHistoryCacheProperties.isEnabled());
+        result.put("sessions", sessionWindows.estimatedSize());
+        result.put("maxSessions", chatHistoryCacheProperties.getMaxSessions());
+        result.put("windowSize", chatHistoryCacheProperties.getWindowSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("pendingWrites", pendingWrites.values().stream().mapToInt(Queue::size).sum());
+        return result;
+    }
+
+    /**
+     * 一个会话的最近对话窗口（定长环形缓冲，超出容量时丢弃最早的一轮）
+     */
+    private static final class SessionWindow {
+
+        private final int capacity;
+        private final ArrayDeque<ChatHistory> turns;
+
+        SessionWindow(int capacity, List<ChatHistory> initial) {
+            this.capacity = capacity;
+            this.turns = new ArrayDeque<>(capacity);
+            initial.forEach(this::append);
+        }
+
+        /**
+         * 追加一轮对话，已在窗口中的记录（同一对象或同一 ID）不重复追加
+         */
+        synchronized SessionWindow append(ChatHistory chatHistory) {
+            for (ChatHistory turn : turns) {
+                if (turn == chatHistory || (turn.getId() != null && turn.getId().equals(chatHistory.getId()))) {
+                    return this;
+                }
+            }
+            if (turns.size() == capacity) {
+                turns.pollFirst();
+            }
+            turns.addLast(chatHistory);
+            return this;
+        }
+
+        synchronized SessionWindow remove(ChatHistory chatHistory) {
+            turns.removeIf(turn -> turn == chatHistory);
+            return this;
+        }
+
+        synchronized List<ChatHistory> latest(int limit) {
+            List<ChatHistory> all = new ArrayList<>(turns);
+            return all.size() <= limit ? all : new ArrayList<>(all.subList(all.size() - limit, all.size()));
+        }
+    }
+}
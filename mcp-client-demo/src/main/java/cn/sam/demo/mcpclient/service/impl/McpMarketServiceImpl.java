@@ -1,33 +1,52 @@
 package cn.sam.demo.mcpclient.service.impl;
 
+import cn.sam.demo.mcpclient.config.McpMarketProperties;
 import cn.sam.demo.mcpclient.dto.McpServerListResponse;
 import cn.sam.demo.mcpclient.entity.McpMarket;
 import cn.sam.demo.mcpclient.entity.McpMarketTool;
 import cn.sam.demo.mcpclient.entity.McpToolData;
 import cn.sam.demo.mcpclient.mapper.McpMarketMapper;
 import cn.sam.demo.mcpclient.mapper.McpMarketToolMapper;
+import cn.sam.demo.mcpclient.mapper.McpToolMapper;
+import cn.sam.demo.mcpclient.service.MarketRefreshPipeline;
 import cn.sam.demo.mcpclient.service.McpMarketService;
 import cn.sam.demo.mcpclient.service.McpToolRegistryService;
 import cn.sam.demo.mcpclient.service.McpToolService;
+import cn.sam.demo.mcpclient.service.TokenBucket;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BooleanSupplier;
 
 /**
  * MCP 市场服务实现类
@@ -38,16 +57,52 @@ import java.util.Random;
 @Service
 public class McpMarketServiceImpl extends ServiceImpl<McpMarketMapper, McpMarket> implements McpMarketService {
 
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
     @Resource
     private McpMarketToolMapper marketToolMapper;
 
+    @Resource
+    private McpToolMapper mcpToolMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
     @Resource
     private RestTemplate restTemplate;
 
     @Resource
     private ApplicationContext applicationContext;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private McpMarketProperties mcpMarketProperties;
+
+    /**
+     * 分页请求和写库所在的业务执行器
+     */
+    @Resource(name = "mcpTaskExecutor")
+    private ExecutorService mcpTaskExecutor;
+
+    // 市场ID -> 最近一次刷新，用于查询进度和取消
+    private final Map<Long, MarketRefreshPipeline> refreshes = new ConcurrentHashMap<>();
+
+    // 市场ID -> 市场接口令牌桶，手动刷新和后台同步共用
+    private final Map<Long, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+
+    // 市场ID -> 分页请求URL -> 上次响应，用于条件请求（重启后第一次刷新为完整请求）
+    private final Map<Long, Map<String, CachedPage>> pageCache = new ConcurrentHashMap<>();
+
+    private ObjectWriter canonicalWriter;
+
+    @PostConstruct
+    public void init() {
+        canonicalWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
 
     @Override
     public McpMarket saveOrUpdateInfo(McpMarket market) {
@@ -130,155 +185,309 @@ public class McpMarketServiceImpl extends ServiceImpl<McpMarketMapper, McpMarket
 
     @Override
     public boolean refreshMarketTools(Long marketId) {
-        try {
-            McpMarket market = getById(marketId);
-            if (market == null) {
-                return false;
-            }
+        return refreshMarketTools(marketId, () -> false);
+    }
+
+    @Override
+    public boolean refreshMarketTools(Long marketId, BooleanSupplier cancelRequested) {
+        McpMarket market = getById(marketId);
+        if (market == null) {
+            return false;
+        }
+
+        // 调用市场API获取工具列表
+        String url = market.getUrl();
 
-            // 调用市场API获取工具列表
-            String url = market.getUrl();
-
-            HttpHeaders headers = new HttpHeaders();
-            // GET 请求不需要设置 Content-Type
-
-            // 如果有认证配置，添加到请求头
-            if (market.getAuthConfig() != null && !market.getAuthConfig().isEmpty()) {
-                try {
-                    Map<String, String> authConfig = objectMapper.readValue(market.getAuthConfig(),
-                            new TypeReference<>() {
-                            });
-                    if (authConfig.containsKey("apiKey")) {
-                        headers.set("Authorization", "Bearer " + authConfig.get("apiKey"));
-                    }
-                } catch (Exception e) {
-                    // 忽略认证配置解析错误
+        HttpHeaders headers = new HttpHeaders();
+        // GET 请求不需要设置 Content-Type
+
+        // 如果有认证配置，添加到请求头
+        if (market.getAuthConfig() != null && !market.getAuthConfig().isEmpty()) {
+            try {
+                Map<String, String> authConfig = objectMapper.readValue(market.getAuthConfig(),
+                        new TypeReference<>() {
+                        });
+                if (authConfig.containsKey("apiKey")) {
+                    headers.set("Authorization", "Bearer " + authConfig.get("apiKey"));
                 }
+            } catch (Exception e) {
+                // 忽略认证配置解析错误
             }
+        }
 
-            // 分页获取所有数据，循环请求直到返回为空
-            int pageSize = 40; // 每页大小
-            int pageNumber = 1;
-            Random random = new Random();
-            boolean hasMore = true;
-
-            while (hasMore) {
-                // 构建带查询参数的 URL
-                // https://mcpservers.cn/api/servers/list?tab=all&search=&page=1&pageSize=40&lang=zh
-                String requestUrl = UriComponentsBuilder.fromUriString(url)
-                        .queryParam("tab", "all")
-                        .queryParam("search", "")
-                        .queryParam("page", pageNumber)
-                        .queryParam("pageSize", pageSize)
-                        .queryParam("lang", "zh")
-                        .toUriString();
-
-                // GET 请求不需要请求体，只传递 headers
-                HttpEntity<String> entity = new HttpEntity<>(headers);
-
-                // 使用 GET 请求
-                ResponseEntity<String> response = restTemplate.exchange(requestUrl, HttpMethod.GET, entity, String.class);
-
-                if (!response.getStatusCode().is2xxSuccessful()) {
-                    // 请求失败，停止请求
-                    break;
-                }
-                // 解析响应
-                McpServerListResponse responseData = objectMapper.readValue(
-                        response.getBody(),
-                        McpServerListResponse.class
-                );
-
-                if (responseData == null || responseData.getServers() == null) {
-                    // 响应不成功或数据为空，停止请求
-                    break;
-                }
-                List<McpServerListResponse.McpServerInfo> serverList = responseData.getServers();
+        int pageSize = mcpMarketProperties.getPageSize();
+        MarketRefreshPipeline pipeline = new MarketRefreshPipeline(marketId,
+                page -> fetchPage(marketId, url, headers, page, pageSize),
+                new MarketToolWriter(marketId),
+                mcpTaskExecutor, pageSize, mcpMarketProperties.getPrefetchPages(), mcpMarketProperties.getMaxPages());
+
+        // 同一市场同时只允许一次刷新
+        MarketRefreshPipeline current = refreshes.compute(marketId,
+                (id, previous) -> previous != null && previous.isRunning() ? previous : pipeline);
+        if (current != pipeline) {
+            throw new IllegalStateException("市场正在刷新: " + marketId);
+        }
+        // 登记之前到达的取消请求找不到这次刷新，登记后再检查一次
+        if (cancelRequested.getAsBoolean()) {
+            pipeline.cancel();
+        }
+        return pipeline.run();
+    }
 
-                // 如果返回的列表为空，说明没有更多数据了
-                if (serverList.isEmpty()) {
-                    break;
-                }
+    @Override
+    public Map<String, Object> getRefreshProgress(Long marketId) {
+        MarketRefreshPipeline pipeline = refreshes.get(marketId);
+        return pipeline != null ? pipeline.getProgress() : null;
+    }
 
-                // 保存或更新当前页的工具
-                for (McpServerListResponse.McpServerInfo serverInfo : serverList) {
-                    // 获取服务器ID作为唯一标识
-                    String serverId = serverInfo.getId();
-                    if (serverId == null || serverId.isEmpty()) {
-                        continue; // 跳过没有ID的服务器
-                    }
-
-                    // 检查是否已存在（根据 marketId 和 serverId）
-                    McpMarketTool existingTool = marketToolMapper.selectByMarketIdAndServerId(marketId, serverId);
-
-                    // 获取工具名称（优先使用 title，其次使用 name）
-                    String toolName = serverInfo.getTitle() != null && !serverInfo.getTitle().isEmpty()
-                            ? serverInfo.getTitle()
-                            : (serverInfo.getName() != null ? serverInfo.getName() : "");
-
-                    // 获取描述
-                    String description = serverInfo.getDescription() != null
-                            ? serverInfo.getDescription()
-                            : "";
-
-                    // 构建完整的元数据
-                    Map<String, Object> toolMetadata = new HashMap<>();
-                    toolMetadata.put("id", serverId);
-                    toolMetadata.put("name", serverInfo.getName() != null ? serverInfo.getName() : "");
-                    toolMetadata.put("title", serverInfo.getTitle() != null ? serverInfo.getTitle() : "");
-                    toolMetadata.put("description", description);
-                    toolMetadata.put("author", serverInfo.getAuthor() != null ? serverInfo.getAuthor() : "");
-                    toolMetadata.put("icon", serverInfo.getIcon() != null ? serverInfo.getIcon() : "");
-                    toolMetadata.put("github_url", serverInfo.getGithubUrl() != null ? serverInfo.getGithubUrl() : "");
-                    toolMetadata.put("orderBy", serverInfo.getOrderBy() != null ? serverInfo.getOrderBy() : 0);
-                    toolMetadata.put("score", serverInfo.getScore() != null ? serverInfo.getScore() : "");
-                    if (serverInfo.getCategory() != null) {
-                        Map<String, Object> category = new HashMap<>();
-                        category.put("id", serverInfo.getCategory().getId());
-                        category.put("name", serverInfo.getCategory().getName());
-                        category.put("label", serverInfo.getCategory().getLabel());
-                        toolMetadata.put("category", category);
-                    }
-
-                    String metadataJson = objectMapper.writeValueAsString(toolMetadata);
-
-                    if (existingTool != null) {
-                        // 更新已存在的工具（保留加载状态）
-                        existingTool.setToolName(toolName);
-                        existingTool.setToolDescription(description);
-                        existingTool.setToolMetadata(metadataJson);
-                        // 不更新 isLoaded 和 localToolId，保留原有状态
-                        marketToolMapper.updateById(existingTool);
-                    } else {
-                        // 添加新工具
-                        McpMarketTool tool = McpMarketTool.builder()
-                                .marketId(marketId)
-                                .toolName(toolName)
-                                .toolDescription(description)
-                                .toolVersion(null) // API 响应中没有版本信息
-                                .toolMetadata(metadataJson)
-                                .isLoaded(false)
-                                .createTime(LocalDateTime.now())
-                                .build();
-                        marketToolMapper.insert(tool);
-                    }
-                }
+    @Override
+    public Map<String, Object> getRateLimitStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("requestsPerSecond", mcpMarketProperties.getSync().getRequestsPerSecond());
+        result.put("burst", mcpMarketProperties.getSync().getBurst());
+        Map<Long, Map<String, Object>> markets = new HashMap<>();
+        rateLimiters.forEach((marketId, bucket) -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("acquired", bucket.getAcquiredCount());
+            stats.put("waited", bucket.getWaitedCount());
+            stats.put("totalWaitMillis", bucket.getTotalWaitMillis());
+            markets.put(marketId, stats);
+        });
+        result.put("markets", markets);
+        return result;
+    }
 
-                // 判断是否还有更多数据
-                int currentPageSize = serverList.size();
-                if (currentPageSize < pageSize) {
-                    // 返回的数据少于每页大小，说明已经是最后一页了
-                    hasMore = false;
-                } else {
-                    // 还有更多数据，继续请求下一页
-                    pageNumber++;
+    @Override
+    public boolean cancelRefresh(Long marketId) {
+        MarketRefreshPipeline pipeline = refreshes.get(marketId);
+        if (pipeline == null || !pipeline.isRunning()) {
+            return false;
+        }
+        pipeline.cancel();
+        return true;
+    }
+
+    /**
+     * 请求并解析一页服务器
+     * 上次响应带有 ETag 或 Last-Modified 时发送条件请求，市场返回 304 时复用上次解析的结果；
+     * 请求失败或响应中没有服务器列表时抛出异常使本次刷新失败，避免把不完整的列表当作全部数据而移除其余工具
+     */
+    private List<McpServerListResponse.McpServerInfo> fetchPage(Long marketId, String url, HttpHeaders headers,
+                                                                int pageNumber, int pageSize) throws Exception {
+        // 构建带查询参数的 URL
+        // https://mcpservers.cn/api/servers/list?tab=all&search=&page=1&pageSize=40&lang=zh
+        String requestUrl = UriComponentsBuilder.fromUriString(url)
+                .queryParam("tab", "all")
+                .queryParam("search", "")
+                .queryParam("page", pageNumber)
+                .queryParam("pageSize", pageSize)
+                .queryParam("lang", "zh")
+                .toUriString();
+
+        Map<String, CachedPage> cachedPages = pageCache.computeIfAbsent(marketId, id -> new ConcurrentHashMap<>());
+        CachedPage cached = cachedPages.get(requestUrl);
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.putAll(headers);
+        if (cached != null) {
+            if (cached.etag() != null) {
+                requestHeaders.setIfNoneMatch(cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+            }
+        }
+
+        // GET 请求不需要请求体，只传递 headers
+        HttpEntity<String> entity = new HttpEntity<>(requestHeaders);
+
+        // 按市场限速，预取的分页请求同样排队等待令牌
+        TokenBucket rateLimiter = rateLimiter(marketId);
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+
+        // 使用 GET 请求
+        ResponseEntity<String> response = restTemplate.exchange(requestUrl, HttpMethod.GET, entity, String.class);
+
+        if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            log.debug("市场分页未变化: {}", requestUrl);
+            return cached.servers();
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("市场接口返回错误状态码: " + response.getStatusCode().value() + ", page=" + pageNumber);
+        }
+        // 解析响应
+        McpServerListResponse responseData = objectMapper.readValue(
+                response.getBody(),
+                McpServerListResponse.class
+        );
+
+        if (responseData == null || responseData.getServers() == null) {
+            throw new IllegalStateException("市场响应中没有服务器列表, page=" + pageNumber);
+        }
+        String etag = response.getHeaders().getETag();
+        String lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+        if (etag != null || lastModified != null) {
+            cachedPages.put(requestUrl, new CachedPage(etag, lastModified, responseData.getServers()));
+        } else {
+            cachedPages.remove(requestUrl);
+        }
+        return responseData.getServers();
+    }
+
+    /**
+     * 获取市场的令牌桶，未配置限速时返回 null
+     */
+    private TokenBucket rateLimiter(Long marketId) {
+        McpMarketProperties.Sync sync = mcpMarketProperties.getSync();
+        if (sync.getRequestsPerSecond() <= 0) {
+            return null;
+        }
+        return rateLimiters.computeIfAbsent(marketId, id -> new TokenBucket(sync.getRequestsPerSecond(), sync.getBurst()));
+    }
+
+    /**
+     * 一次刷新的写入方
+     * 市场已有工具（含已下架）的内容哈希在写入第一页时一次加载，创建写入方本身不查询数据库，
+     * 因正在刷新而被拒绝的请求不会产生多余的查询；每页只写入新增和内容变化的工具，
+     * 一条多行 INSERT ... ON DUPLICATE KEY UPDATE；全部页面写完后把本次没有出现的工具标记为下架
+     */
+    private class MarketToolWriter implements MarketRefreshPipeline.PageWriter {
+
+        private final Long marketId;
+
+        // 服务器ID -> 已有工具，写入方按页顺序调用，不需要同步；为 null 时尚未加载
+        private Map<String, McpMarketTool> existing;
+
+        // 本次刷新中出现过的服务器ID
+        private final Set<String> seen = new HashSet<>();
+
+        MarketToolWriter(Long marketId) {
+            this.marketId = marketId;
+        }
+
+        private Map<String, McpMarketTool> existing() {
+            if (existing == null) {
+                existing = new HashMap<>();
+                marketToolMapper.selectSyncStateByMarketId(marketId).forEach(tool -> existing.put(tool.getServerId(), tool));
+            }
+            return existing;
+        }
+
+        @Override
+        public MarketRefreshPipeline.WriteResult write(List<McpServerListResponse.McpServerInfo> serverList) throws Exception {
+            // 同一服务器在本次刷新中出现多次时只写入第一次
+            Map<String, McpMarketTool> rows = new LinkedHashMap<>();
+            int added = 0;
+            int unchanged = 0;
+            for (McpServerListResponse.McpServerInfo serverInfo : serverList) {
+                // 获取服务器ID作为唯一标识
+                String serverId = serverInfo.getId();
+                if (serverId == null || serverId.isEmpty() || !seen.add(serverId)) {
+                    continue; // 跳过没有ID或本次已处理过的服务器
                 }
+                McpMarketTool row = toMarketTool(marketId, serverInfo);
+                McpMarketTool current = existing().get(serverId);
+                if (current == null) {
+                    added++;
+                } else if (row.getContentHash().equals(current.getContentHash()) && !isDeleted(current)) {
+                    unchanged++;
+                    continue;
+                }
+                rows.put(serverId, row);
             }
-            return true;
-        } catch (Exception e) {
-            log.error("刷新市场工具列表失败", e);
+            if (!rows.isEmpty()) {
+                marketToolMapper.upsertBatch(new ArrayList<>(rows.values()));
+            }
+            return new MarketRefreshPipeline.WriteResult(added, rows.size() - added, unchanged);
+        }
+
+        @Override
+        public int complete() {
+            if (seen.isEmpty()) {
+                // 市场请求失败时同样返回空列表，此时不下架任何工具
+                log.warn("市场 {} 本次刷新没有返回任何服务器，跳过下架", marketId);
+                return 0;
+            }
+            List<Long> removed = existing().values().stream()
+                    .filter(tool -> !isDeleted(tool) && !seen.contains(tool.getServerId()))
+                    .map(McpMarketTool::getId)
+                    .toList();
+            for (int from = 0; from < removed.size(); from += DELETE_BATCH_SIZE) {
+                marketToolMapper.markDeleted(removed.subList(from, Math.min(from + DELETE_BATCH_SIZE, removed.size())));
+            }
+            return removed.size();
+        }
+
+        private boolean isDeleted(McpMarketTool tool) {
+            return tool.getDeleted() != null && tool.getDeleted() != 0;
+        }
+    }
+
+    /**
+     * 上次响应的缓存验证信息和解析结果
+     */
+    private record CachedPage(String etag, String lastModified, List<McpServerListResponse.McpServerInfo> servers) {
+    }
+
+    /**
+     * 把市场返回的服务器信息转换为市场工具记录
+     * 已存在的记录在 upsert 时只更新名称、描述和元数据，不更新 isLoaded 和 localToolId
+     */
+    private McpMarketTool toMarketTool(Long marketId, McpServerListResponse.McpServerInfo serverInfo) throws Exception {
+        String serverId = serverInfo.getId();
+
+        // 获取工具名称（优先使用 title，其次使用 name）
+        String toolName = serverInfo.getTitle() != null && !serverInfo.getTitle().isEmpty()
+                ? serverInfo.getTitle()
+                : (serverInfo.getName() != null ? serverInfo.getName() : "");
+
+        // 获取描述
+        String description = serverInfo.getDescription() != null
+                ? serverInfo.getDescription()
+                : "";
+
+        // 构建完整的元数据
+        Map<String, Object> toolMetadata = new HashMap<>();
+        toolMetadata.put("id", serverId);
+        toolMetadata.put("name", serverInfo.getName() != null ? serverInfo.getName() : "");
+        toolMetadata.put("title", serverInfo.getTitle() != null ? serverInfo.getTitle() : "");
+        toolMetadata.put("description", description);
+        toolMetadata.put("author", serverInfo.getAuthor() != null ? serverInfo.getAuthor() : "");
+        toolMetadata.put("icon", serverInfo.getIcon() != null ? serverInfo.getIcon() : "");
+        toolMetadata.put("github_url", serverInfo.getGithubUrl() != null ? serverInfo.getGithubUrl() : "");
+        toolMetadata.put("orderBy", serverInfo.getOrderBy() != null ? serverInfo.getOrderBy() : 0);
+        toolMetadata.put("score", serverInfo.getScore() != null ? serverInfo.getScore() : "");
+        if (serverInfo.getCategory() != null) {
+            Map<String, Object> category = new HashMap<>();
+            category.put("id", serverInfo.getCategory().getId());
+            category.put("name", serverInfo.getCategory().getName());
+            category.put("label", serverInfo.getCategory().getLabel());
+            toolMetadata.put("category", category);
+        }
+
+        // 按键排序序列化，相同内容的哈希稳定
+        String metadataJson = canonicalWriter.writeValueAsString(toolMetadata);
+        return McpMarketTool.builder()
+                .marketId(marketId)
+                .serverId(serverId)
+                .toolName(toolName)
+                .toolDescription(description)
+                .toolVersion(null) // API 响应中没有版本信息
+                .toolMetadata(metadataJson)
+                .contentHash(sha256(metadataJson))
+                .isLoaded(false)
+                .createTime(LocalDateTime.now())
+                .build();
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return false;
     }
 
     @Override
@@ -290,29 +499,16 @@ public class McpMarketServiceImpl extends ServiceImpl<McpMarketMapper, McpMarket
             }
 
             // 创建本地工具
-            McpToolData localTool = McpToolData.builder()
-                    .name(marketTool.getToolName())
-                    .description(marketTool.getToolDescription())
-                    .type(McpToolData.Type.REMOTE)
-                    .status(McpToolData.Status.ENABLED)
-                    .configJson(marketTool.getToolMetadata())
-                    .build();
-
-            // 保存本地工具
+            McpToolData localTool = toLocalTool(marketTool);
+
+            // 保存本地工具，保存后发布的 ToolChangedEvent 会把工具注册到注册表
             McpToolService mcpToolService = applicationContext.getBean(McpToolService.class);
             McpToolData savedTool = mcpToolService.saveOrUpdateInfo(localTool);
 
-            // 自动注册到 Spring AI MCP 系统
-            try {
-                McpToolRegistryService registryService = applicationContext.getBean(McpToolRegistryService.class);
-                if (registryService.registerTool(savedTool)) {
-                    log.info("工具加载后自动注册成功: {}", savedTool.getName());
-                } else {
-                    log.warn("工具加载后自动注册失败: {}", savedTool.getName());
-                }
-            } catch (Exception e) {
-                log.error("工具加载后自动注册异常: {}", savedTool.getName(), e);
-                // 注册失败不影响工具加载，继续执行
+            // 注册失败不影响工具加载
+            McpToolRegistryService registryService = applicationContext.getBean(McpToolRegistryService.class);
+            if (!registryService.isRegistered(savedTool.getId())) {
+                log.warn("工具加载后未能注册: {}", savedTool.getName());
             }
 
             // 更新市场工具的加载状态
@@ -326,43 +522,146 @@ public class McpMarketServiceImpl extends ServiceImpl<McpMarketMapper, McpMarket
     }
 
     @Override
-    public int batchLoadToolsToLocal(List<Long> marketToolIds) {
-        if (marketToolIds == null || marketToolIds.isEmpty()) {
-            return 0;
+    public Map<String, Object> batchLoadToolsToLocal(List<Long> marketToolIds) {
+        // 按请求顺序记录每个工具的结果，重复的ID只处理一次
+        Map<Long, Map<String, Object>> outcomes = new LinkedHashMap<>();
+        if (marketToolIds != null) {
+            marketToolIds.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(id -> outcomes.putIfAbsent(id, outcome(id, LoadStatus.NOT_FOUND, "工具不存在或已下架")));
         }
 
-        int successCount = 0;
-        McpToolService mcpToolService = applicationContext.getBean(McpToolService.class);
-
-        for (Long marketToolId : marketToolIds) {
+        int loaded = 0;
+        if (!outcomes.isEmpty()) {
             try {
-                McpMarketTool marketTool = marketToolMapper.selectById(marketToolId);
-                if (marketTool == null || marketTool.getIsLoaded()) {
-                    continue; // 跳过已加载或不存在的工具
+                loaded = transactionTemplate.execute(status -> loadBatch(outcomes));
+            } catch (Exception e) {
+                // 整批回滚，没有工具被加载
+                log.error("批量加载工具失败: {} 个工具", outcomes.size(), e);
+                outcomes.replaceAll((id, outcome) -> outcome(id, LoadStatus.FAILED, e.getMessage()));
+                loaded = 0;
+            }
+        }
+
+        // 事务提交后已发布工具变更事件，注册表在当前线程中完成注册
+        if (loaded > 0) {
+            McpToolRegistryService registryService = applicationContext.getBean(McpToolRegistryService.class);
+            outcomes.values().stream()
+                    .filter(outcome -> LoadStatus.LOADED.equals(outcome.get("status")))
+                    .forEach(outcome -> outcome.put("registered", registryService.isRegistered((Long) outcome.get("localToolId"))));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("requested", outcomes.size());
+        result.put("loaded", loaded);
+        result.put("results", new ArrayList<>(outcomes.values()));
+        return result;
+    }
+
+    /**
+     * 在事务中加载一批工具：锁定市场工具、检查本地同名工具、批量新增本地工具、批量标记已加载
+     * 每类语句按 LOAD_BATCH_SIZE 分批，1000 个工具约 8 条语句
+     *
+     * @return 加载的工具数
+     */
+    private int loadBatch(Map<Long, Map<String, Object>> outcomes) {
+        List<Long> ids = new ArrayList<>(outcomes.keySet());
+        List<McpMarketTool> candidates = new ArrayList<>();
+        for (List<Long> chunk : chunks(ids)) {
+            for (McpMarketTool marketTool : marketToolMapper.selectForLoad(chunk)) {
+                if (Boolean.TRUE.equals(marketTool.getIsLoaded())) {
+                    Map<String, Object> outcome = outcome(marketTool.getId(), LoadStatus.ALREADY_LOADED, "工具已加载");
+                    outcome.put("localToolId", marketTool.getLocalToolId());
+                    outcomes.put(marketTool.getId(), outcome);
+                } else {
+                    candidates.add(marketTool);
                 }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
 
-                // 创建本地工具
-                McpToolData localTool = McpToolData.builder()
-                        .name(marketTool.getToolName())
-                        .description(marketTool.getToolDescription())
-                        .type(McpToolData.Type.REMOTE)
-                        .status(McpToolData.Status.ENABLED)
-                        .configJson(marketTool.getToolMetadata())
-                        .build();
-
-                // 保存本地工具
-                McpToolData savedTool = mcpToolService.saveOrUpdateInfo(localTool);
-
-                // 更新市场工具的加载状态
-                marketToolMapper.updateLoadedStatus(marketToolId, true, savedTool.getId());
-                successCount++;
-            } catch (Exception e) {
-                log.error("批量加载工具失败: marketToolId={}", marketToolId, e);
-                // 继续处理下一个工具，不中断批量操作
+        // 本地工具名称唯一：跳过与已有工具或本批前面的工具同名的工具
+        Set<String> takenNames = new HashSet<>();
+        List<String> names = candidates.stream().map(McpMarketTool::getToolName).distinct().toList();
+        for (List<String> chunk : chunks(names)) {
+            mcpToolMapper.selectList(new LambdaQueryWrapper<McpToolData>()
+                            .select(McpToolData::getName)
+                            .in(McpToolData::getName, chunk))
+                    .forEach(tool -> takenNames.add(tool.getName()));
+        }
+        List<McpMarketTool> toLoad = new ArrayList<>();
+        List<McpToolData> localTools = new ArrayList<>();
+        for (McpMarketTool marketTool : candidates) {
+            if (!takenNames.add(marketTool.getToolName())) {
+                outcomes.put(marketTool.getId(), outcome(marketTool.getId(), LoadStatus.NAME_CONFLICT,
+                        "本地已存在同名工具: " + marketTool.getToolName()));
+                continue;
             }
+            toLoad.add(marketTool);
+            localTools.add(toLocalTool(marketTool));
+        }
+        if (toLoad.isEmpty()) {
+            return 0;
+        }
+
+        McpToolService mcpToolService = applicationContext.getBean(McpToolService.class);
+        for (List<McpToolData> chunk : chunks(localTools)) {
+            mcpToolService.saveBatchInfo(chunk);
+        }
+        for (int i = 0; i < toLoad.size(); i++) {
+            McpMarketTool marketTool = toLoad.get(i);
+            marketTool.setLocalToolId(localTools.get(i).getId());
+            Map<String, Object> outcome = outcome(marketTool.getId(), LoadStatus.LOADED, "工具加载成功");
+            outcome.put("localToolId", marketTool.getLocalToolId());
+            outcomes.put(marketTool.getId(), outcome);
+        }
+        for (List<McpMarketTool> chunk : chunks(toLoad)) {
+            marketToolMapper.markLoadedBatch(chunk);
         }
+        log.info("批量加载工具: 请求 {} 个，加载 {} 个", outcomes.size(), toLoad.size());
+        return toLoad.size();
+    }
+
+    /**
+     * 由市场工具创建本地远程工具
+     */
+    private static McpToolData toLocalTool(McpMarketTool marketTool) {
+        return McpToolData.builder()
+                .name(marketTool.getToolName())
+                .description(marketTool.getToolDescription())
+                .type(McpToolData.Type.REMOTE)
+                .status(McpToolData.Status.ENABLED)
+                .configJson(marketTool.getToolMetadata())
+                .build();
+    }
+
+    private static Map<String, Object> outcome(Long marketToolId, String status, String message) {
+        Map<String, Object> outcome = new HashMap<>();
+        outcome.put("marketToolId", marketToolId);
+        outcome.put("status", status);
+        outcome.put("message", message);
+        return outcome;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += LOAD_BATCH_SIZE) {
+            chunks.add(list.subList(from, Math.min(from + LOAD_BATCH_SIZE, list.size())));
+        }
+        return chunks;
+    }
 
-        return successCount;
+    /**
+     * 批量加载的单个工具结果
+     */
+    private static class LoadStatus {
+        static final String LOADED = "LOADED";
+        static final String ALREADY_LOADED = "ALREADY_LOADED";
+        static final String NOT_FOUND = "NOT_FOUND";
+        static final String NAME_CONFLICT = "NAME_CONFLICT";
+        static final String FAILED = "FAILED";
     }
 }
 
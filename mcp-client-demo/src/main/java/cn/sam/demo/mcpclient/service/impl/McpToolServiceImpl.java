@@ -5,19 +5,29 @@ import cn.sam.demo.mcpclient.mapper.McpToolMapper;
 import cn.sam.demo.mcpclient.service.McpToolService;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import jakarta.annotation.Resource;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * MCP 工具服务实现类
+ * 写操作成功后发布 {@link ToolChangedEvent}
  *
  * @author Administrator
  */
 @Service
 public class McpToolServiceImpl extends ServiceImpl<McpToolMapper, McpToolData> implements McpToolService {
 
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @Override
     public McpToolData saveOrUpdateInfo(McpToolData tool) {
         if (tool.getId() == null) {
@@ -28,14 +38,52 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolMapper, McpToolData>
             tool.setStatus(McpToolData.Status.ENABLED);
         }
         super.saveOrUpdate(tool);
+        publishChanged(List.of(tool.getId()));
         return tool;
     }
 
+    @Override
+    public List<McpToolData> saveBatchInfo(List<McpToolData> tools) {
+        if (tools == null || tools.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (McpToolData tool : tools) {
+            tool.setCreateTime(now);
+            tool.setUpdateTime(now);
+            if (tool.getStatus() == null) {
+                tool.setStatus(McpToolData.Status.ENABLED);
+            }
+        }
+        baseMapper.insertBatch(tools);
+        List<Long> ids = tools.stream().map(McpToolData::getId).toList();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务回滚时不注册工具
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishChanged(ids);
+                }
+            });
+        } else {
+            publishChanged(ids);
+        }
+        return tools;
+    }
+
     @Override
     public McpToolData getById(Long id) {
         return super.getById(id);
     }
 
+    @Override
+    public List<McpToolData> listByIds(Collection<? extends Serializable> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        return super.listByIds(ids);
+    }
+
     @Override
     public List<McpToolData> listAll() {
         return super.list(new LambdaQueryWrapper<McpToolData>().orderByDesc(McpToolData::getCreateTime));
@@ -58,12 +106,20 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolMapper, McpToolData>
 
     @Override
     public boolean deleteById(Long id) {
-        return super.removeById(id);
+        boolean removed = super.removeById(id);
+        if (removed) {
+            publishChanged(List.of(id));
+        }
+        return removed;
     }
 
     @Override
     public boolean deleteBatch(List<Long> ids) {
-        return super.removeByIds(ids);
+        boolean removed = super.removeByIds(ids);
+        if (removed) {
+            publishChanged(ids);
+        }
+        return removed;
     }
 
     @Override
@@ -74,7 +130,15 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolMapper, McpToolData>
         }
         tool.setStatus(status);
         tool.setUpdateTime(LocalDateTime.now());
-        return super.updateById(tool);
+        boolean updated = super.updateById(tool);
+        if (updated) {
+            publishChanged(List.of(id));
+        }
+        return updated;
+    }
+
+    private void publishChanged(List<Long> toolIds) {
+        applicationEventPublisher.publishEvent(new ToolChangedEvent(List.copyOf(toolIds)));
     }
 }
 
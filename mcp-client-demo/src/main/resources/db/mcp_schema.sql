@@ -26,6 +26,7 @@ CREATE TABLE IF NOT EXISTS `mcp_market` (
   `description` TEXT COMMENT '市场描述',
   `auth_config` TEXT COMMENT '认证配置（JSON格式）',
   `status` VARCHAR(20) NOT NULL DEFAULT 'ENABLED' COMMENT '状态：ENABLED-启用, DISABLED-禁用',
+  `sync_interval` INT COMMENT '后台同步间隔（秒），为空时使用 mcp.market.sync.default-interval',
   `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
@@ -33,21 +34,43 @@ CREATE TABLE IF NOT EXISTS `mcp_market` (
   INDEX `idx_status` (`status`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='MCP市场表';
 
+-- 已有的表：增加后台同步间隔
+-- ALTER TABLE `mcp_market` ADD COLUMN `sync_interval` INT COMMENT '后台同步间隔（秒），为空时使用 mcp.market.sync.default-interval' AFTER `status`;
+
 -- 创建 MCP 市场工具关联表
 CREATE TABLE IF NOT EXISTS `mcp_market_tool` (
   `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID',
   `market_id` BIGINT NOT NULL COMMENT '市场ID',
+  `server_id` VARCHAR(128) NOT NULL COMMENT '市场中的服务器ID',
   `tool_name` VARCHAR(100) NOT NULL COMMENT '工具名称',
   `tool_description` TEXT COMMENT '工具描述',
   `tool_version` VARCHAR(50) COMMENT '工具版本',
   `tool_metadata` TEXT COMMENT '工具元数据（JSON格式）',
+  `content_hash` CHAR(64) COMMENT '元数据内容哈希（SHA-256），刷新时内容未变化的工具不再写入',
   `is_loaded` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已加载到本地：0-未加载, 1-已加载',
   `local_tool_id` BIGINT COMMENT '关联的本地工具ID',
+  `deleted` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已从市场下架：0-否, 1-是',
   `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`),
-  INDEX `idx_market_id` (`market_id`),
+  UNIQUE KEY `uk_market_server` (`market_id`, `server_id`),
   INDEX `idx_is_loaded` (`is_loaded`),
   INDEX `idx_tool_name` (`tool_name`),
   FOREIGN KEY (`market_id`) REFERENCES `mcp_market` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='MCP市场工具表';
 
+-- 已有的表：从元数据中回填服务器ID，删除重复记录后加唯一键（唯一键的前缀可以替代 idx_market_id）
+-- ALTER TABLE `mcp_market_tool` ADD COLUMN `server_id` VARCHAR(128) NULL COMMENT '市场中的服务器ID' AFTER `market_id`;
+-- UPDATE `mcp_market_tool` SET `server_id` = JSON_UNQUOTE(JSON_EXTRACT(`tool_metadata`, '$.id'));
+-- DELETE t1 FROM `mcp_market_tool` t1
+--   JOIN `mcp_market_tool` t2 ON t1.`market_id` = t2.`market_id` AND t1.`server_id` = t2.`server_id` AND t1.`id` > t2.`id`;
+-- DELETE FROM `mcp_market_tool` WHERE `server_id` IS NULL;
+-- ALTER TABLE `mcp_market_tool`
+--   MODIFY COLUMN `server_id` VARCHAR(128) NOT NULL COMMENT '市场中的服务器ID',
+--   ADD UNIQUE KEY `uk_market_server` (`market_id`, `server_id`),
+--   DROP INDEX `idx_market_id`;
+
+-- 已有的表：增加内容哈希和下架标记（content_hash 为空的记录在下次刷新时写入一次）
+-- ALTER TABLE `mcp_market_tool`
+--   ADD COLUMN `content_hash` CHAR(64) COMMENT '元数据内容哈希（SHA-256），刷新时内容未变化的工具不再写入' AFTER `tool_metadata`,
+--   ADD COLUMN `deleted` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已从市场下架：0-否, 1-是' AFTER `local_tool_id`;
+
@@ -12,7 +12,25 @@ CREATE TABLE IF NOT EXISTS `chat_history` (
   `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
-  INDEX `idx_session_id` (`session_id`),
-  INDEX `idx_create_time` (`create_time`)
+  INDEX `idx_session_create` (`session_id`, `create_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天历史记录表';
 
+-- 已有的表：用组合索引替换原来的单列索引，按会话查询最近记录和分页时不再需要 filesort
+-- ALTER TABLE `chat_history`
+--   ADD INDEX `idx_session_create` (`session_id`, `create_time`),
+--   DROP INDEX `idx_session_id`,
+--   DROP INDEX `idx_create_time`;
+
+-- 创建会话滚动摘要表：较早的对话合并为摘要，只增量合并上次之后的新对话
+CREATE TABLE IF NOT EXISTS `chat_summary` (
+  `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `summary` TEXT NOT NULL COMMENT '摘要内容',
+  `last_history_id` BIGINT NOT NULL COMMENT '已合并的最后一轮对话ID',
+  `last_history_time` DATETIME NOT NULL COMMENT '已合并的最后一轮对话的创建时间',
+  `turn_count` INT NOT NULL DEFAULT 0 COMMENT '已合并的对话轮数',
+  `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_session_id` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话滚动摘要表';
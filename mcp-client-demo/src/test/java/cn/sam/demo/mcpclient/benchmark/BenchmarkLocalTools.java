@@ -0,0 +1,76 @@
+package cn.sam.demo.mcpclient.benchmark;
+
+import org.springaicommunity.mcp.annotation.McpTool;
+import org.springaicommunity.mcp.annotation.McpToolParam;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的工具类
+ * 与 mcp-service-demo 中的 LocalMcpTools 保持相同的方法签名，
+ * 去掉了结果中的时间戳格式化，使测量结果集中在调用开销上
+ *
+ * @author Administrator
+ */
+public class BenchmarkLocalTools {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @McpTool(name = "get_current_time", description = "获取当前系统时间")
+    public String getCurrentTime(
+            @McpToolParam(description = "时间格式，可选值：datetime(默认), date, time", required = false) String format) {
+        LocalDateTime now = LocalDateTime.now();
+        if (format == null || format.isEmpty()) {
+            format = "datetime";
+        }
+        DateTimeFormatter formatter = switch (format.toLowerCase()) {
+            case "date" -> DateTimeFormatter.ofPattern("yyyy-MM-dd");
+            case "time" -> DateTimeFormatter.ofPattern("HH:mm:ss");
+            default -> DATE_TIME;
+        };
+        return now.format(formatter);
+    }
+
+    @McpTool(name = "calculator_add", description = "计算两个数字的和")
+    public Map<String, Object> calculatorAdd(@McpToolParam(description = "第一个数字") Double a,
+                                             @McpToolParam(description = "第二个数字") Double b) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("operation", "add");
+        result.put("a", a);
+        result.put("b", b);
+        result.put("result", a + b);
+        return result;
+    }
+
+    @McpTool(name = "calculator_multiply", description = "计算两个数字的乘积")
+    public Map<String, Object> calculatorMultiply(@McpToolParam(description = "第一个数字") Double a,
+                                                  @McpToolParam(description = "第二个数字") Double b) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("operation", "multiply");
+        result.put("a", a);
+        result.put("b", b);
+        result.put("result", a * b);
+        return result;
+    }
+
+    @McpTool(name = "string_reverse", description = "反转字符串")
+    public Map<String, Object> stringReverse(@McpToolParam(description = "要反转的字符串") String text) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("original", text);
+        result.put("reversed", new StringBuilder(text).reverse().toString());
+        result.put("length", text.length());
+        return result;
+    }
+
+    @McpTool(name = "string_uppercase", description = "将字符串转换为大写")
+    public Map<String, Object> stringUppercase(@McpToolParam(description = "要转换的字符串") String text) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("original", text);
+        result.put("uppercase", text.toUpperCase());
+        result.put("length", text.length());
+        return result;
+    }
+}
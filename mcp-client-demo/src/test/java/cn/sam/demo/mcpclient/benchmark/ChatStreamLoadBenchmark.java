@@ -0,0 +1,204 @@
+package cn.sam.demo.mcpclient.benchmark;
+
+import cn.sam.demo.mcpclient.config.McpExecutionConfig;
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import cn.sam.demo.mcpclient.service.DownstreamLimiter;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 执行器负载测试
+ * 不经过 ChatController，直接在 mcpTaskExecutor 上模拟一次对话的阻塞步骤：读取历史（模拟数据库耗时）、
+ * 在 DownstreamLimiter 许可内调用一次 stub MCP 服务器上的工具（阻塞 HTTP）、再完整消费 stub LLM 的流式输出，
+ * 统计最大并发流数量、成功/拒绝数和 p50/p99 延迟
+ * <p>
+ * 运行方式：mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cn.sam.demo.mcpclient.benchmark.ChatStreamLoadBenchmark
+ * <p>
+ * 只测量有界的业务线程池；虚拟线程由 Spring Boot 的 spring.threads.virtual.enabled 提供（Java 21+），不在此对比
+ *
+ * @author Administrator
+ */
+public class ChatStreamLoadBenchmark {
+
+    private static final int[] CONCURRENCY_LEVELS = {200, 1000, 2000};
+    private static final Duration DB_LATENCY = Duration.ofMillis(5);
+    private static final Duration MCP_LATENCY = Duration.ofMillis(20);
+    private static final int LLM_CHUNKS = 20;
+    private static final Duration LLM_CHUNK_INTERVAL = Duration.ofMillis(10);
+
+    public static void main(String[] args) throws Exception {
+        HttpServer mcpServer = startStubMcpServer();
+        String mcpUrl = "http://127.0.0.1:" + mcpServer.getAddress().getPort() + "/mcp";
+        ChatClient chatClient = ChatClient.create(new StubChatModel());
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newCachedThreadPool())
+                .build();
+
+        System.out.printf("Java %d, 下游延迟: db=%dms, mcp=%dms, llm=%d x %dms%n",
+                Runtime.version().feature(), DB_LATENCY.toMillis(), MCP_LATENCY.toMillis(),
+                LLM_CHUNKS, LLM_CHUNK_INTERVAL.toMillis());
+        System.out.printf("%8s %10s %10s %10s %10s %10s%n",
+                "requests", "maxStreams", "ok", "rejected", "p50(ms)", "p99(ms)");
+        try {
+            for (int concurrency : CONCURRENCY_LEVELS) {
+                run(concurrency, chatClient, httpClient, mcpUrl);
+            }
+        } finally {
+            mcpServer.stop(0);
+        }
+        System.exit(0);
+    }
+
+    private static void run(int concurrency, ChatClient chatClient, HttpClient httpClient, String mcpUrl)
+            throws InterruptedException {
+        McpExecutionProperties properties = new McpExecutionProperties();
+        // 负载测试只限制 MCP 服务器的并发，LLM 和数据库 stub 不需要保护
+        properties.getLimits().put(DownstreamLimiter.LLM, Integer.MAX_VALUE);
+        properties.getLimits().put(DownstreamLimiter.DB, Integer.MAX_VALUE);
+        properties.setAcquireTimeout(Duration.ofSeconds(30));
+        DownstreamLimiter limiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(limiter, "mcpExecutionProperties", properties);
+        ExecutorService executor = new McpExecutionConfig().mcpTaskExecutor(properties);
+
+        AtomicInteger inFlightStreams = new AtomicInteger();
+        AtomicInteger maxStreams = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(concurrency);
+        String mcpKey = DownstreamLimiter.mcpKey(mcpUrl);
+
+        for (int i = 0; i < concurrency; i++) {
+            long start = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    try {
+                        limiter.call(DownstreamLimiter.DB, () -> {
+                            Thread.sleep(DB_LATENCY.toMillis());
+                            return null;
+                        });
+                        limiter.call(mcpKey, () -> callStubTool(httpClient, mcpUrl));
+
+                        int streams = inFlightStreams.incrementAndGet();
+                        maxStreams.accumulateAndGet(streams, Math::max);
+                        try {
+                            String content = String.join("", limiter.limit(DownstreamLimiter.LLM,
+                                            chatClient.prompt().user("hello").stream().content())
+                                    .collectList()
+                                    .block());
+                            if (content.isEmpty()) {
+                                throw new IllegalStateException("空响应");
+                            }
+                        } finally {
+                            inFlightStreams.decrementAndGet();
+                        }
+                        latencies.add(System.nanoTime() - start);
+                    } catch (Exception e) {
+                        rejected.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                done.countDown();
+            }
+        }
+        done.await(5, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("%8d %10d %10d %10d %10.1f %10.1f%n",
+                concurrency, maxStreams.get(), sorted.size(), rejected.get(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99));
+    }
+
+    private static Object callStubTool(HttpClient httpClient, String mcpUrl) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(mcpUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"echo\"}}"))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / 1_000_000.0;
+    }
+
+    /**
+     * stub MCP 服务器：固定延迟后返回 tools/call 结果
+     */
+    private static HttpServer startStubMcpServer() throws Exception {
+        byte[] body = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"content\":[{\"type\":\"text\",\"text\":\"ok\"}]}}"
+                .getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/mcp", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(MCP_LATENCY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    /**
+     * stub LLM：按固定间隔输出若干个文本片段
+     */
+    private static final class StubChatModel implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return chunk("stub response");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.range(0, LLM_CHUNKS)
+                    .delayElements(LLM_CHUNK_INTERVAL)
+                    .map(i -> chunk("token" + i + " "));
+        }
+
+        private static ChatResponse chunk(String text) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cn.sam.demo.mcpclient.benchmark;
+
+import cn.sam.demo.mcpclient.service.McpToolMethodInvoker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springaicommunity.mcp.annotation.McpToolParam;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地工具调用基准测试：反射调用 vs 预编译 MethodHandle 调用
+ * <p>
+ * 反射路径复现了改造前 McpToolInvokeService 的做法：每次调用都读取参数和注解，
+ * 并通过 Method.invoke 调用。为了只比较调用开销，两条路径共用同一个 ObjectMapper。
+ * <p>
+ * 运行方式：在 IDE 中直接运行 main 方法，或
+ * {@code mvn -pl mcp-client-demo test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cn.sam.demo.mcpclient.benchmark.McpToolInvokeBenchmark}
+ *
+ * @author Administrator
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class McpToolInvokeBenchmark {
+
+    @Param({"get_current_time", "calculator_add", "calculator_multiply", "string_reverse", "string_uppercase"})
+    public String toolName;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BenchmarkLocalTools bean;
+    private Method method;
+    private McpToolMethodInvoker invoker;
+    private Map<String, Object> params;
+
+    @Setup
+    public void setup() throws Exception {
+        bean = new BenchmarkLocalTools();
+        method = switch (toolName) {
+            case "get_current_time" -> BenchmarkLocalTools.class.getMethod("getCurrentTime", String.class);
+            case "calculator_add" -> BenchmarkLocalTools.class.getMethod("calculatorAdd", Double.class, Double.class);
+            case "calculator_multiply" -> BenchmarkLocalTools.class.getMethod("calculatorMultiply", Double.class, Double.class);
+            case "string_reverse" -> BenchmarkLocalTools.class.getMethod("stringReverse", String.class);
+            default -> BenchmarkLocalTools.class.getMethod("stringUppercase", String.class);
+        };
+        params = switch (toolName) {
+            case "get_current_time" -> Map.of("format", "date");
+            case "calculator_add", "calculator_multiply" -> Map.of("a", 3, "b", 4.5);
+            default -> Map.of("text", "hello mcp");
+        };
+        invoker = McpToolMethodInvoker.compile(toolName, bean, method, objectMapper);
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        Object[] args = prepareMethodArguments(method, params);
+        method.setAccessible(true);
+        return method.invoke(bean, args);
+    }
+
+    @Benchmark
+    public Object compiled() throws Throwable {
+        return invoker.invoke(params);
+    }
+
+    /**
+     * 改造前的参数准备逻辑（每次调用都读取参数列表和注解）
+     */
+    private Object[] prepareMethodArguments(Method method, Map<String, Object> params) {
+        Parameter[] parameters = method.getParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter param = parameters[i];
+            String paramName = param.getName();
+            McpToolParam toolParam = param.getAnnotation(McpToolParam.class);
+            if (paramName == null || paramName.startsWith("arg")) {
+                paramName = "param" + i;
+            }
+            Object value = params.get(paramName);
+            if (value == null) {
+                value = params.get(paramName.toLowerCase());
+            }
+            if (value == null && params.containsKey(String.valueOf(i))) {
+                value = params.get(String.valueOf(i));
+            }
+            if (value == null) {
+                if (toolParam != null && !toolParam.required()) {
+                    args[i] = null;
+                    continue;
+                }
+                throw new IllegalArgumentException("缺少必需参数: " + paramName);
+            }
+            args[i] = convertValue(value, param.getType());
+        }
+        return args;
+    }
+
+    private Object convertValue(Object value, Class<?> targetType) {
+        if (targetType.isAssignableFrom(value.getClass())) {
+            return value;
+        }
+        if (targetType == Double.class) {
+            return value instanceof Number n ? n.doubleValue() : Double.parseDouble(value.toString());
+        }
+        if (targetType == String.class) {
+            return value.toString();
+        }
+        return objectMapper.convertValue(value, targetType);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(McpToolInvokeBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
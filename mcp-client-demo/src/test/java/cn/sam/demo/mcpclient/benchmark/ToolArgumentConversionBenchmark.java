@@ -0,0 +1,122 @@
+package cn.sam.demo.mcpclient.benchmark;
+
+import cn.sam.demo.mcpclient.service.McpToolMethodInvoker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具参数转换的分配基准测试
+ * <p>
+ * perCallMapper 复现改造前的做法：每转换一个参数都 new ObjectMapper()，再调用 convertValue；
+ * cachedConverters 使用共享 ObjectMapper 和编译时缓存的 JavaType/ObjectReader。
+ * 结果中的 gc.alloc.rate.norm 即每次调用分配的字节数。
+ * <p>
+ * 运行方式：在 IDE 中直接运行 main 方法（已启用 GC profiler，等价于 -prof gc）
+ *
+ * @author Administrator
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToolArgumentConversionBenchmark {
+
+    @Param({"calculator_add", "string_reverse", "sum_numbers"})
+    public String toolName;
+
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+
+    private Method method;
+    private McpToolMethodInvoker invoker;
+    private Map<String, Object> params;
+
+    @Setup
+    public void setup() throws Exception {
+        Object bean;
+        switch (toolName) {
+            case "calculator_add" -> {
+                bean = new BenchmarkLocalTools();
+                method = BenchmarkLocalTools.class.getMethod("calculatorAdd", Double.class, Double.class);
+                params = Map.of("a", 3, "b", 4.5);
+            }
+            case "string_reverse" -> {
+                bean = new BenchmarkLocalTools();
+                method = BenchmarkLocalTools.class.getMethod("stringReverse", String.class);
+                params = Map.of("text", "hello mcp");
+            }
+            default -> {
+                bean = new ComplexArgumentTools();
+                method = ComplexArgumentTools.class.getMethod("sumNumbers", List.class);
+                params = Map.of("numbers", "[1, 2.5, 3]");
+            }
+        }
+        invoker = McpToolMethodInvoker.compile(toolName, bean, method, sharedMapper);
+    }
+
+    @Benchmark
+    public Object[] perCallMapper() {
+        Parameter[] parameters = method.getParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            args[i] = legacyConvertValue(params.get(parameters[i].getName()), parameters[i].getType());
+        }
+        return args;
+    }
+
+    @Benchmark
+    public Object[] cachedConverters() {
+        return invoker.bindArguments(params);
+    }
+
+    /**
+     * 改造前的 convertValue：无论目标类型如何，先创建一个新的 ObjectMapper，最后交给 objectMapper.convertValue；
+     * sum_numbers 传入的 JSON 字符串无法直接转换为 List，与改造前一样抛出异常后原样返回
+     */
+    private Object legacyConvertValue(Object value, Class<?> targetType) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        if (targetType.isAssignableFrom(value.getClass())) {
+            return value;
+        }
+        if (targetType == Double.class) {
+            return value instanceof Number n ? n.doubleValue() : Double.parseDouble(value.toString());
+        }
+        if (targetType == String.class) {
+            return value.toString();
+        }
+        try {
+            return objectMapper.convertValue(value, targetType);
+        } catch (Exception e) {
+            return value;
+        }
+    }
+
+    /**
+     * 带泛型参数的工具，用于覆盖 JavaType 转换路径
+     */
+    public static class ComplexArgumentTools {
+        public double sumNumbers(List<Double> numbers) {
+            return numbers.stream().mapToDouble(Double::doubleValue).sum();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ToolArgumentConversionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package cn.sam.demo.mcpclient.config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 共用 HTTP 客户端测试
+ * 使用内嵌的 stub MCP 服务器，验证经 RestTemplate 的多次调用复用同一个 TCP 长连接
+ *
+ * @author Administrator
+ */
+class McpHttpClientConfigTest {
+
+    private static final String RESPONSE =
+            "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"content\":[{\"type\":\"text\",\"text\":\"ok\"}]}}";
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mcp", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void reusesKeepAliveConnectionForSameServer() {
+        McpHttpClientConfig config = new McpHttpClientConfig();
+        McpHttpClientProperties properties = new McpHttpClientProperties();
+        RestTemplate restTemplate = new RestTemplate(
+                config.mcpClientHttpRequestFactory(config.mcpJdkHttpClient(properties), properties));
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/mcp";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        for (int i = 0; i < 20; i++) {
+            String body = restTemplate.postForObject(url, new HttpEntity<>("{}", headers), String.class);
+            assertEquals(RESPONSE, body);
+        }
+
+        // 20 次串行调用只建立了一个 TCP 连接
+        assertEquals(1, clientPorts.size());
+    }
+}
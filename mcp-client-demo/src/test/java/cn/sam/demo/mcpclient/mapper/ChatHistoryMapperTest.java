@@ -0,0 +1,82 @@
+package cn.sam.demo.mcpclient.mapper;
+
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import com.baomidou.mybatisplus.test.autoconfigure.MybatisPlusTest;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 聊天历史查询测试（H2 内存数据库）
+ * 验证最近 N 条按对话顺序返回，以及 keyset 分页在创建时间相同时按 ID 区分
+ *
+ * @author Administrator
+ */
+@MybatisPlusTest(properties = "spring.sql.init.schema-locations=classpath:db/chat_history_h2.sql")
+class ChatHistoryMapperTest {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    private final List<ChatHistory> rows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 12, 0);
+        for (int i = 0; i < 10; i++) {
+            // 每两条记录的创建时间相同
+            LocalDateTime time = base.plusSeconds(i / 2);
+            ChatHistory chatHistory = ChatHistory.builder()
+                    .sessionId("s1")
+                    .userMessage("q" + i)
+                    .aiResponse("a" + i)
+                    .createTime(time)
+                    .updateTime(time)
+                    .build();
+            rows.add(chatHistory);
+        }
+        chatHistoryMapper.insertBatch(rows);
+        chatHistoryMapper.insert(ChatHistory.builder()
+                .sessionId("s2")
+                .userMessage("other")
+                .aiResponse("other")
+                .createTime(base.plusMinutes(1))
+                .updateTime(base.plusMinutes(1))
+                .build());
+    }
+
+    @Test
+    void fullHistoryIsInConversationOrder() {
+        List<ChatHistory> all = chatHistoryMapper.selectBySessionIdOrderByCreateTimeAsc("s1");
+        assertEquals(rows.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList()), messages(all));
+    }
+
+    @Test
+    void recentRowsAreInConversationOrder() {
+        List<ChatHistory> recent = chatHistoryMapper.selectRecentBySessionId("s1", 4);
+        assertEquals(List.of("q6", "q7", "q8", "q9"), messages(recent));
+    }
+
+    @Test
+    void keysetPagesWalkBackwardsWithoutGapsOrDuplicates() {
+        List<String> collected = new ArrayList<>();
+        List<ChatHistory> page = chatHistoryMapper.selectRecentBySessionId("s1", 3);
+        while (!page.isEmpty()) {
+            collected.addAll(0, messages(page));
+            ChatHistory first = page.get(0);
+            page = chatHistoryMapper.selectPageBefore("s1", first.getCreateTime(), first.getId(), 3);
+        }
+        assertEquals(rows.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList()), collected);
+    }
+
+    private static List<String> messages(List<ChatHistory> histories) {
+        return histories.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+package cn.sam.demo.mcpclient.mapper;
+
+import cn.sam.demo.mcpclient.config.MyBatisPlusConfig;
+import cn.sam.demo.mcpclient.entity.McpMarketTool;
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import com.baomidou.mybatisplus.test.autoconfigure.MybatisPlusTest;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 市场工具批量 upsert 测试（H2 MySQL 模式，使用不带 databaseId 的通用语句）
+ * 验证一条语句同时插入新工具、更新已有工具，并保留已有工具的加载状态；下架工具的软删除和恢复；
+ * 以及批量加载用到的多行 INSERT 主键回填和按工具写入 local_tool_id 的批量 UPDATE
+ *
+ * @author Administrator
+ */
+@MybatisPlusTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:market;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.sql.init.schema-locations=classpath:db/mcp_market_h2.sql"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MyBatisPlusConfig.class)
+class McpMarketToolMapperTest {
+
+    @Resource
+    private McpMarketToolMapper mcpMarketToolMapper;
+
+    @Resource
+    private McpToolMapper mcpToolMapper;
+
+    @Test
+    void upsertInsertsNewAndUpdatesExistingRows() {
+        List<McpMarketTool> firstPage = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            firstPage.add(tool(1L, "server-" + i, "工具 " + i));
+        }
+        mcpMarketToolMapper.upsertBatch(firstPage);
+        McpMarketTool loaded = byServerId(1L).get("server-0");
+        mcpMarketToolMapper.updateLoadedStatus(loaded.getId(), true, 100L);
+
+        // server-0 改名并升级版本，server-3 新增；另一个市场的同名服务器互不影响
+        McpMarketTool renamed = tool(1L, "server-0", "新名称");
+        renamed.setToolVersion("2.0.0");
+        mcpMarketToolMapper.upsertBatch(List.of(renamed, tool(1L, "server-3", "工具 3")));
+        mcpMarketToolMapper.upsertBatch(List.of(tool(2L, "server-0", "其他市场")));
+
+        Map<String, McpMarketTool> rows = byServerId(1L);
+        assertEquals(4, rows.size());
+        McpMarketTool updated = mcpMarketToolMapper.selectById(loaded.getId());
+        assertEquals("新名称", updated.getToolName());
+        assertEquals("2.0.0", updated.getToolVersion());
+        assertTrue(updated.getIsLoaded());
+        assertEquals(100L, updated.getLocalToolId());
+        assertEquals("工具 1", mcpMarketToolMapper.selectById(rows.get("server-1").getId()).getToolName());
+        assertEquals(1, mcpMarketToolMapper.selectSyncStateByMarketId(2L).size());
+    }
+
+    @Test
+    void markDeletedHidesRowsUntilTheyReappear() {
+        mcpMarketToolMapper.upsertBatch(List.of(tool(1L, "server-0", "工具 0"), tool(1L, "server-1", "工具 1")));
+        McpMarketTool removed = byServerId(1L).get("server-1");
+
+        mcpMarketToolMapper.markDeleted(List.of(removed.getId()));
+        assertEquals(1, mcpMarketToolMapper.selectByMarketId(1L).size());
+        assertEquals(1, byServerId(1L).get("server-1").getDeleted());
+
+        // 市场重新上架后恢复为同一行
+        mcpMarketToolMapper.upsertBatch(List.of(tool(1L, "server-1", "工具 1")));
+        assertEquals(2, mcpMarketToolMapper.selectByMarketId(1L).size());
+        assertEquals(removed.getId(), byServerId(1L).get("server-1").getId());
+        assertEquals(0, byServerId(1L).get("server-1").getDeleted());
+    }
+
+    @Test
+    void bulkLoadInsertsLocalToolsAndMarksMarketRows() {
+        mcpMarketToolMapper.upsertBatch(List.of(tool(1L, "server-0", "工具 0"), tool(1L, "server-1", "工具 1"),
+                tool(1L, "server-2", "工具 2")));
+        Map<String, McpMarketTool> rows = byServerId(1L);
+        mcpMarketToolMapper.markDeleted(List.of(rows.get("server-2").getId()));
+
+        List<McpMarketTool> marketTools = mcpMarketToolMapper.selectForLoad(rows.values().stream()
+                .map(McpMarketTool::getId).toList());
+        assertEquals(2, marketTools.size());
+
+        List<McpToolData> localTools = marketTools.stream()
+                .map(marketTool -> McpToolData.builder()
+                        .name(marketTool.getToolName())
+                        .type(McpToolData.Type.REMOTE)
+                        .status(McpToolData.Status.ENABLED)
+                        .configJson(marketTool.getToolMetadata())
+                        .createTime(LocalDateTime.now())
+                        .updateTime(LocalDateTime.now())
+                        .build())
+                .toList();
+        assertEquals(2, mcpToolMapper.insertBatch(localTools));
+        for (int i = 0; i < marketTools.size(); i++) {
+            assertTrue(localTools.get(i).getId() != null);
+            marketTools.get(i).setLocalToolId(localTools.get(i).getId());
+        }
+        assertEquals(2, mcpMarketToolMapper.markLoadedBatch(marketTools));
+
+        for (McpMarketTool marketTool : marketTools) {
+            McpMarketTool loaded = mcpMarketToolMapper.selectById(marketTool.getId());
+            assertTrue(loaded.getIsLoaded());
+            assertEquals(marketTool.getLocalToolId(), loaded.getLocalToolId());
+            assertEquals(marketTool.getToolName(), mcpToolMapper.selectById(loaded.getLocalToolId()).getName());
+        }
+    }
+
+    private Map<String, McpMarketTool> byServerId(Long marketId) {
+        return mcpMarketToolMapper.selectSyncStateByMarketId(marketId).stream()
+                .collect(Collectors.toMap(McpMarketTool::getServerId, Function.identity()));
+    }
+
+    private static McpMarketTool tool(Long marketId, String serverId, String name) {
+        return McpMarketTool.builder()
+                .marketId(marketId)
+                .serverId(serverId)
+                .toolName(name)
+                .toolDescription(name + " 的描述")
+                .toolMetadata("{\"id\":\"" + serverId + "\"}")
+                .contentHash(serverId + ":" + name)
+                .isLoaded(false)
+                .createTime(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatContextProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对话上下文构建测试
+ * 使用按字符计数的 tokenizer，验证按预算从最近一轮向前选择以及每轮 token 数只计算一次
+ *
+ * @author Administrator
+ */
+class ChatContextBuilderTest {
+
+    private final AtomicInteger estimateCalls = new AtomicInteger();
+
+    private ChatContextBuilder builder;
+
+    @BeforeEach
+    void setUp() {
+        ChatContextProperties properties = new ChatContextProperties();
+        properties.setPerMessageOverhead(0);
+        builder = new ChatContextBuilder();
+        ReflectionTestUtils.setField(builder, "chatContextProperties", properties);
+        ReflectionTestUtils.setField(builder, "tokenCountEstimator", new JTokkitTokenCountEstimator() {
+            @Override
+            public int estimate(String text) {
+                estimateCalls.incrementAndGet();
+                return text.length();
+            }
+        });
+    }
+
+    @Test
+    void keepsNewestTurnsThatFitTheBudget() {
+        List<ChatHistory> histories = List.of(
+                turn("q1", "a".repeat(100)),
+                turn("q2", "short"),
+                turn("q3", "short"));
+
+        // 每轮短对话 7 个 token，第一轮 102 个 token 放不下
+        List<ChatHistory> selected = builder.fit(histories, 50);
+
+        assertEquals(List.of("q2", "q3"), selected.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList()));
+        assertEquals(1L, builder.getStats().get("truncated"));
+    }
+
+    @Test
+    void stopsAtFirstTurnThatDoesNotFit() {
+        List<ChatHistory> histories = List.of(
+                turn("q1", "short"),
+                turn("q2", "a".repeat(100)),
+                turn("q3", "short"));
+
+        // 较早的短对话也被丢弃，避免上下文出现断档
+        List<ChatHistory> selected = builder.fit(histories, 50);
+
+        assertEquals(List.of("q3"), selected.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList()));
+    }
+
+    @Test
+    void tokenCountsAreCachedOnTheTurn() {
+        List<ChatHistory> histories = List.of(turn("q1", "a1"), turn("q2", "a2"));
+
+        builder.fit(histories, 100);
+        int callsAfterFirstBuild = estimateCalls.get();
+        builder.fit(histories, 100);
+
+        assertEquals(4, callsAfterFirstBuild);
+        assertEquals(callsAfterFirstBuild, estimateCalls.get());
+        assertEquals(4, histories.get(0).getTokenCount());
+    }
+
+    @Test
+    void tokenCountIsNotSerialized() throws Exception {
+        ChatHistory history = turn("q1", "a1");
+        builder.fit(List.of(history), 100);
+
+        String json = new ObjectMapper().writeValueAsString(history);
+
+        assertFalse(json.contains("tokenCount"), json);
+        assertTrue(json.contains("\"userMessage\":\"q1\""), json);
+    }
+
+    private static ChatHistory turn(String userMessage, String aiResponse) {
+        return ChatHistory.builder()
+                .sessionId("s1")
+                .userMessage(userMessage)
+                .aiResponse(aiResponse)
+                .build();
+    }
+}
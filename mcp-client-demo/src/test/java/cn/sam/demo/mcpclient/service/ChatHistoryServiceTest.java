@@ -0,0 +1,79 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatHistoryCacheProperties;
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
+import cn.sam.demo.mcpclient.service.impl.ChatHistoryServiceImpl;
+import com.baomidou.mybatisplus.test.autoconfigure.MybatisPlusTest;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 聊天历史服务测试（H2 内存数据库）
+ * 验证最近 N 条无论来自会话窗口还是直接查库，都按对话顺序（创建时间升序）返回
+ *
+ * @author Administrator
+ */
+@MybatisPlusTest(properties = "spring.sql.init.schema-locations=classpath:db/chat_history_h2.sql")
+class ChatHistoryServiceTest {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    private ChatHistoryServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        ChatHistoryCacheProperties properties = new ChatHistoryCacheProperties();
+        properties.setWindowSize(5);
+
+        DownstreamLimiter limiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(limiter, "mcpExecutionProperties", new McpExecutionProperties());
+
+        service = new ChatHistoryServiceImpl();
+        ReflectionTestUtils.setField(service, "baseMapper", chatHistoryMapper);
+        ReflectionTestUtils.setField(service, "chatHistoryCacheProperties", properties);
+        ReflectionTestUtils.setField(service, "downstreamLimiter", limiter);
+        service.init();
+
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 12, 0);
+        List<ChatHistory> rows = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            rows.add(ChatHistory.builder()
+                    .sessionId("s1")
+                    .userMessage("q" + i)
+                    .aiResponse("a" + i)
+                    .createTime(base.plusSeconds(i))
+                    .updateTime(base.plusSeconds(i))
+                    .build());
+        }
+        chatHistoryMapper.insertBatch(rows);
+    }
+
+    @Test
+    void windowReturnsRecentTurnsInConversationOrder() {
+        assertEquals(List.of("q5", "q6", "q7"), messages(service.getRecentHistoryBySessionId("s1", 3)));
+        // 第二次从已加载的窗口读取，顺序不变
+        assertEquals(List.of("q3", "q4", "q5", "q6", "q7"), messages(service.getRecentHistoryBySessionId("s1", 5)));
+    }
+
+    @Test
+    void limitLargerThanWindowReadsDatabaseInConversationOrder() {
+        assertEquals(List.of("q2", "q3", "q4", "q5", "q6", "q7"),
+                messages(service.getRecentHistoryBySessionId("s1", 6)));
+    }
+
+    private static List<String> messages(List<ChatHistory> histories) {
+        return histories.stream().map(ChatHistory::getUserMessage).collect(Collectors.toList());
+    }
+}
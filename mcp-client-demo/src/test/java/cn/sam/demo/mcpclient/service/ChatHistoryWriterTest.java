@@ -0,0 +1,191 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatHistoryWriterProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
+import com.baomidou.mybatisplus.test.autoconfigure.MybatisPlusTest;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 聊天记录批量写入测试（H2 内存数据库）
+ *
+ * @author Administrator
+ */
+@MybatisPlusTest(properties = "spring.sql.init.schema-locations=classpath:db/chat_history_h2.sql")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ChatHistoryWriterTest {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    private ChatHistoryWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void recordsAreWrittenInBatches() throws Exception {
+        ChatHistoryWriterProperties properties = new ChatHistoryWriterProperties();
+        properties.setBatchSize(50);
+        properties.setFlushInterval(Duration.ofMillis(500));
+        writer = start(properties);
+
+        List<ChatHistory> records = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ChatHistory chatHistory = record("batch", i);
+            records.add(chatHistory);
+            futures.add(writer.submit(chatHistory));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, chatHistoryMapper.selectRecentBySessionId("batch", 500).size());
+        records.forEach(chatHistory -> assertNotNull(chatHistory.getId()));
+        long batches = (long) writer.getStats().get("batches");
+        assertTrue(batches < 20, "batches=" + batches);
+    }
+
+    @Test
+    void fullQueueRejectsWithoutBlocking() throws Exception {
+        ChatHistoryWriterProperties properties = new ChatHistoryWriterProperties();
+        properties.setQueueCapacity(2);
+        properties.setBatchSize(1);
+        properties.setFlushInterval(Duration.ofMillis(10));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        writer = start(properties, pausingMapper(writing, resume));
+
+        // 写入线程在第一条记录上暂停，之后的两条填满队列
+        CompletableFuture<Void> first = writer.submit(record("backpressure", 0));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Void>> queued = List.of(
+                writer.submit(record("backpressure", 1)),
+                writer.submit(record("backpressure", 2)));
+
+        // 队列已满时立即拒绝，由调用方处理
+        assertThrows(RejectedExecutionException.class, () -> writer.submit(record("backpressure", 3)));
+        assertEquals(1L, writer.getStats().get("rejected"));
+
+        resume.countDown();
+        CompletableFuture.allOf(first, queued.get(0), queued.get(1)).get(10, TimeUnit.SECONDS);
+        assertEquals(3, chatHistoryMapper.selectRecentBySessionId("backpressure", 100).size());
+    }
+
+    @Test
+    void cancelledSessionIsNotWritten() throws Exception {
+        ChatHistoryWriterProperties properties = new ChatHistoryWriterProperties();
+        properties.setBatchSize(10);
+        properties.setFlushInterval(Duration.ofMillis(10));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        writer = start(properties, pausingMapper(writing, resume));
+
+        // 写入线程在第一批上暂停，之后提交的记录留在队列中
+        CompletableFuture<Void> first = writer.submit(record("keep", 0));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Void>> deleted = List.of(
+                writer.submit(record("deleted", 0)),
+                writer.submit(record("deleted", 1)));
+        CompletableFuture<Void> kept = writer.submit(record("keep", 1));
+
+        CompletableFuture<Integer> cancel = CompletableFuture.supplyAsync(() -> writer.cancel("deleted"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!deleted.stream().allMatch(CompletableFuture::isCancelled) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // 记录已取消，cancel 仍在等待正在进行的批量写入
+        deleted.forEach(future -> assertTrue(future.isCancelled()));
+        assertFalse(cancel.isDone());
+        resume.countDown();
+        assertEquals(2, cancel.get(10, TimeUnit.SECONDS));
+
+        CompletableFuture.allOf(first, kept).get(10, TimeUnit.SECONDS);
+        assertEquals(0, chatHistoryMapper.selectRecentBySessionId("deleted", 100).size());
+        assertEquals(2, chatHistoryMapper.selectRecentBySessionId("keep", 100).size());
+        assertEquals(2L, writer.getStats().get("cancelled"));
+    }
+
+    @Test
+    void shutdownFlushesQueuedRecords() {
+        ChatHistoryWriterProperties properties = new ChatHistoryWriterProperties();
+        properties.setBatchSize(1000);
+        properties.setFlushInterval(Duration.ofSeconds(30));
+        writer = start(properties);
+
+        for (int i = 0; i < 10; i++) {
+            writer.submit(record("shutdown", i));
+        }
+        writer.shutdown();
+        writer = null;
+
+        assertEquals(10, chatHistoryMapper.selectRecentBySessionId("shutdown", 100).size());
+    }
+
+    private ChatHistoryWriter start(ChatHistoryWriterProperties properties) {
+        return start(properties, chatHistoryMapper);
+    }
+
+    private ChatHistoryWriter start(ChatHistoryWriterProperties properties, ChatHistoryMapper mapper) {
+        ChatHistoryWriter chatHistoryWriter = new ChatHistoryWriter();
+        ReflectionTestUtils.setField(chatHistoryWriter, "chatHistoryMapper", mapper);
+        ReflectionTestUtils.setField(chatHistoryWriter, "chatHistoryWriterProperties", properties);
+        chatHistoryWriter.start();
+        return chatHistoryWriter;
+    }
+
+    /**
+     * 第一次批量写入时通知 writing 并等待 resume，其余调用交给真实 mapper
+     */
+    private ChatHistoryMapper pausingMapper(CountDownLatch writing, CountDownLatch resume) {
+        AtomicBoolean paused = new AtomicBoolean();
+        return (ChatHistoryMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ChatHistoryMapper.class}, (proxy, method, args) -> {
+                    if ("insertBatch".equals(method.getName()) && paused.compareAndSet(false, true)) {
+                        writing.countDown();
+                        resume.await(10, TimeUnit.SECONDS);
+                    }
+                    try {
+                        return method.invoke(chatHistoryMapper, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static ChatHistory record(String sessionId, int index) {
+        return ChatHistory.builder()
+                .sessionId(sessionId)
+                .userMessage("question " + index)
+                .aiResponse("answer " + index)
+                .createTime(LocalDateTime.now())
+                .updateTime(LocalDateTime.now())
+                .build();
+    }
+}
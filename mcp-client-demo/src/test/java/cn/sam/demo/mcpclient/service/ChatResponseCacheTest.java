@@ -0,0 +1,108 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatResponseCacheProperties;
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 对话回复缓存测试
+ * 验证缓存键的规范化、有副作用工具的排除以及流式回放
+ *
+ * @author Administrator
+ */
+class ChatResponseCacheTest {
+
+    private static final String SYSTEM = "你是一个有用的AI助手。";
+
+    private ChatResponseCacheProperties properties;
+    private ChatOptions options;
+    private ChatResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatResponseCacheProperties();
+        properties.setEnabled(true);
+        properties.setReplayChunkSize(4);
+        options = ChatOptions.builder().model("deepseek-chat").temperature(0.7).maxTokens(2000).build();
+        cache = new ChatResponseCache();
+        ReflectionTestUtils.setField(cache, "chatResponseCacheProperties", properties);
+        ReflectionTestUtils.setField(cache, "chatModel", new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ChatOptions getDefaultOptions() {
+                return options;
+            }
+        });
+        cache.init();
+    }
+
+    @Test
+    void keyIgnoresWhitespaceDifferences() {
+        String key = cache.key(SYSTEM, List.of(), "Tell me a joke", List.of());
+        cache.put(key, "一个笑话");
+
+        assertEquals("一个笑话", cache.get(cache.key(" " + SYSTEM + "\n", List.of(), "Tell  me a joke ", List.of())));
+    }
+
+    @Test
+    void keyDependsOnContextAndOptions() {
+        String empty = cache.key(SYSTEM, List.of(), "Tell me a joke", List.of());
+        List<Message> context = List.of(new UserMessage("你好"), new AssistantMessage("你好！"));
+        String withContext = cache.key(SYSTEM, context, "Tell me a joke", List.of());
+        assertNotEquals(empty, withContext);
+
+        options = ChatOptions.builder().model("deepseek-chat").temperature(0.2).maxTokens(2000).build();
+        assertNotEquals(empty, cache.key(SYSTEM, List.of(), "Tell me a joke", List.of()));
+    }
+
+    @Test
+    void toolsWithSideEffectsDisableCaching() {
+        assertNotNull(cache.key(SYSTEM, List.of(), "现在几点", List.of(tool("get_current_time", true))));
+        assertNull(cache.key(SYSTEM, List.of(), "下单", List.of(tool("get_current_time", true), tool("create_order", false))));
+
+        properties.setEnabled(false);
+        assertNull(cache.key(SYSTEM, List.of(), "Tell me a joke", List.of()));
+    }
+
+    @Test
+    void replaySplitsIntoChunks() {
+        List<String> chunks = cache.replay("为什么程序员总是分不清万圣节和圣诞节").collectList().block();
+
+        assertEquals(5, chunks.size());
+        assertEquals("为什么程序员总是分不清万圣节和圣诞节", String.join("", chunks));
+    }
+
+    private static ToolCallback tool(String name, boolean sideEffectFree) {
+        ToolDefinition definition = ToolDefinition.builder()
+                .name(name)
+                .description(name)
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .build();
+        McpToolData tool = McpToolData.builder().name(name).type(McpToolData.Type.REMOTE).build();
+        return new McpToolCallback(tool, definition, Set.of(), input -> Map.of(), (target, params) -> "", sideEffectFree);
+    }
+}
@@ -0,0 +1,136 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatHistoryCacheProperties;
+import cn.sam.demo.mcpclient.config.ChatSummaryProperties;
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import cn.sam.demo.mcpclient.entity.ChatHistory;
+import cn.sam.demo.mcpclient.entity.ChatSummary;
+import cn.sam.demo.mcpclient.mapper.ChatHistoryMapper;
+import cn.sam.demo.mcpclient.mapper.ChatSummaryMapper;
+import com.baomidou.mybatisplus.test.autoconfigure.MybatisPlusTest;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 会话滚动摘要测试（H2 内存数据库 + stub ChatModel）
+ *
+ * @author Administrator
+ */
+@MybatisPlusTest(properties = "spring.sql.init.schema-locations=classpath:db/chat_history_h2.sql")
+class ChatSummaryServiceTest {
+
+    @Resource
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Resource
+    private ChatSummaryMapper chatSummaryMapper;
+
+    // stub 模型收到的提示内容
+    private final List<String> prompts = new ArrayList<>();
+
+    private ChatSummaryService service;
+
+    private LocalDateTime clock = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        ChatSummaryProperties properties = new ChatSummaryProperties();
+        properties.setTriggerTurns(6);
+        properties.setKeepRecentTurns(2);
+        properties.setMaxFoldTurns(10);
+
+        DownstreamLimiter limiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(limiter, "mcpExecutionProperties", new McpExecutionProperties());
+
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                prompts.add(prompt.getContents());
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("summary-" + prompts.size()))));
+            }
+        };
+
+        service = new ChatSummaryService();
+        ReflectionTestUtils.setField(service, "chatSummaryMapper", chatSummaryMapper);
+        ReflectionTestUtils.setField(service, "chatHistoryMapper", chatHistoryMapper);
+        ReflectionTestUtils.setField(service, "chatModel", stubModel);
+        ReflectionTestUtils.setField(service, "downstreamLimiter", limiter);
+        ReflectionTestUtils.setField(service, "chatSummaryProperties", properties);
+        ReflectionTestUtils.setField(service, "chatHistoryCacheProperties", new ChatHistoryCacheProperties());
+        service.init();
+    }
+
+    @Test
+    void doesNothingBelowThreshold() {
+        addTurns(6);
+
+        assertEquals(0, service.compact("s1"));
+        assertNull(service.getSummary("s1"));
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    void foldsOlderTurnsAndKeepsRecentOnes() {
+        List<ChatHistory> turns = addTurns(8);
+
+        assertEquals(6, service.compact("s1"));
+
+        ChatSummary summary = service.getSummary("s1");
+        assertEquals("summary-1", summary.getSummary());
+        assertEquals(6, summary.getTurnCount());
+        assertTrue(summary.covers(turns.get(5)));
+        assertFalse(summary.covers(turns.get(6)));
+        assertTrue(prompts.get(0).contains("q0") && prompts.get(0).contains("q5"));
+        assertFalse(prompts.get(0).contains("q6"));
+    }
+
+    @Test
+    void laterCompactionOnlyFoldsNewTurns() {
+        addTurns(8);
+        service.compact("s1");
+        // 摘要之后还有 2 轮，再加 5 轮超过阈值
+        addTurns(5);
+
+        assertEquals(5, service.compact("s1"));
+
+        String secondPrompt = prompts.get(1);
+        assertTrue(secondPrompt.contains("summary-1"));
+        assertFalse(secondPrompt.contains("q5"));
+        assertTrue(secondPrompt.contains("q6") && secondPrompt.contains("q10"));
+        assertEquals(11, service.getSummary("s1").getTurnCount());
+        assertEquals(0, service.compact("s1"));
+    }
+
+    private List<ChatHistory> addTurns(int count) {
+        int offset = Math.toIntExact(chatHistoryMapper.countAfter("s1", null, null));
+        List<ChatHistory> turns = new ArrayList<>();
+        for (int i = offset; i < offset + count; i++) {
+            clock = clock.plusSeconds(1);
+            turns.add(ChatHistory.builder()
+                    .sessionId("s1")
+                    .userMessage("q" + i)
+                    .aiResponse("a" + i)
+                    .createTime(clock)
+                    .updateTime(clock)
+                    .build());
+        }
+        chatHistoryMapper.insertBatch(turns);
+        return turns;
+    }
+}
@@ -0,0 +1,108 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpExecutionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 下游并发限制测试
+ * 验证异步调用在许可不足时排队而不阻塞订阅线程，许可归还后按顺序执行，等待超时或取消时退出队列
+ *
+ * @author Administrator
+ */
+class DownstreamLimiterTest {
+
+    private static final String DOWNSTREAM = DownstreamLimiter.mcpKey("http://127.0.0.1/mcp");
+
+    private DownstreamLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        McpExecutionProperties properties = new McpExecutionProperties();
+        properties.getLimits().put(DownstreamLimiter.MCP, 1);
+        properties.setAcquireTimeout(Duration.ofMillis(300));
+        limiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(limiter, "mcpExecutionProperties", properties);
+    }
+
+    @Test
+    void queuedCallDoesNotBlockAndRunsWhenPermitIsReturned() {
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger secondStarted = new AtomicInteger();
+        Disposable running = limiter.limit(DOWNSTREAM, first.asMono()).subscribe();
+
+        long start = System.nanoTime();
+        Mono<String> second = limiter.limit(DOWNSTREAM, Mono.fromSupplier(() -> {
+            secondStarted.incrementAndGet();
+            return "second";
+        }));
+        Disposable queued = second.subscribe();
+        // 订阅立即返回，调用在队列中等待
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+        assertEquals(0, secondStarted.get());
+        assertEquals(1, waiting());
+
+        first.tryEmitValue("first");
+        assertEquals(1, secondStarted.get());
+        assertEquals(0, waiting());
+        running.dispose();
+        queued.dispose();
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void waitingTooLongFails() {
+        Sinks.One<String> first = Sinks.one();
+        limiter.limit(DOWNSTREAM, first.asMono()).subscribe();
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> limiter.limit(DOWNSTREAM, Mono.just("second")).block(Duration.ofSeconds(5)));
+        assertInstanceOf(IllegalStateException.class, error);
+        assertEquals(0, waiting());
+        assertEquals(1L, stats().get("rejected"));
+
+        first.tryEmitValue("first");
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueue() {
+        Sinks.One<String> first = Sinks.one();
+        limiter.limit(DOWNSTREAM, first.asMono()).subscribe();
+
+        Disposable queued = limiter.limit(DOWNSTREAM, Mono.just("second")).subscribe();
+        assertEquals(1, waiting());
+        queued.dispose();
+        assertEquals(0, waiting());
+
+        first.tryEmitValue("first");
+        assertEquals(0, inFlight());
+        assertEquals("third", limiter.limit(DOWNSTREAM, Mono.just("third")).block(Duration.ofSeconds(5)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats() {
+        return (Map<String, Object>) limiter.getStats().get(DOWNSTREAM);
+    }
+
+    private int waiting() {
+        return (int) stats().get("waiting");
+    }
+
+    private int inFlight() {
+        return (int) stats().get("inFlight");
+    }
+}
@@ -0,0 +1,220 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.dto.McpServerListResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 市场工具刷新流水线测试
+ * 本地 stub 市场提供 3000 个服务器，每页请求延迟 50ms，写库每页耗时 20ms；
+ * 验证分页请求有界并发、写库与请求重叠、结果按页码顺序写入，取消和失败，以及只在取完列表后移除
+ *
+ * @author Administrator
+ */
+class MarketRefreshPipelineTest {
+
+    private static final int SERVER_COUNT = 3000;
+    private static final int PAGE_SIZE = 40;
+    private static final int PREFETCH = 4;
+    private static final long FETCH_DELAY_MS = 50;
+    private static final long WRITE_DELAY_MS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/servers/list", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/servers/list";
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void pagesAreFetchedAheadAndWrittenInOrder() {
+        List<String> written = new ArrayList<>();
+        MarketRefreshPipeline pipeline = new MarketRefreshPipeline(1L, this::fetch, servers -> {
+            Thread.sleep(WRITE_DELAY_MS);
+            servers.forEach(server -> written.add(server.getId()));
+            return new MarketRefreshPipeline.WriteResult(servers.size(), 0, 0);
+        }, executor, PAGE_SIZE, PREFETCH, 10000);
+
+        long start = System.currentTimeMillis();
+        boolean success = pipeline.run();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(success);
+        assertEquals(SERVER_COUNT, written.size());
+        for (int i = 0; i < SERVER_COUNT; i++) {
+            assertEquals("server-" + i, written.get(i));
+        }
+        // 逐页串行需要 75 × (50 + 20) ≈ 5.2s；流水线受写库阶段限制，约 75 × 20ms
+        long pages = SERVER_COUNT / PAGE_SIZE;
+        assertTrue(elapsed < pages * (FETCH_DELAY_MS + WRITE_DELAY_MS) / 2, "elapsed=" + elapsed);
+        assertTrue(maxInFlight.get() > 1 && maxInFlight.get() <= PREFETCH, "maxInFlight=" + maxInFlight.get());
+        // 最后一页之后最多多请求 PREFETCH 页
+        assertTrue(requests.get() <= pages + 1 + PREFETCH, "requests=" + requests.get());
+
+        Map<String, Object> progress = pipeline.getProgress();
+        assertEquals(MarketRefreshPipeline.State.COMPLETED, progress.get("state"));
+        assertEquals((long) SERVER_COUNT, progress.get("serversWritten"));
+    }
+
+    @Test
+    void cancelStopsFetchingAndWriting() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        MarketRefreshPipeline pipeline = new MarketRefreshPipeline(1L, this::fetch, servers -> {
+            Thread.sleep(WRITE_DELAY_MS);
+            written.addAndGet(servers.size());
+            return new MarketRefreshPipeline.WriteResult(servers.size(), 0, 0);
+        }, executor, PAGE_SIZE, PREFETCH, 10000);
+
+        CompletableFuture<Boolean> result = CompletableFuture.supplyAsync(pipeline::run);
+        // 第一页写入后再取消：首批请求在冷启动时可能很慢，取消之后才到达 stub 市场
+        long deadline = System.currentTimeMillis() + 5000;
+        while (written.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        pipeline.cancel();
+
+        assertFalse(result.get(5, TimeUnit.SECONDS));
+        assertEquals(MarketRefreshPipeline.State.CANCELLED, pipeline.getProgress().get("state"));
+        // 取消时已经发出的请求仍会到达 stub 市场，之后不再有新的请求
+        Thread.sleep(100);
+        int requestsAfterCancel = requests.get();
+        Thread.sleep(200);
+        assertEquals(requestsAfterCancel, requests.get());
+        assertTrue(written.get() < SERVER_COUNT, "written=" + written.get());
+    }
+
+    @Test
+    void fetchErrorFailsTheRefresh() {
+        MarketRefreshPipeline pipeline = new MarketRefreshPipeline(1L, page -> {
+            if (page == 3) {
+                throw new IOException("市场接口不可用");
+            }
+            return fetch(page);
+        }, servers -> new MarketRefreshPipeline.WriteResult(0, 0, servers.size()), executor, PAGE_SIZE, PREFETCH, 10000);
+
+        assertFalse(pipeline.run());
+        Map<String, Object> progress = pipeline.getProgress();
+        assertEquals(MarketRefreshPipeline.State.FAILED, progress.get("state"));
+        assertTrue(progress.get("error").toString().contains("市场接口不可用"));
+    }
+
+    @Test
+    void removesOnlyAfterShortLastPage() {
+        AtomicInteger completed = new AtomicInteger();
+        MarketRefreshPipeline.PageWriter writer = new MarketRefreshPipeline.PageWriter() {
+            @Override
+            public MarketRefreshPipeline.WriteResult write(List<McpServerListResponse.McpServerInfo> servers) {
+                return new MarketRefreshPipeline.WriteResult(0, 0, servers.size());
+            }
+
+            @Override
+            public int complete() {
+                return completed.incrementAndGet();
+            }
+        };
+
+        // 达到最大页数时列表可能不完整，不移除
+        MarketRefreshPipeline truncated = new MarketRefreshPipeline(1L, this::fetch, writer, executor, PAGE_SIZE, PREFETCH, 3);
+        assertTrue(truncated.run());
+        assertEquals(0, completed.get());
+        assertEquals(0, truncated.getProgress().get("removed"));
+
+        // 中途失败时不移除
+        MarketRefreshPipeline failed = new MarketRefreshPipeline(1L, page -> {
+            if (page == 5) {
+                throw new IllegalStateException("市场响应中没有服务器列表");
+            }
+            return fetch(page);
+        }, writer, executor, PAGE_SIZE, PREFETCH, 10000);
+        assertFalse(failed.run());
+        assertEquals(0, completed.get());
+
+        MarketRefreshPipeline full = new MarketRefreshPipeline(1L, this::fetch, writer, executor, PAGE_SIZE, PREFETCH, 10000);
+        assertTrue(full.run());
+        assertEquals(1, completed.get());
+    }
+
+    private List<McpServerListResponse.McpServerInfo> fetch(int page) throws Exception {
+        String requestUrl = UriComponentsBuilder.fromUriString(url)
+                .queryParam("page", page)
+                .queryParam("pageSize", PAGE_SIZE)
+                .toUriString();
+        String body = restTemplate.getForObject(requestUrl, String.class);
+        return objectMapper.readValue(body, McpServerListResponse.class).getServers();
+    }
+
+    /**
+     * stub 市场：按 page 和 pageSize 返回服务器列表，超出范围时返回空列表
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(FETCH_DELAY_MS);
+            Map<String, String> query = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build().getQueryParams()
+                    .toSingleValueMap();
+            int page = Integer.parseInt(query.get("page"));
+            int pageSize = Integer.parseInt(query.get("pageSize"));
+            List<Map<String, Object>> servers = new ArrayList<>();
+            for (int i = (page - 1) * pageSize; i < Math.min(page * pageSize, SERVER_COUNT); i++) {
+                Map<String, Object> server = new HashMap<>();
+                server.put("id", "server-" + i);
+                server.put("name", "server" + i);
+                server.put("title", "测试服务器 " + i);
+                server.put("description", "第 " + i + " 个测试服务器");
+                servers.add(server);
+            }
+            byte[] body = objectMapper.writeValueAsBytes(Map.of("total", SERVER_COUNT, "servers", servers));
+            exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
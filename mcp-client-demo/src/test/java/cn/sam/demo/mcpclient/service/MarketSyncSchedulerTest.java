@@ -0,0 +1,218 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpMarketProperties;
+import cn.sam.demo.mcpclient.entity.McpMarket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 市场后台同步调度测试
+ * 市场服务为只实现刷新相关方法的代理，验证同一市场只有一个任务、失败重试、取消和定时提交
+ *
+ * @author Administrator
+ */
+class MarketSyncSchedulerTest {
+
+    private final McpMarketProperties properties = new McpMarketProperties();
+    private final AtomicInteger refreshCount = new AtomicInteger();
+    private final Map<String, Object> progress = new HashMap<>();
+    private volatile BooleanSupplier refresh = () -> true;
+    // 最近一次刷新收到的取消标记
+    private volatile BooleanSupplier cancelFlag;
+
+    private ExecutorService executor;
+    private MarketSyncScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        McpMarketProperties.Sync sync = properties.getSync();
+        sync.setEnabled(false);
+        sync.setRetryBackoff(Duration.ofMillis(20));
+        sync.setMaxRetryBackoff(Duration.ofMillis(100));
+        executor = Executors.newCachedThreadPool();
+        scheduler = new MarketSyncScheduler();
+        ReflectionTestUtils.setField(scheduler, "mcpMarketService", marketService());
+        ReflectionTestUtils.setField(scheduler, "mcpMarketProperties", properties);
+        ReflectionTestUtils.setField(scheduler, "mcpTaskExecutor", executor);
+        scheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentSubmitsShareOneJob() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        refresh = () -> {
+            await(release);
+            return true;
+        };
+
+        MarketSyncScheduler.Job first = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        MarketSyncScheduler.Job second = scheduler.submit(1L, MarketSyncScheduler.Job.SCHEDULED);
+        assertSame(first, second);
+        assertEquals(MarketSyncScheduler.Job.RUNNING, first.getState());
+
+        release.countDown();
+        waitUntil(first::isFinished);
+        assertEquals(MarketSyncScheduler.Job.SUCCEEDED, first.getState());
+        assertEquals(1, refreshCount.get());
+        assertSame(first, scheduler.getJob(first.getId()));
+
+        // 结束后可以再次提交
+        MarketSyncScheduler.Job third = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        waitUntil(third::isFinished);
+        assertTrue(third != first);
+    }
+
+    @Test
+    void failuresAreRetriedUntilMaxAttempts() throws Exception {
+        progress.put("state", MarketRefreshPipeline.State.FAILED);
+        progress.put("error", "市场接口不可用");
+        refresh = () -> false;
+
+        MarketSyncScheduler.Job job = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        waitUntil(job::isFinished);
+
+        assertEquals(MarketSyncScheduler.Job.FAILED, job.getState());
+        assertEquals(3, refreshCount.get());
+        Map<String, Object> status = job.toMap(null);
+        assertEquals(3, status.get("attempts"));
+        assertEquals("市场接口不可用", status.get("error"));
+    }
+
+    @Test
+    void cancelStopsPendingRetry() throws Exception {
+        properties.getSync().setRetryBackoff(Duration.ofSeconds(10));
+        properties.getSync().setMaxRetryBackoff(Duration.ofSeconds(10));
+        refresh = () -> {
+            throw new IllegalStateException("连接超时");
+        };
+
+        MarketSyncScheduler.Job job = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        waitUntil(() -> MarketSyncScheduler.Job.RETRYING.equals(job.getState()));
+
+        assertTrue(scheduler.cancel(1L));
+        assertEquals(MarketSyncScheduler.Job.CANCELLED, job.getState());
+        assertEquals(1, refreshCount.get());
+    }
+
+    @Test
+    void retryClearsPreviousError() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        refresh = () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("连接超时");
+            }
+            await(release);
+            return true;
+        };
+
+        MarketSyncScheduler.Job job = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        waitUntil(() -> attempts.get() == 2);
+
+        Map<String, Object> status = job.toMap(null);
+        assertEquals(MarketSyncScheduler.Job.RUNNING, status.get("state"));
+        assertNull(status.get("error"));
+        release.countDown();
+        waitUntil(job::isFinished);
+        assertEquals(MarketSyncScheduler.Job.SUCCEEDED, job.getState());
+    }
+
+    @Test
+    void cancelBeforeRefreshRegistersReachesRefresh() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // 模拟刷新尚未登记：此时 cancelRefresh 找不到刷新，只能通过取消标记感知
+        refresh = () -> {
+            await(release);
+            return !cancelFlag.getAsBoolean();
+        };
+
+        MarketSyncScheduler.Job job = scheduler.submit(1L, MarketSyncScheduler.Job.MANUAL);
+        waitUntil(() -> cancelFlag != null);
+        assertFalse(cancelFlag.getAsBoolean());
+
+        assertTrue(scheduler.cancel(1L));
+        assertTrue(cancelFlag.getAsBoolean());
+        release.countDown();
+        waitUntil(job::isFinished);
+        assertEquals(MarketSyncScheduler.Job.CANCELLED, job.getState());
+        assertEquals(1, refreshCount.get());
+    }
+
+    @Test
+    void scanSubmitsDueMarkets() throws Exception {
+        properties.getSync().setJitter(0);
+
+        scheduler.scan();
+        waitUntil(() -> refreshCount.get() == 2);
+        waitUntil(() -> Integer.valueOf(0).equals(scheduler.getStats().get("activeJobs")));
+
+        // 下次同步在默认间隔之后，再次检查不会重复提交
+        scheduler.scan();
+        assertEquals(2, refreshCount.get());
+        assertEquals(2, scheduler.getStats().get("scheduledMarkets"));
+    }
+
+    private McpMarketService marketService() {
+        return (McpMarketService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{McpMarketService.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getById" -> McpMarket.builder().id((Long) args[0]).status(McpMarket.Status.ENABLED).build();
+                    case "listByStatus" -> List.of(
+                            McpMarket.builder().id(1L).status(McpMarket.Status.ENABLED).build(),
+                            McpMarket.builder().id(2L).status(McpMarket.Status.ENABLED).syncInterval(60).build());
+                    case "refreshMarketTools" -> {
+                        refreshCount.incrementAndGet();
+                        cancelFlag = (BooleanSupplier) args[1];
+                        yield refresh.getAsBoolean();
+                    }
+                    case "getRefreshProgress" -> progress;
+                    case "cancelRefresh" -> false;
+                    case "getRateLimitStats" -> Map.of();
+                    case "toString" -> "McpMarketService";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
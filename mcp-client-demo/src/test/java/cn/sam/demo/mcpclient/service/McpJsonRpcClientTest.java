@@ -0,0 +1,182 @@
+package cn.sam.demo.mcpclient.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JSON-RPC 客户端核心测试
+ * stub MCP 服务器对单个请求延迟后以 SSE 返回，对批量请求以倒序返回（跳过参数为 drop 的请求），
+ * 验证多个请求可以同时在途，响应按 ID 分发，缺少的响应只影响对应的请求
+ *
+ * @author Administrator
+ */
+class McpJsonRpcClientTest {
+
+    private static final long CALL_DELAY_MS = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private McpJsonRpcClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mcp", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        executor = Executors.newCachedThreadPool();
+        McpSessionManager.McpEndpoint endpoint = new McpSessionManager.McpEndpoint(
+                "http://127.0.0.1:" + server.getAddress().getPort(), "http", Map.of());
+        client = new McpJsonRpcClient(endpoint, HttpClient.newHttpClient(), objectMapper, executor, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void pipelinedRequestsAreDispatchedById() {
+        int calls = 10;
+        long start = System.currentTimeMillis();
+        List<String> results = Flux.range(0, calls)
+                .flatMap(i -> client.request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "t" + i)))
+                        .map(result -> i + "=" + result.path("content").get(0).path("text").asText()))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(calls, results.size());
+        for (String result : results) {
+            String[] parts = result.split("=");
+            assertEquals("t" + parts[0], parts[1]);
+        }
+        // 请求同时在途，总耗时远小于逐个调用的 10 x 200ms
+        assertTrue(maxInFlight.get() > 1, "maxInFlight=" + maxInFlight.get());
+        assertTrue(elapsed < calls * CALL_DELAY_MS, "elapsed=" + elapsed);
+        assertEquals(0, client.getPendingCount());
+    }
+
+    @Test
+    void batchResponsesAreMatchedById() {
+        List<McpJsonRpcClient.Request> requests = List.of(
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "a"))),
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "b"))),
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "c"))));
+
+        List<JsonNode> responses = client.requestBatch(requests).block(Duration.ofSeconds(10));
+
+        // 服务器倒序返回，结果仍与请求顺序一致
+        assertEquals(3, responses.size());
+        assertEquals("a", responses.get(0).path("result").path("content").get(0).path("text").asText());
+        assertEquals("b", responses.get(1).path("result").path("content").get(0).path("text").asText());
+        assertEquals("c", responses.get(2).path("result").path("content").get(0).path("text").asText());
+    }
+
+    @Test
+    void missingBatchResponseOnlyFailsThatRequest() {
+        List<McpJsonRpcClient.Request> requests = List.of(
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "a"))),
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "drop"))),
+                new McpJsonRpcClient.Request("tools/call", Map.of("name", "echo", "arguments", Map.of("text", "c"))));
+
+        List<JsonNode> responses = client.requestBatch(requests).block(Duration.ofSeconds(10));
+
+        assertEquals(3, responses.size());
+        assertEquals("a", responses.get(0).path("result").path("content").get(0).path("text").asText());
+        assertTrue(responses.get(1).has("error"));
+        assertEquals("c", responses.get(2).path("result").path("content").get(0).path("text").asText());
+        assertEquals(0, client.getPendingCount());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+        if (body.isArray()) {
+            ArrayNode responses = objectMapper.createArrayNode();
+            for (int i = body.size() - 1; i >= 0; i--) {
+                if (!"drop".equals(body.get(i).path("params").path("arguments").path("text").asText())) {
+                    responses.add(echo(body.get(i)));
+                }
+            }
+            respond(exchange, "application/json", responses.toString());
+            return;
+        }
+        String method = body.path("method").asText();
+        if (!body.has("id")) {
+            // 通知
+            exchange.sendResponseHeaders(202, -1);
+            exchange.close();
+            return;
+        }
+        if ("initialize".equals(method)) {
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("jsonrpc", "2.0");
+            response.set("id", body.get("id"));
+            response.set("result", objectMapper.createObjectNode().put("protocolVersion", "2025-03-26"));
+            exchange.getResponseHeaders().set("Mcp-Session-Id", "session-1");
+            respond(exchange, "application/json", response.toString());
+            return;
+        }
+
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(CALL_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        respond(exchange, "text/event-stream", "event: message\ndata: " + echo(body) + "\n\n");
+    }
+
+    private ObjectNode echo(JsonNode request) {
+        ObjectNode text = objectMapper.createObjectNode();
+        text.put("type", "text");
+        text.put("text", request.path("params").path("arguments").path("text").asText());
+        ObjectNode result = objectMapper.createObjectNode();
+        result.set("content", objectMapper.createArrayNode().add(text));
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        response.set("result", result);
+        return response;
+    }
+
+    private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,136 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.ChatToolProperties;
+import cn.sam.demo.mcpclient.config.McpToolCacheProperties;
+import cn.sam.demo.mcpclient.entity.McpToolData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对话工具目录测试
+ * 验证工具定义取自 configJson.function，按相关度选择工具，以及未注册的远程和本地工具不提供给模型
+ *
+ * @author Administrator
+ */
+class McpToolCallbackServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private McpToolRegistryService registryService;
+    private McpToolCallbackService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        McpToolResultCache cache = new McpToolResultCache();
+        ReflectionTestUtils.setField(cache, "mcpToolCacheProperties", new McpToolCacheProperties());
+        ReflectionTestUtils.setField(cache, "objectMapper", objectMapper);
+        cache.init();
+        registryService = new McpToolRegistryService();
+        ReflectionTestUtils.setField(registryService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(registryService, "mcpToolResultCache", cache);
+
+        ChatToolProperties properties = new ChatToolProperties();
+        properties.setMaxPerPrompt(2);
+        service = new McpToolCallbackService();
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "chatToolProperties", properties);
+        ReflectionTestUtils.setField(service, "mcpToolRegistryService", registryService);
+        ReflectionTestUtils.setField(service, "mcpToolResultCache", cache);
+        // 没有扫描到任何 @McpTool 方法
+        ReflectionTestUtils.setField(service, "mcpToolInvokeService", new McpToolInvokeService());
+
+        register(tool(1L, "calculator_add", "计算两个数字的和", Map.of("a", "第一个数字", "b", "第二个数字"), true));
+        register(tool(2L, "calculator_multiply", "计算两个数字的乘积", Map.of("a", "第一个数字", "b", "第二个数字"), true));
+        register(tool(3L, "string_reverse", "反转字符串", Map.of("text", "要反转的字符串"), true));
+        register(tool(4L, "get_current_time", "获取当前系统时间", Map.of("format", "时间格式"), true));
+        ReflectionTestUtils.invokeMethod(service, "rebuildTermWeights");
+    }
+
+    @Test
+    void definitionComesFromFunctionConfig() {
+        ToolCallback callback = service.select("把这个字符串反转一下").get(0);
+
+        assertEquals("string_reverse", callback.getToolDefinition().name());
+        assertEquals("反转字符串", callback.getToolDefinition().description());
+        assertTrue(callback.getToolDefinition().inputSchema().contains("\"text\""));
+    }
+
+    @Test
+    void mostRelevantToolsAreSelected() {
+        List<String> names = names(service.select("帮我计算 3 和 5 的和"));
+
+        assertEquals(2, names.size());
+        assertEquals("calculator_add", names.get(0));
+        assertTrue(names.contains("calculator_multiply"));
+    }
+
+    @Test
+    void unrelatedMessageGetsNoTools() {
+        assertTrue(service.select("讲个笑话").isEmpty());
+    }
+
+    @Test
+    void unregisteredRemoteToolIsNotOffered() throws Exception {
+        // 缺少 transport 的远程工具注册失败，不进入工具目录
+        register(tool(5L, "weather_query", "查询城市天气", Map.of("city", "城市名称"), false));
+        ReflectionTestUtils.invokeMethod(service, "rebuildTermWeights");
+
+        assertFalse(registryService.isRegistered(5L));
+        assertTrue(service.select("查询北京的天气").isEmpty());
+        assertEquals(4, service.getStats().get("catalogSize"));
+    }
+
+    @Test
+    void unregisteredLocalToolIsNotOffered() throws Exception {
+        McpToolData tool = tool(6L, "weather_query", "查询城市天气", Map.of("city", "城市名称"), false);
+        tool.setType(McpToolData.Type.LOCAL);
+        register(tool);
+        ReflectionTestUtils.invokeMethod(service, "rebuildTermWeights");
+
+        assertTrue(service.select("查询北京的天气").isEmpty());
+        assertEquals(4, service.getStats().get("catalogSize"));
+    }
+
+    private void register(McpToolData tool) {
+        registryService.registerTool(tool);
+        service.refresh(tool);
+    }
+
+    private static List<String> names(List<ToolCallback> callbacks) {
+        return callbacks.stream().map(callback -> callback.getToolDefinition().name()).toList();
+    }
+
+    private McpToolData tool(Long id, String name, String description, Map<String, String> parameters,
+                             boolean withTransport) throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        parameters.forEach((key, text) -> properties.put(key, Map.of("type", "string", "description", text)));
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("tool_name", name);
+        config.put("function", Map.of(
+                "name", name,
+                "description", description,
+                "parameters", Map.of("type", "object", "properties", properties)));
+        if (withTransport) {
+            config.put("transport", Map.of("type", "http", "url", "http://127.0.0.1:8081/mcp"));
+        }
+        return McpToolData.builder()
+                .id(id)
+                .name(name)
+                .description(description)
+                .type(McpToolData.Type.REMOTE)
+                .status(McpToolData.Status.ENABLED)
+                .configJson(objectMapper.writeValueAsString(config))
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package cn.sam.demo.mcpclient.service;
+
+import cn.sam.demo.mcpclient.config.McpToolCacheProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 工具结果缓存测试
+ *
+ * @author Administrator
+ */
+class McpToolResultCacheTest {
+
+    private McpToolResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new McpToolResultCache();
+        ReflectionTestUtils.setField(cache, "mcpToolCacheProperties", new McpToolCacheProperties());
+        ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+        cache.init();
+        cache.updatePolicy("remote:1", Map.of("cache", Map.of("enabled", true, "ttlSeconds", 60)));
+    }
+
+    @Test
+    void concurrentIdenticalCallsLoadOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("remote:1", "calculator_add", Map.of("a", 1, "b", 2), () -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(200);
+                        return "3";
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Object> future : futures) {
+                assertEquals("3", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void zeroTtlIsNotCacheable() {
+        cache.updatePolicy("remote:2", Map.of("cache", Map.of("ttlSeconds", 0)));
+
+        assertFalse(cache.isCacheable("remote:2"));
+        assertFalse(cache.declaresCache(Map.of("cache", Map.of("ttlSeconds", 0))));
+        assertFalse(cache.declaresCache(Map.of("cache", Map.of("enabled", false))));
+        assertTrue(cache.declaresCache(Map.of("cache", true)));
+        assertTrue(cache.declaresCache(Map.of("cache", Map.of("ttlSeconds", 60))));
+    }
+
+    @Test
+    void argumentOrderDoesNotAffectKey() {
+        AtomicInteger loads = new AtomicInteger();
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("a", 1);
+        first.put("b", 2);
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("b", 2);
+        second.put("a", 1);
+
+        Mono<Object> loader = Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return "3";
+        });
+        Flux.just(first, second)
+                .concatMap(args -> cache.getAsync("remote:1", "calculator_add", args, () -> loader))
+                .blockLast(Duration.ofSeconds(5));
+
+        assertEquals(1, loads.get());
+        assertEquals(1L, cache.getStats().get("hitCount"));
+    }
+
+    @Test
+    void toolsWithoutPolicyAreNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cache.get("remote:2", "get_current_time", Map.of(), () -> loads.incrementAndGet());
+        }
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void failedCallsAreNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("remote:1", "calculator_add", Map.of("a", "x"), () -> {
+                    loads.incrementAndGet();
+                    throw new IllegalArgumentException("bad");
+                });
+            } catch (IllegalArgumentException e) {
+                assertEquals("bad", e.getMessage());
+            }
+        }
+        assertEquals(2, loads.get());
+    }
+}
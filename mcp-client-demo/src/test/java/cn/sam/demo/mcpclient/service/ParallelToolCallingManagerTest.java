@@ -0,0 +1,203 @@
+package cn.sam.demo.mcpclient.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.StaticToolCallbackResolver;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 并行工具调用测试
+ * 脚本化的 stub 模型第一轮同时请求三个工具，第二轮根据工具结果给出答复；三个工具在同一屏障上会合，证明同时执行；
+ * 等待结果的线程被中断时，进行中的工具调用随之中断
+ *
+ * @author Administrator
+ */
+class ParallelToolCallingManagerTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void toolCallsInOneTurnRunConcurrently() {
+        // 三个工具都到达屏障后才继续，逐个执行时第一个工具等待屏障超时并返回 sequential
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        List<ToolCallback> tools = List.of(
+                new SleepingTool("slow", 300, barrier),
+                new SleepingTool("medium", 150, barrier),
+                new SleepingTool("fast", 0, barrier));
+        ParallelToolCallingManager manager = manager(Duration.ofSeconds(5));
+        ScriptedModel model = new ScriptedModel();
+        Prompt prompt = new Prompt(List.of(new UserMessage("查询三个工具")),
+                ToolCallingChatOptions.builder().toolCallbacks(tools).internalToolExecutionEnabled(false).build());
+
+        ChatResponse first = model.call(prompt);
+        ToolExecutionResult result = manager.executeToolCalls(prompt, first);
+        ChatResponse answer = model.call(new Prompt(result.conversationHistory(), prompt.getOptions()));
+
+        // 结果按模型请求的顺序回填，而不是完成顺序
+        ToolResponseMessage responses = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertEquals(List.of("slow", "medium", "fast"),
+                responses.getResponses().stream().map(ToolResponseMessage.ToolResponse::name).toList());
+        assertEquals("slow=done,medium=done,fast=done", answer.getResult().getOutput().getText());
+    }
+
+    @Test
+    void callsPastTheDeadlineReturnAnError() {
+        List<ToolCallback> tools = List.of(
+                new SleepingTool("slow", 2000),
+                new SleepingTool("medium", 100),
+                new SleepingTool("fast", 100));
+        ParallelToolCallingManager manager = manager(Duration.ofMillis(300));
+        Prompt prompt = new Prompt(List.of(new UserMessage("查询三个工具")),
+                ToolCallingChatOptions.builder().toolCallbacks(tools).internalToolExecutionEnabled(false).build());
+
+        long start = System.currentTimeMillis();
+        ToolExecutionResult result = manager.executeToolCalls(prompt, new ScriptedModel().call(prompt));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < 1000, "elapsed=" + elapsed);
+        ToolResponseMessage responses = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertTrue(responses.getResponses().get(0).responseData().contains("超时"));
+        assertEquals("done", responses.getResponses().get(1).responseData());
+    }
+
+    @Test
+    void interruptAbortsInFlightCalls() throws Exception {
+        List<SleepingTool> tools = List.of(
+                new SleepingTool("slow", 5000),
+                new SleepingTool("medium", 5000),
+                new SleepingTool("fast", 5000));
+        ParallelToolCallingManager manager = manager(Duration.ofSeconds(30));
+        Prompt prompt = new Prompt(List.of(new UserMessage("查询三个工具")),
+                ToolCallingChatOptions.builder().toolCallbacks(List.copyOf(tools)).internalToolExecutionEnabled(false).build());
+        ChatResponse first = new ScriptedModel().call(prompt);
+
+        // 模拟流式对话被取消：Reactor 中断执行 executeToolCalls 的线程
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                manager.executeToolCalls(prompt, first);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        caller.start();
+        Thread.sleep(200);
+        caller.interrupt();
+        caller.join(1000);
+
+        assertInstanceOf(CancellationException.class, thrown.get());
+        for (SleepingTool tool : tools) {
+            assertTrue(tool.interrupted.await(1, TimeUnit.SECONDS), tool.getToolDefinition().name());
+        }
+        assertEquals(3L, manager.getStats().get("aborted"));
+    }
+
+    private ParallelToolCallingManager manager(Duration deadline) {
+        StaticToolCallbackResolver resolver = new StaticToolCallbackResolver(List.of());
+        DefaultToolExecutionExceptionProcessor processor = new DefaultToolExecutionExceptionProcessor(false);
+        return new ParallelToolCallingManager(DefaultToolCallingManager.builder().build(), resolver, processor, executor, deadline);
+    }
+
+    /**
+     * 脚本化的 stub 模型：没有工具结果时请求 slow、medium、fast 三个工具，否则汇总工具结果作为答复
+     */
+    private static final class ScriptedModel implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            List<Message> messages = prompt.getInstructions();
+            if (messages.get(messages.size() - 1) instanceof ToolResponseMessage toolResponses) {
+                String text = String.join(",", toolResponses.getResponses().stream()
+                        .map(response -> response.name() + "=" + response.responseData())
+                        .toList());
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+            }
+            List<AssistantMessage.ToolCall> toolCalls = List.of(
+                    new AssistantMessage.ToolCall("1", "function", "slow", "{}"),
+                    new AssistantMessage.ToolCall("2", "function", "medium", "{}"),
+                    new AssistantMessage.ToolCall("3", "function", "fast", "{}"));
+            return new ChatResponse(List.of(new Generation(AssistantMessage.builder().content("").toolCalls(toolCalls).build())));
+        }
+    }
+
+    /**
+     * 固定耗时的工具
+     */
+    private static final class SleepingTool implements ToolCallback {
+
+        private final ToolDefinition definition;
+        private final long sleepMillis;
+        // 不为空时先等待同一轮的其他工具到达
+        private final CyclicBarrier barrier;
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        SleepingTool(String name, long sleepMillis) {
+            this(name, sleepMillis, null);
+        }
+
+        SleepingTool(String name, long sleepMillis, CyclicBarrier barrier) {
+            this.barrier = barrier;
+            this.definition = ToolDefinition.builder()
+                    .name(name)
+                    .description(name)
+                    .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                    .build();
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public String call(String toolInput) {
+            try {
+                if (barrier != null) {
+                    barrier.await(2, TimeUnit.SECONDS);
+                }
+                Thread.sleep(sleepMillis);
+            } catch (BrokenBarrierException | TimeoutException e) {
+                return "sequential";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }
+    }
+}
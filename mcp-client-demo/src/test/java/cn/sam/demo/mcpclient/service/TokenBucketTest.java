@@ -0,0 +1,35 @@
+package cn.sam.demo.mcpclient.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 令牌桶限速测试
+ *
+ * @author Administrator
+ */
+class TokenBucketTest {
+
+    @Test
+    void burstIsImmediateAndTheRestFollowsTheRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(50, 5);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            bucket.acquire();
+        }
+        assertTrue(System.nanoTime() - start < 20_000_000L, "突发请求不应等待");
+        assertEquals(0, bucket.getWaitedCount());
+
+        // 之后的 10 个请求按每秒 50 个补充，约 200ms
+        for (int i = 0; i < 10; i++) {
+            bucket.acquire();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis >= 180 && elapsedMillis < 600, "elapsed=" + elapsedMillis);
+        assertEquals(15, bucket.getAcquiredCount());
+        assertTrue(bucket.getWaitedCount() >= 9);
+    }
+}
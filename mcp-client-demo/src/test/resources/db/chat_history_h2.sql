@@ -0,0 +1,22 @@
+-- H2 测试用聊天历史记录表和摘要表（结构与 db/schema.sql 一致）
+CREATE TABLE IF NOT EXISTS chat_history (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  session_id VARCHAR(64) NOT NULL,
+  user_message TEXT NOT NULL,
+  ai_response TEXT NOT NULL,
+  create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_session_create ON chat_history (session_id, create_time);
+
+CREATE TABLE IF NOT EXISTS chat_summary (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  session_id VARCHAR(64) NOT NULL UNIQUE,
+  summary TEXT NOT NULL,
+  last_history_id BIGINT NOT NULL,
+  last_history_time DATETIME NOT NULL,
+  turn_count INT NOT NULL DEFAULT 0,
+  create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
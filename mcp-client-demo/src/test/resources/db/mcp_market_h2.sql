@@ -0,0 +1,28 @@
+-- H2 测试用市场工具表和工具表（结构与 db/mcp_schema.sql 一致，需要 MODE=MySQL 支持 ON DUPLICATE KEY UPDATE）
+CREATE TABLE IF NOT EXISTS mcp_market_tool (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  market_id BIGINT NOT NULL,
+  server_id VARCHAR(128) NOT NULL,
+  tool_name VARCHAR(100) NOT NULL,
+  tool_description TEXT,
+  tool_version VARCHAR(50),
+  tool_metadata TEXT,
+  content_hash CHAR(64),
+  is_loaded TINYINT NOT NULL DEFAULT 0,
+  local_tool_id BIGINT,
+  deleted TINYINT NOT NULL DEFAULT 0,
+  create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  CONSTRAINT uk_market_server UNIQUE (market_id, server_id)
+);
+
+CREATE TABLE IF NOT EXISTS mcp_tool (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  name VARCHAR(100) NOT NULL,
+  description TEXT,
+  type VARCHAR(20) NOT NULL,
+  status VARCHAR(20) NOT NULL DEFAULT 'ENABLED',
+  config_json TEXT,
+  create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  CONSTRAINT uk_name UNIQUE (name)
+);
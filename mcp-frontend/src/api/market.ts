@@ -23,6 +23,17 @@ export interface McpMarketTool {
   createTime?: string
 }
 
+export interface MarketRefreshJob {
+  jobId: string
+  marketId: number
+  trigger: string
+  // RUNNING、RETRYING（等待重试）、SUCCEEDED、FAILED 或 CANCELLED
+  state: string
+  attempts: number
+  error?: string
+  progress?: Record<string, any>
+}
+
 export interface ApiResponse<T = any> {
   success: boolean
   message?: string
@@ -75,9 +86,14 @@ export function updateMarketStatus(id: number, status: string) {
   })
 }
 
-// 刷新市场工具列表
+// 刷新市场工具列表（提交后台任务，返回任务信息）
 export function refreshMarketTools(id: number) {
-  return request.post<ApiResponse>(`/mcp/markets/${id}/refresh`)
+  return request.post<ApiResponse<MarketRefreshJob>>(`/mcp/markets/${id}/refresh`)
+}
+
+// 查询刷新任务状态
+export function getRefreshJob(jobId: string) {
+  return request.get<ApiResponse<MarketRefreshJob>>(`/mcp/markets/refresh/jobs/${jobId}`)
 }
 
 // 加载市场工具到本地